@@ -0,0 +1,83 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryColumnar;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random {@link AccountsRepository#getAccount} lookups in a large repository. The ids are built up
+ * front, so the measured path is the lookup alone, including materializing a columnar account.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(Threads.MAX)
+public class AccountLookupBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Repository {
+
+    @Param({"1000000"})
+    int accounts;
+
+    @Param({"in-memory", "columnar"})
+    String mode;
+
+    AccountsRepository repository;
+
+    String[] ids;
+
+    @Setup
+    public void setUp() {
+      if ("columnar".equals(mode)) {
+        final BalanceProperties balanceProperties = new BalanceProperties();
+        balanceProperties.setMode(BalanceProperties.Mode.FIXED_SCALE);
+        repository = new AccountsRepositoryColumnar(balanceProperties);
+      } else {
+        repository = new AccountsRepositoryInMemory(accounts);
+      }
+      ids = new String[accounts];
+      for (int i = 0; i < accounts; i++) {
+        ids[i] = "Id-" + i;
+        repository.createAccount(new Account(ids[i], BigDecimal.TEN));
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Caller {
+
+    SplittableRandom random;
+
+    @Setup
+    public void setUp() {
+      random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+    }
+  }
+
+  @Benchmark
+  public Account getAccount(Repository repository, Caller caller) {
+    return repository.repository.getAccount(repository.ids[caller.random.nextInt(repository.accounts)]);
+  }
+}
@@ -0,0 +1,144 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.AuditProperties;
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.CurrencyProperties;
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.config.IdempotencyProperties;
+import com.db.awmd.challenge.config.RepositoryProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryH2;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+import com.db.awmd.challenge.service.account.AccountsService;
+import com.db.awmd.challenge.service.account.BalanceLedger;
+import com.db.awmd.challenge.service.account.IdempotencyCache;
+import com.db.awmd.challenge.service.account.TransferEventOutbox;
+import com.db.awmd.challenge.service.account.TransferHistory;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import com.db.awmd.challenge.service.account.engine.CasTransferEngine;
+import com.db.awmd.challenge.service.account.fx.FxRateTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Transfer throughput of the durable repositories next to the in-memory one, fixed-scale balances
+ * and the CAS engine throughout. Many callers share every group commit, so the durable modes
+ * should stay within a small factor of memory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class DurableTransferBenchmark {
+
+  private static final long AMOUNT_UNITS = 1;
+
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+  @State(Scope.Benchmark)
+  public static class Bank {
+
+    @Param({"10000"})
+    int accounts;
+
+    @Param({"in-memory", "journal", "h2"})
+    String repositoryMode;
+
+    @Param({"true"})
+    boolean fsync;
+
+    AccountsRepository repository;
+
+    AccountsService service;
+
+    String[] ids;
+
+    Path directory;
+
+    @Setup
+    public void setUp() throws Exception {
+      final BalanceProperties balanceProperties = new BalanceProperties();
+      balanceProperties.setMode(BalanceProperties.Mode.FIXED_SCALE);
+      directory = Files.createTempDirectory("accounts-bench");
+      final RepositoryProperties repositoryProperties = new RepositoryProperties();
+      repositoryProperties.getJournal().setDirectory(directory.toString());
+      repositoryProperties.getJournal().setFsync(fsync);
+      repositoryProperties.getSnapshot().setInterval(Duration.ZERO);
+      repositoryProperties.getH2().setDirectory(directory.toString());
+      repositoryProperties.getH2().setFsync(fsync);
+      if ("journal".equals(repositoryMode)) {
+        repository = new AccountsRepositoryJournaled(repositoryProperties, balanceProperties);
+      } else if ("h2".equals(repositoryMode)) {
+        repository = new AccountsRepositoryH2(repositoryProperties, balanceProperties);
+      } else {
+        repository = new AccountsRepositoryInMemory(accounts);
+      }
+      final TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry());
+      service = new AccountsService(repository, new TransferEventOutbox(event -> { }),
+              new CasTransferEngine(1024, metrics), balanceProperties, metrics,
+              new IdempotencyCache(new IdempotencyProperties()),
+              new BalanceLedger(balanceProperties, new AuditProperties()),
+              new TransferHistory(new HistoryProperties()),
+              new FxRateTable(Collections::emptyMap, new CurrencyProperties()));
+
+      ids = new String[accounts];
+      final List<Account> created = new ArrayList<>(accounts);
+      for (int i = 0; i < accounts; i++) {
+        ids[i] = "Id-" + i;
+        created.add(new Account(ids[i], INITIAL_BALANCE));
+      }
+      service.createAccounts(created);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+      if (repository instanceof AccountsRepositoryJournaled) {
+        ((AccountsRepositoryJournaled) repository).destroy();
+      } else if (repository instanceof AccountsRepositoryH2) {
+        ((AccountsRepositoryH2) repository).destroy();
+      }
+      try (Stream<Path> files = Files.walk(directory)) {
+        files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+      }
+    }
+  }
+
+  @Benchmark
+  public void transfer(Bank bank) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int sender = random.nextInt(bank.accounts);
+    int receiver = random.nextInt(bank.accounts - 1);
+    if (receiver >= sender) {
+      receiver++;
+    }
+    bank.service.transfer(bank.ids[sender], bank.ids[receiver], AMOUNT_UNITS);
+  }
+}
@@ -0,0 +1,221 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.AuditProperties;
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.CurrencyProperties;
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.config.IdempotencyProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.account.AccountsService;
+import com.db.awmd.challenge.service.account.BalanceLedger;
+import com.db.awmd.challenge.service.account.IdempotencyCache;
+import com.db.awmd.challenge.service.account.TransferEventOutbox;
+import com.db.awmd.challenge.service.account.TransferHistory;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import com.db.awmd.challenge.service.account.TransferResult;
+import com.db.awmd.challenge.service.account.engine.CasTransferEngine;
+import com.db.awmd.challenge.service.account.engine.LockingTransferEngine;
+import com.db.awmd.challenge.service.account.engine.ShardedTransferEngine;
+import com.db.awmd.challenge.service.account.engine.TransferEngine;
+import com.db.awmd.challenge.service.account.fx.FxRateTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of {@link AccountsService#transfer} under different contention patterns.
+ * Events are published to a no-op publisher, so only the transfer path itself is measured,
+ * including the recording of its meters.
+ * Allocation rates come from the {@code gc} profiler enabled in {@code build.gradle}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class TransferBenchmark {
+
+  private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+  /**
+   * Large enough that no benchmark runs an account dry.
+   */
+  private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000");
+
+  private static final BigDecimal OVERDRAFT = INITIAL_BALANCE.add(INITIAL_BALANCE);
+
+  private static final Map<String, BigDecimal> QUOTES = new HashMap<>();
+
+  static {
+    QUOTES.put("EUR", BigDecimal.ONE);
+    QUOTES.put("USD", new BigDecimal("1.0834"));
+  }
+
+  @State(Scope.Benchmark)
+  public static class Bank {
+
+    @Param({"10000"})
+    int accounts;
+
+    @Param({"cas", "locking", "sharded"})
+    String engine;
+
+    @Param({"decimal", "fixed-scale"})
+    String balanceMode;
+
+    /**
+     * Zipf exponent of the skewed benchmark, higher is more skewed.
+     */
+    @Param({"1.0"})
+    double skew;
+
+    AccountsService service;
+
+    TransferEngine transferEngine;
+
+    String[] ids;
+
+    /**
+     * Accounts in USD, the others are in the default currency EUR.
+     */
+    String[] usdIds;
+
+    double[] zipfCumulative;
+
+    @Setup
+    public void setUp() throws IOException {
+      final BalanceProperties balanceProperties = new BalanceProperties();
+      balanceProperties.setMode("fixed-scale".equals(balanceMode)
+              ? BalanceProperties.Mode.FIXED_SCALE : BalanceProperties.Mode.DECIMAL);
+      final TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry());
+      if ("locking".equals(engine)) {
+        transferEngine = new LockingTransferEngine(1024, metrics);
+      } else if ("sharded".equals(engine)) {
+        transferEngine = new ShardedTransferEngine(0, 1024);
+      } else {
+        transferEngine = new CasTransferEngine(1024, metrics);
+      }
+      service = new AccountsService(new AccountsRepositoryInMemory(accounts),
+              new TransferEventOutbox(event -> { }), transferEngine, balanceProperties, metrics,
+              new IdempotencyCache(new IdempotencyProperties()),
+              new BalanceLedger(balanceProperties, new AuditProperties()),
+              new TransferHistory(new HistoryProperties()),
+              new FxRateTable(() -> QUOTES, new CurrencyProperties()));
+
+      ids = new String[accounts];
+      usdIds = new String[accounts];
+      for (int i = 0; i < accounts; i++) {
+        ids[i] = "Id-" + i;
+        service.createAccount(new Account(ids[i], INITIAL_BALANCE));
+        usdIds[i] = "Usd-" + i;
+        service.createAccount(new Account(usdIds[i], INITIAL_BALANCE, "USD"));
+      }
+
+      zipfCumulative = new double[accounts];
+      double total = 0;
+      for (int i = 0; i < accounts; i++) {
+        total += 1 / Math.pow(i + 1, skew);
+        zipfCumulative[i] = total;
+      }
+      for (int i = 0; i < accounts; i++) {
+        zipfCumulative[i] /= total;
+      }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+      if (transferEngine instanceof ShardedTransferEngine) {
+        ((ShardedTransferEngine) transferEngine).destroy();
+      }
+    }
+
+    int zipf(SplittableRandom random) {
+      final int index = Arrays.binarySearch(zipfCumulative, random.nextDouble());
+      return Math.min(index >= 0 ? index : -index - 1, accounts - 1);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Caller {
+
+    SplittableRandom random;
+
+    @Setup
+    public void setUp() {
+      random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+    }
+  }
+
+  @Benchmark
+  public void uncontended(Bank bank, Caller caller) {
+    final int sender = caller.random.nextInt(bank.accounts);
+    int receiver = caller.random.nextInt(bank.accounts - 1);
+    if (receiver >= sender) {
+      receiver++;
+    }
+    bank.service.transfer(bank.ids[sender], bank.ids[receiver], AMOUNT);
+  }
+
+  @Benchmark
+  public void zipfSkewed(Bank bank, Caller caller) {
+    final int sender = bank.zipf(caller.random);
+    int receiver = bank.zipf(caller.random);
+    if (receiver == sender) {
+      receiver = (receiver + 1) % bank.accounts;
+    }
+    bank.service.transfer(bank.ids[sender], bank.ids[receiver], AMOUNT);
+  }
+
+  /**
+   * Every transfer moves money in or out of the first account.
+   */
+  @Benchmark
+  public void singleHotAccount(Bank bank, Caller caller) {
+    final String other = bank.ids[1 + caller.random.nextInt(bank.accounts - 1)];
+    if (caller.random.nextBoolean()) {
+      bank.service.transfer(bank.ids[0], other, AMOUNT);
+    } else {
+      bank.service.transfer(other, bank.ids[0], AMOUNT);
+    }
+  }
+
+  /**
+   * Every transfer is rejected for lack of balance and reported as a {@link TransferResult}.
+   */
+  @Benchmark
+  public TransferResult overdraft(Bank bank, Caller caller) {
+    final int sender = caller.random.nextInt(bank.accounts);
+    return bank.service.tryTransfer(bank.ids[sender], bank.ids[(sender + 1) % bank.accounts], OVERDRAFT);
+  }
+
+  /**
+   * Uncontended transfers from EUR to USD accounts, converted with the cached rates.
+   */
+  @Benchmark
+  public void crossCurrency(Bank bank, Caller caller) {
+    final int sender = caller.random.nextInt(bank.accounts);
+    bank.service.transfer(bank.ids[sender], bank.usdIds[caller.random.nextInt(bank.accounts)], AMOUNT);
+  }
+}
@@ -1,20 +1,14 @@
 package com.db.awmd.challenge.config;
 
+import com.db.awmd.challenge.event.BoundedEventMulticaster;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.event.ApplicationEventMulticaster;
-import org.springframework.context.event.SimpleApplicationEventMulticaster;
-import org.springframework.core.task.SimpleAsyncTaskExecutor;
 
 @Configuration
 public class AsynchronousEventsConfig {
 
   @Bean(name = "applicationEventMulticaster")
-  public ApplicationEventMulticaster simpleApplicationEventMulticaster() {
-    SimpleApplicationEventMulticaster eventMulticaster =
-            new SimpleApplicationEventMulticaster();
-
-    eventMulticaster.setTaskExecutor(new SimpleAsyncTaskExecutor());
-    return eventMulticaster;
+  public BoundedEventMulticaster boundedEventMulticaster(EventDispatchProperties properties) {
+    return new BoundedEventMulticaster(properties);
   }
 }
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Balance audit settings ({@code accounts.audit.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.audit")
+public class AuditProperties {
+
+  /**
+   * Shards of the balance ledger, rounded up to a power of two. Each shard has its own total and
+   * checksum and is verified on its own.
+   */
+  private int shards = 64;
+
+  public int getShards() {
+    return shards;
+  }
+
+  public void setShards(int shards) {
+    this.shards = shards;
+  }
+}
@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Balance representation settings ({@code accounts.balance.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.balance")
+public class BalanceProperties {
+
+  public enum Mode {
+    /**
+     * Arbitrary precision {@link BigDecimal} balances.
+     */
+    DECIMAL,
+    /**
+     * Primitive {@code long} balances in minor units of the scale of the account's currency.
+     */
+    FIXED_SCALE
+  }
+
+  private Mode mode = Mode.DECIMAL;
+
+  /**
+   * Number of fraction digits of the currency, e.g. 2 for cents.
+   */
+  private int scale = 2;
+
+  /**
+   * Fraction digits of currencies other than the default one, e.g. 0 for JPY. Currencies without
+   * an entry use {@link #scale}.
+   */
+  private Map<String, Integer> currencyScales = new HashMap<>();
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+  }
+
+  public int getScale() {
+    return scale;
+  }
+
+  public void setScale(int scale) {
+    this.scale = scale;
+  }
+
+  public Map<String, Integer> getCurrencyScales() {
+    return currencyScales;
+  }
+
+  public void setCurrencyScales(Map<String, Integer> currencyScales) {
+    this.currencyScales = currencyScales;
+  }
+
+  /**
+   * Scale of accounts in {@code currency}. Accounts without a currency are in the default one,
+   * which always has {@link #getScale()}.
+   */
+  public int scaleOf(String currency) {
+    final Integer currencyScale = currency == null ? null : currencyScales.get(currency);
+    return currencyScale != null ? currencyScale : scale;
+  }
+
+  /**
+   * Largest scale of any currency, amounts of all currencies are exact in it.
+   */
+  public int maxScale() {
+    int max = scale;
+    for (int currencyScale : currencyScales.values()) {
+      max = Math.max(max, currencyScale);
+    }
+    return max;
+  }
+
+  public boolean isFixedScale() {
+    return mode == Mode.FIXED_SCALE;
+  }
+
+  /**
+   * Minor units of the default currency.
+   *
+   * @throws ArithmeticException if the amount has more fraction digits than the scale
+   */
+  public long toUnits(BigDecimal amount) {
+    return FixedScaleBalanceCell.toUnits(amount, scale);
+  }
+
+  /**
+   * Amount of the default currency.
+   */
+  public BigDecimal toDecimal(long units) {
+    return FixedScaleBalanceCell.toDecimal(units, scale);
+  }
+}
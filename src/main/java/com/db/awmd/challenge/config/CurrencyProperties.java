@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Account currency and exchange rate settings ({@code accounts.currency.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.currency")
+public class CurrencyProperties {
+
+  /**
+   * Currency of accounts created without one.
+   */
+  private String defaultCurrency = "EUR";
+
+  private final Rates rates = new Rates();
+
+  public String getDefaultCurrency() {
+    return defaultCurrency;
+  }
+
+  public void setDefaultCurrency(String defaultCurrency) {
+    this.defaultCurrency = defaultCurrency;
+  }
+
+  public Rates getRates() {
+    return rates;
+  }
+
+  public static class Rates {
+
+    /**
+     * Where the rates come from, {@code file} reads {@link #file}.
+     */
+    private String source = "file";
+
+    /**
+     * Properties file with the units of each currency worth one unit of a common reference
+     * currency, e.g. {@code USD=1.08}. Empty means no rates, only same-currency transfers.
+     */
+    private String file = "";
+
+    /**
+     * How often the rates are reloaded, zero loads them once on startup.
+     */
+    private Duration refreshInterval = Duration.ofMinutes(1);
+
+    public String getSource() {
+      return source;
+    }
+
+    public void setSource(String source) {
+      this.source = source;
+    }
+
+    public String getFile() {
+      return file;
+    }
+
+    public void setFile(String file) {
+      this.file = file;
+    }
+
+    public Duration getRefreshInterval() {
+      return refreshInterval;
+    }
+
+    public void setRefreshInterval(Duration refreshInterval) {
+      this.refreshInterval = refreshInterval;
+    }
+  }
+}
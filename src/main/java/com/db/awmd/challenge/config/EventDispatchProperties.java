@@ -0,0 +1,57 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Asynchronous event dispatch settings ({@code accounts.events.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.events")
+public class EventDispatchProperties {
+
+  public enum OverflowPolicy {
+    /**
+     * The publishing thread invokes the listener itself.
+     */
+    CALLER_RUNS,
+    /**
+     * The listener invocation is discarded and counted as dropped.
+     */
+    DROP,
+    /**
+     * The publishing thread waits for free space in the queue.
+     */
+    BLOCK
+  }
+
+  private int workers = Runtime.getRuntime().availableProcessors();
+
+  private int queueCapacity = 10_000;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  public void setWorkers(int workers) {
+    this.workers = workers;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+}
@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-account transfer history settings ({@code accounts.history.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.history")
+public class HistoryProperties {
+
+  /**
+   * Most recent movements kept per account, rounded up to a power of two. Zero keeps no history.
+   */
+  private int capacity = 32;
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+  }
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Transfer idempotency key settings ({@code accounts.idempotency.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.idempotency")
+public class IdempotencyProperties {
+
+  /**
+   * How long the outcome of a keyed transfer is remembered for retries.
+   */
+  private Duration ttl = Duration.ofMinutes(10);
+
+  /**
+   * Number of remembered keys, rounded up to a power of two per stripe. Keys are kept for the whole
+   * ttl, a transfer whose key finds no free slot is refused with a 503.
+   */
+  private int capacity = 1 << 17;
+
+  /**
+   * Independently locked segments of the key table.
+   */
+  private int stripes = 64;
+
+  public Duration getTtl() {
+    return ttl;
+  }
+
+  public void setTtl(Duration ttl) {
+    this.ttl = ttl;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+  }
+
+  public int getStripes() {
+    return stripes;
+  }
+
+  public void setStripes(int stripes) {
+    this.stripes = stripes;
+  }
+}
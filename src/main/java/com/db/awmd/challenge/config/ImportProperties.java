@@ -0,0 +1,38 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bulk account import settings ({@code accounts.import.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.import")
+public class ImportProperties {
+
+  /**
+   * Accounts parsed before they are handed to the repository as one batch.
+   */
+  private int batchSize = 1000;
+
+  /**
+   * Errors listed in the report, further errors are only counted.
+   */
+  private int maxErrors = 1000;
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public int getMaxErrors() {
+    return maxErrors;
+  }
+
+  public void setMaxErrors(int maxErrors) {
+    this.maxErrors = maxErrors;
+  }
+}
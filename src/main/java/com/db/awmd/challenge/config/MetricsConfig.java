@@ -0,0 +1,75 @@
+package com.db.awmd.challenge.config;
+
+import com.db.awmd.challenge.event.BoundedEventMulticaster;
+import com.db.awmd.challenge.event.EventListenerMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.account.TransferNotificationDispatcher;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gauges and counters read from the components that already track their state, exported with the
+ * transfer meters through {@code /actuator/prometheus}.
+ */
+@Configuration
+public class MetricsConfig {
+
+  @Bean
+  public MeterBinder accountsRepositoryMetrics(AccountsRepository accountsRepository) {
+    return registry -> {
+      Gauge.builder("accounts.repository.size", accountsRepository, AccountsRepository::size)
+              .description("Number of accounts")
+              .register(registry);
+      FunctionCounter.builder("accounts.repository.lookups", accountsRepository, AccountsRepository::lookups)
+              .description("Account lookups by id")
+              .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder eventDispatchMetrics(BoundedEventMulticaster multicaster) {
+    return registry -> {
+      Gauge.builder("accounts.events.queue.size", multicaster, BoundedEventMulticaster::getQueueSize)
+              .description("Listener invocations waiting for a dispatch worker")
+              .register(registry);
+      Gauge.builder("accounts.events.workers.active", multicaster, BoundedEventMulticaster::getActiveWorkers)
+              .register(registry);
+      final Timer lag = Timer.builder("accounts.events.publish.lag")
+              .description("Time from publishing an event until a listener starts processing it")
+              .publishPercentileHistogram()
+              .register(registry);
+      multicaster.setDispatchLagRecorder(lagNanos -> lag.record(lagNanos, TimeUnit.NANOSECONDS));
+      multicaster.setListenerMetricsBinder(metrics -> {
+        final Tags tags = Tags.of("listener", metrics.getListenerId());
+        Gauge.builder("accounts.events.listener.queue.depth", metrics, EventListenerMetrics::getQueueDepth)
+                .description("Invocations of the listener waiting for a dispatch worker")
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder("accounts.events.listener.dropped", metrics, EventListenerMetrics::getDropped)
+                .description("Invocations of the listener dropped because the dispatch queue was full")
+                .tags(tags)
+                .register(registry);
+        final Timer latency = Timer.builder("accounts.events.listener.latency")
+                .description("Time from publishing an event until the listener finished processing it")
+                .tags(tags)
+                .register(registry);
+        metrics.setLatencyRecorder(latencyNanos -> latency.record(latencyNanos, TimeUnit.NANOSECONDS));
+      });
+    };
+  }
+
+  @Bean
+  public MeterBinder notificationMetrics(TransferNotificationDispatcher dispatcher) {
+    return registry -> Gauge.builder("accounts.notifications.pending", dispatcher,
+            TransferNotificationDispatcher::getPendingDigests)
+            .description("Accounts with a notification digest waiting to be sent")
+            .register(registry);
+  }
+}
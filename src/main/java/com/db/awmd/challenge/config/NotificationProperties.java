@@ -0,0 +1,40 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Transfer notification coalescing settings ({@code accounts.notifications.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.notifications")
+public class NotificationProperties {
+
+  /**
+   * How long notifications of an account are collected into one digest, zero sends them one by one.
+   */
+  private Duration window = Duration.ofMillis(100);
+
+  /**
+   * Number of collected notifications that sends the digest before the window ends.
+   */
+  private int maxBatch = 100;
+
+  public Duration getWindow() {
+    return window;
+  }
+
+  public void setWindow(Duration window) {
+    this.window = window;
+  }
+
+  public int getMaxBatch() {
+    return maxBatch;
+  }
+
+  public void setMaxBatch(int maxBatch) {
+    this.maxBatch = maxBatch;
+  }
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serialized account cache of {@code GET /v1/accounts/{id}} ({@code accounts.read-cache.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.read-cache")
+public class ReadCacheProperties {
+
+  /**
+   * Cached accounts, rounded up to a power of two. Accounts whose ids hash to the same entry
+   * replace each other. Zero serializes every read.
+   */
+  private int entries = 1 << 16;
+
+  public int getEntries() {
+    return entries;
+  }
+
+  public void setEntries(int entries) {
+    this.entries = entries;
+  }
+}
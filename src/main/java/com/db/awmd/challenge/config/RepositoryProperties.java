@@ -0,0 +1,130 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Account storage settings ({@code accounts.repository.*}).
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.repository")
+public class RepositoryProperties {
+
+  public enum Mode {
+    /**
+     * Accounts live in memory only and are lost on restart.
+     */
+    IN_MEMORY,
+    /**
+     * Accounts live in memory, creations and transfers are appended to a journal replayed on startup.
+     */
+    JOURNAL,
+    /**
+     * Accounts live in memory in primitive columns, lost on restart. Requires the fixed-scale balance mode.
+     */
+    COLUMNAR,
+    /**
+     * Accounts live in memory and are written back to an embedded H2 database loaded on startup.
+     * Requires the fixed-scale balance mode.
+     */
+    H2
+  }
+
+  private Mode mode = Mode.IN_MEMORY;
+
+  private final Journal journal = new Journal();
+
+  private final Snapshot snapshot = new Snapshot();
+
+  private final H2 h2 = new H2();
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+  }
+
+  public Journal getJournal() {
+    return journal;
+  }
+
+  public Snapshot getSnapshot() {
+    return snapshot;
+  }
+
+  public H2 getH2() {
+    return h2;
+  }
+
+  public static class Journal {
+
+    private String directory = "data";
+
+    /**
+     * Whether a group commit waits for the journal to reach the disk.
+     */
+    private boolean fsync = true;
+
+    public String getDirectory() {
+      return directory;
+    }
+
+    public void setDirectory(String directory) {
+      this.directory = directory;
+    }
+
+    public boolean isFsync() {
+      return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+      this.fsync = fsync;
+    }
+  }
+
+  public static class Snapshot {
+
+    /**
+     * How often sealed journal segments are folded into a new snapshot, zero disables snapshots.
+     */
+    private Duration interval = Duration.ofMinutes(5);
+
+    public Duration getInterval() {
+      return interval;
+    }
+
+    public void setInterval(Duration interval) {
+      this.interval = interval;
+    }
+  }
+
+  public static class H2 {
+
+    private String directory = "data";
+
+    /**
+     * Whether a group commit waits for the database to checkpoint to disk.
+     */
+    private boolean fsync = true;
+
+    public String getDirectory() {
+      return directory;
+    }
+
+    public void setDirectory(String directory) {
+      this.directory = directory;
+    }
+
+    public boolean isFsync() {
+      return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+      this.fsync = fsync;
+    }
+  }
+}
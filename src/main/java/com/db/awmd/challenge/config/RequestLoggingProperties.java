@@ -0,0 +1,55 @@
+package com.db.awmd.challenge.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Request log sampling settings ({@code accounts.logging.*}), keyed by endpoint name.
+ * Endpoints without an entry log every request.
+ */
+@Component
+@ConfigurationProperties(prefix = "accounts.logging")
+public class RequestLoggingProperties {
+
+  private Map<String, Sampling> endpoints = new HashMap<>();
+
+  public Map<String, Sampling> getEndpoints() {
+    return endpoints;
+  }
+
+  public void setEndpoints(Map<String, Sampling> endpoints) {
+    this.endpoints = endpoints;
+  }
+
+  public static class Sampling {
+
+    /**
+     * Logs one of every N requests.
+     */
+    private int sampleEvery = 1;
+
+    /**
+     * Upper bound of sampled requests logged per second, zero is unlimited.
+     */
+    private int maxPerSecond;
+
+    public int getSampleEvery() {
+      return sampleEvery;
+    }
+
+    public void setSampleEvery(int sampleEvery) {
+      this.sampleEvery = sampleEvery;
+    }
+
+    public int getMaxPerSecond() {
+      return maxPerSecond;
+    }
+
+    public void setMaxPerSecond(int maxPerSecond) {
+      this.maxPerSecond = maxPerSecond;
+    }
+  }
+}
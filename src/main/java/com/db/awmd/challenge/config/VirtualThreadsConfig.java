@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every request on its own virtual thread ({@code accounts.web.threads=virtual}). A request
+ * waiting for a contended account, the journal or a shard unmounts from its carrier, so waiting
+ * no longer holds a platform thread. The application's own code blocks only on
+ * {@code java.util.concurrent} locks and parking, which do not pin the carrier. Libraries may still
+ * block inside {@code synchronized}, {@code -Djdk.tracePinnedThreads=full} reports where.
+ */
+@Configuration
+@ConditionalOnProperty(name = "accounts.web.threads", havingValue = "virtual")
+public class VirtualThreadsConfig {
+
+  @Bean
+  public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+    return protocolHandler -> protocolHandler.setExecutor(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-virtual-", 0).factory()));
+  }
+}
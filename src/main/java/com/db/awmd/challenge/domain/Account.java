@@ -1,6 +1,7 @@
 package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.Getter;
@@ -9,6 +10,7 @@ import lombok.Setter;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 import java.math.BigDecimal;
 
 @Data
@@ -19,33 +21,87 @@ public class Account {
     return accountId;
   }
 
+  @NotNull
+  @Min(value = 0, message = "Initial balance must be positive.")
   public BigDecimal getBalance() {
-    return balance;
+    return balance.get();
+  }
+
+  /**
+   * ISO 4217 code of the balance, {@code null} for the configured default currency.
+   */
+  @Pattern(regexp = "[A-Z]{3}", message = "Currency must be an ISO 4217 code.")
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public String getCurrency() {
+    return currency;
   }
 
   public void setBalance(BigDecimal balance) {
-    this.balance = balance;
+    this.balance.set(balance);
+  }
+
+  public BalanceCell balanceCell() {
+    return balance;
+  }
+
+  /**
+   * Switches the balance to primitive minor units of the given scale.
+   * Must be called before the account is published to other threads.
+   *
+   * @throws ArithmeticException if the current balance does not fit the scale
+   */
+  public void useFixedScale(int scale) {
+    if (balance instanceof DecimalBalanceCell) {
+      balance = new FixedScaleBalanceCell(scale, FixedScaleBalanceCell.toUnits(balance.get(), scale));
+    }
   }
 
   @NotNull
   @NotEmpty
   private final String accountId;
 
-  @NotNull
-  @Min(value = 0, message = "Initial balance must be positive.")
-  private BigDecimal balance;
+  private BalanceCell balance;
+
+  private final String currency;
 
   public Account(String accountId) {
     this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this.balance = new DecimalBalanceCell(BigDecimal.ZERO);
+    this.currency = null;
+  }
+
+  public Account(String accountId, BigDecimal balance) {
+    this(accountId, balance, null);
   }
 
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
-    @JsonProperty("balance") BigDecimal balance) {
+    @JsonProperty("balance") BigDecimal balance,
+    @JsonProperty("currency") String currency) {
+    this.accountId = accountId;
+    this.balance = new DecimalBalanceCell(balance);
+    this.currency = currency;
+  }
+
+  /**
+   * Account over an existing balance cell, e.g. a view of a balance held by the repository.
+   */
+  public Account(String accountId, BalanceCell balance) {
     this.accountId = accountId;
     this.balance = balance;
+    this.currency = null;
   }
 
+  /**
+   * Accounts are identified by their id, so separate views of the same account are equal.
+   */
+  @Override
+  public boolean equals(Object other) {
+    return this == other || other instanceof Account && accountId.equals(((Account) other).accountId);
+  }
 
+  @Override
+  public int hashCode() {
+    return accountId.hashCode();
+  }
 }
@@ -0,0 +1,41 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Atomically updatable storage of an account balance.
+ * Withdrawals never let the balance become negative.
+ */
+public interface BalanceCell {
+
+  BigDecimal get();
+
+  void set(BigDecimal balance);
+
+  /**
+   * @return the updated balance, or {@code null} if the balance is not enough and the cell is left unchanged
+   */
+  BigDecimal tryWithdraw(BigDecimal amount);
+
+  /**
+   * @return the updated balance
+   */
+  BigDecimal deposit(BigDecimal amount);
+
+  /**
+   * Balance in minor units, only supported by fixed-scale cells.
+   */
+  long units();
+
+  /**
+   * @return the updated balance in minor units, or {@code -1} if the balance is not enough
+   * and the cell is left unchanged
+   */
+  long tryWithdraw(long amountUnits);
+
+  /**
+   * @return the updated balance in minor units
+   * @throws ArithmeticException if the balance would overflow, the cell is left unchanged
+   */
+  long deposit(long amountUnits);
+}
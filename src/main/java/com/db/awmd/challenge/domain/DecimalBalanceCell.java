@@ -0,0 +1,70 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Arbitrary precision balance kept as an immutable {@link BigDecimal} swapped with compare-and-set.
+ */
+public class DecimalBalanceCell implements BalanceCell {
+
+  private final AtomicReference<BigDecimal> balance;
+
+  public DecimalBalanceCell(BigDecimal balance) {
+    this.balance = new AtomicReference<>(balance);
+  }
+
+  @Override
+  public BigDecimal get() {
+    return balance.get();
+  }
+
+  @Override
+  public void set(BigDecimal balance) {
+    this.balance.set(balance);
+  }
+
+  @Override
+  public BigDecimal tryWithdraw(BigDecimal amount) {
+    for (;;) {
+      final BigDecimal current = balance.get();
+      final BigDecimal updated = current.subtract(amount);
+      if (updated.signum() < 0) {
+        return null;
+      }
+      if (balance.compareAndSet(current, updated)) {
+        return updated;
+      }
+    }
+  }
+
+  @Override
+  public BigDecimal deposit(BigDecimal amount) {
+    for (;;) {
+      final BigDecimal current = balance.get();
+      final BigDecimal updated = current.add(amount);
+      if (balance.compareAndSet(current, updated)) {
+        return updated;
+      }
+    }
+  }
+
+  @Override
+  public long units() {
+    throw fixedScaleRequired();
+  }
+
+  @Override
+  public long tryWithdraw(long amountUnits) {
+    throw fixedScaleRequired();
+  }
+
+  @Override
+  public long deposit(long amountUnits) {
+    throw fixedScaleRequired();
+  }
+
+  private static IllegalStateException fixedScaleRequired() {
+    return new IllegalStateException("Balance is not in fixed-scale mode.");
+  }
+}
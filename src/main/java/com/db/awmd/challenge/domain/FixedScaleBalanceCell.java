@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Balance kept as a primitive count of minor units, e.g. cents for scale 2.
+ * Updates through the {@code long} methods do not allocate.
+ */
+public class FixedScaleBalanceCell implements BalanceCell {
+
+  private static final AtomicLongFieldUpdater<FixedScaleBalanceCell> UNITS =
+          AtomicLongFieldUpdater.newUpdater(FixedScaleBalanceCell.class, "units");
+
+  private final int scale;
+
+  private volatile long units;
+
+  public FixedScaleBalanceCell(int scale, long units) {
+    this.scale = scale;
+    this.units = units;
+  }
+
+  public int scale() {
+    return scale;
+  }
+
+  @Override
+  public BigDecimal get() {
+    return toDecimal(units, scale);
+  }
+
+  @Override
+  public void set(BigDecimal balance) {
+    this.units = toUnits(balance, scale);
+  }
+
+  @Override
+  public BigDecimal tryWithdraw(BigDecimal amount) {
+    final long updated = tryWithdraw(toUnits(amount, scale));
+    return updated < 0 ? null : toDecimal(updated, scale);
+  }
+
+  @Override
+  public BigDecimal deposit(BigDecimal amount) {
+    return toDecimal(deposit(toUnits(amount, scale)), scale);
+  }
+
+  @Override
+  public long units() {
+    return units;
+  }
+
+  @Override
+  public long tryWithdraw(long amountUnits) {
+    for (;;) {
+      final long current = units;
+      final long updated = current - amountUnits;
+      if (updated < 0) {
+        return -1;
+      }
+      if (UNITS.compareAndSet(this, current, updated)) {
+        return updated;
+      }
+    }
+  }
+
+  @Override
+  public long deposit(long amountUnits) {
+    for (;;) {
+      final long current = units;
+      final long updated = addUnits(current, amountUnits);
+      if (UNITS.compareAndSet(this, current, updated)) {
+        return updated;
+      }
+    }
+  }
+
+  /**
+   * @throws ArithmeticException if the balance would no longer fit into a {@code long}
+   */
+  public static long addUnits(long balanceUnits, long amountUnits) {
+    try {
+      return Math.addExact(balanceUnits, amountUnits);
+    } catch (ArithmeticException ex) {
+      throw new ArithmeticException("Balance would exceed the range of the fixed scale.");
+    }
+  }
+
+  /**
+   * @throws ArithmeticException if the amount has more fraction digits than the scale
+   * or does not fit into a {@code long}
+   */
+  public static long toUnits(BigDecimal amount, int scale) {
+    return amount.movePointRight(scale).longValueExact();
+  }
+
+  public static BigDecimal toDecimal(long units, int scale) {
+    return BigDecimal.valueOf(units, scale);
+  }
+}
@@ -0,0 +1,75 @@
+package com.db.awmd.challenge.domain;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+
+/**
+ * Fixed-scale balance living in one slot of a shared {@code long} column. The cell is a flyweight:
+ * it owns no state, any number of cells for the same slot see and update the same balance.
+ */
+public class LongSlotBalanceCell implements BalanceCell {
+
+  private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final long[] column;
+  private final int slot;
+  private final int scale;
+
+  public LongSlotBalanceCell(long[] column, int slot, int scale) {
+    this.column = column;
+    this.slot = slot;
+    this.scale = scale;
+  }
+
+  @Override
+  public BigDecimal get() {
+    return FixedScaleBalanceCell.toDecimal(units(), scale);
+  }
+
+  @Override
+  public void set(BigDecimal balance) {
+    SLOTS.setVolatile(column, slot, FixedScaleBalanceCell.toUnits(balance, scale));
+  }
+
+  @Override
+  public BigDecimal tryWithdraw(BigDecimal amount) {
+    final long updated = tryWithdraw(FixedScaleBalanceCell.toUnits(amount, scale));
+    return updated < 0 ? null : FixedScaleBalanceCell.toDecimal(updated, scale);
+  }
+
+  @Override
+  public BigDecimal deposit(BigDecimal amount) {
+    return FixedScaleBalanceCell.toDecimal(deposit(FixedScaleBalanceCell.toUnits(amount, scale)), scale);
+  }
+
+  @Override
+  public long units() {
+    return (long) SLOTS.getVolatile(column, slot);
+  }
+
+  @Override
+  public long tryWithdraw(long amountUnits) {
+    for (;;) {
+      final long current = units();
+      final long updated = current - amountUnits;
+      if (updated < 0) {
+        return -1;
+      }
+      if (SLOTS.compareAndSet(column, slot, current, updated)) {
+        return updated;
+      }
+    }
+  }
+
+  @Override
+  public long deposit(long amountUnits) {
+    for (;;) {
+      final long current = units();
+      final long updated = FixedScaleBalanceCell.addUnits(current, amountUnits);
+      if (SLOTS.compareAndSet(column, slot, current, updated)) {
+        return updated;
+      }
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * A single sender/receiver movement of a transfer batch.
+ */
+@Data
+public class TransferLeg {
+  private final String senderId;
+  private final String receiverId;
+  private final BigDecimal amount;
+
+  public TransferLeg(String senderId, String receiverId, BigDecimal amount) {
+    this.senderId = senderId;
+    this.receiverId = receiverId;
+    this.amount = amount;
+  }
+
+  public String getSenderId() {
+    return senderId;
+  }
+
+  public String getReceiverId() {
+    return receiverId;
+  }
+
+  public BigDecimal getAmount() {
+    return amount;
+  }
+}
@@ -0,0 +1,244 @@
+package com.db.awmd.challenge.event;
+
+import com.db.awmd.challenge.config.EventDispatchProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.context.event.SmartApplicationListener;
+import org.springframework.core.ResolvableType;
+import org.springframework.scheduling.support.TaskUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Dispatches every listener invocation to a fixed set of worker lanes, each a single thread fed by
+ * its own bounded queue. An {@link OrderedEvent} always goes to the lane its key hashes to, so
+ * events with equal keys are handled one at a time in publishing order; other events are spread
+ * over the lanes in turn. When a lane's queue is full the configured
+ * {@link EventDispatchProperties.OverflowPolicy} applies, and an invocation run by the caller or
+ * dropped is no longer ordered with its lane. Queue depth, drops and latencies are tracked per
+ * listener.
+ */
+public class BoundedEventMulticaster extends SimpleApplicationEventMulticaster implements DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(BoundedEventMulticaster.class);
+
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+  private final ThreadPoolExecutor[] lanes;
+
+  private final AtomicInteger nextLane = new AtomicInteger();
+
+  private final Map<String, EventListenerMetrics> listenerMetrics = new ConcurrentHashMap<>();
+
+  private volatile LongConsumer dispatchLagRecorder = lagNanos -> { };
+
+  private final ReentrantLock bindLock = new ReentrantLock();
+
+  // Written and applied under bindLock, so every listener is bound exactly once.
+  private Consumer<EventListenerMetrics> listenerMetricsBinder = metrics -> { };
+
+  public BoundedEventMulticaster(EventDispatchProperties properties) {
+    final int laneCapacity = Math.max(1, properties.getQueueCapacity() / properties.getWorkers());
+    final ThreadFactory threadFactory = new WorkerThreadFactory();
+    final RejectedExecutionHandler overflowHandler = overflowHandler(properties.getOverflowPolicy());
+    this.lanes = new ThreadPoolExecutor[properties.getWorkers()];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(laneCapacity), threadFactory, overflowHandler);
+    }
+    setErrorHandler(TaskUtils.LOG_AND_SUPPRESS_ERROR_HANDLER);
+  }
+
+  @Override
+  public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+    final ResolvableType type = eventType != null ? eventType : ResolvableType.forInstance(event);
+    final ThreadPoolExecutor lane = laneOf(event);
+    for (ApplicationListener<?> listener : getApplicationListeners(event, type)) {
+      final EventListenerMetrics metrics = metricsFor(listener);
+      metrics.onQueued();
+      lane.execute(new ListenerInvocation(listener, event, metrics));
+    }
+  }
+
+  public Collection<EventListenerMetrics> getListenerMetrics() {
+    return Collections.unmodifiableCollection(listenerMetrics.values());
+  }
+
+  /**
+   * Invocations waiting in the queues of all lanes.
+   */
+  public int getQueueSize() {
+    int size = 0;
+    for (ThreadPoolExecutor lane : lanes) {
+      size += lane.getQueue().size();
+    }
+    return size;
+  }
+
+  public int getActiveWorkers() {
+    int active = 0;
+    for (ThreadPoolExecutor lane : lanes) {
+      active += lane.getActiveCount();
+    }
+    return active;
+  }
+
+  /**
+   * Receives the time every listener invocation waited between publishing and the start of
+   * processing, in nanoseconds.
+   */
+  public void setDispatchLagRecorder(LongConsumer dispatchLagRecorder) {
+    this.dispatchLagRecorder = dispatchLagRecorder;
+  }
+
+  /**
+   * Receives the metrics of every listener, those seen so far right away and later ones when
+   * their first event is dispatched, e.g. to register meters tagged by listener.
+   */
+  public void setListenerMetricsBinder(Consumer<EventListenerMetrics> listenerMetricsBinder) {
+    bindLock.lock();
+    try {
+      this.listenerMetricsBinder = listenerMetricsBinder;
+      listenerMetrics.values().forEach(listenerMetricsBinder);
+    } finally {
+      bindLock.unlock();
+    }
+  }
+
+  /**
+   * Lets the queued invocations complete before the context goes away.
+   */
+  @Override
+  public void destroy() throws InterruptedException {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+    for (ThreadPoolExecutor lane : lanes) {
+      if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        log.warn("{} event listener invocations were not completed on shutdown", lane.shutdownNow().size());
+      }
+    }
+  }
+
+  private ThreadPoolExecutor laneOf(ApplicationEvent event) {
+    final int hash;
+    if (event instanceof OrderedEvent) {
+      final int keyHash = ((OrderedEvent) event).orderingKey().hashCode();
+      hash = keyHash ^ (keyHash >>> 16);
+    } else {
+      hash = nextLane.getAndIncrement();
+    }
+    return lanes[(hash & Integer.MAX_VALUE) % lanes.length];
+  }
+
+  private EventListenerMetrics metricsFor(ApplicationListener<?> listener) {
+    final String listenerId = listenerId(listener);
+    final EventListenerMetrics metrics = listenerMetrics.get(listenerId);
+    if (metrics != null) {
+      return metrics;
+    }
+    bindLock.lock();
+    try {
+      EventListenerMetrics created = listenerMetrics.get(listenerId);
+      if (created == null) {
+        created = new EventListenerMetrics(listenerId);
+        listenerMetricsBinder.accept(created);
+        listenerMetrics.put(listenerId, created);
+      }
+      return created;
+    } finally {
+      bindLock.unlock();
+    }
+  }
+
+  private static String listenerId(ApplicationListener<?> listener) {
+    if (listener instanceof SmartApplicationListener) {
+      final String listenerId = ((SmartApplicationListener) listener).getListenerId();
+      if (!listenerId.isEmpty()) {
+        return listenerId;
+      }
+    }
+    return listener.getClass().getName();
+  }
+
+  private static RejectedExecutionHandler overflowHandler(EventDispatchProperties.OverflowPolicy policy) {
+    switch (policy) {
+      case DROP:
+        return (task, executor) -> {
+          final ListenerInvocation invocation = (ListenerInvocation) task;
+          invocation.metrics.onDropped();
+          log.debug("Dropped event {} for listener {}", invocation.event.getClass().getSimpleName(),
+                  invocation.metrics.getListenerId());
+        };
+      case BLOCK:
+        return (task, executor) -> {
+          if (executor.isShutdown()) {
+            task.run();
+            return;
+          }
+          try {
+            executor.getQueue().put(task);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            task.run();
+          }
+        };
+      case CALLER_RUNS:
+      default:
+        return (task, executor) -> task.run();
+    }
+  }
+
+  private final class ListenerInvocation implements Runnable {
+    private final ApplicationListener<?> listener;
+    private final ApplicationEvent event;
+    private final EventListenerMetrics metrics;
+    private final long queuedAt = System.nanoTime();
+
+    private ListenerInvocation(ApplicationListener<?> listener, ApplicationEvent event, EventListenerMetrics metrics) {
+      this.listener = listener;
+      this.event = event;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+      final long startedAt = System.nanoTime();
+      metrics.onDequeued();
+      dispatchLagRecorder.accept(startedAt - queuedAt);
+      try {
+        invokeListener(listener, event);
+      } finally {
+        metrics.onCompleted(startedAt - queuedAt, System.nanoTime() - startedAt);
+      }
+    }
+  }
+
+  private static final class WorkerThreadFactory implements ThreadFactory {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      final Thread thread = new Thread(runnable, "event-dispatch-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
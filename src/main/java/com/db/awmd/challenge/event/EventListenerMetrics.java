@@ -0,0 +1,92 @@
+package com.db.awmd.challenge.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Dispatch statistics of a single application listener.
+ */
+public class EventListenerMetrics {
+
+  private final String listenerId;
+
+  private final AtomicLong queued = new AtomicLong();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final LongAdder totalProcessingNanos = new LongAdder();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  private volatile LongConsumer latencyRecorder = latencyNanos -> { };
+
+  public EventListenerMetrics(String listenerId) {
+    this.listenerId = listenerId;
+  }
+
+  public String getListenerId() {
+    return listenerId;
+  }
+
+  /**
+   * Invocations waiting in the dispatch queue.
+   */
+  public long getQueueDepth() {
+    return queued.get();
+  }
+
+  public long getCompleted() {
+    return completed.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  public long getTotalWaitNanos() {
+    return totalWaitNanos.sum();
+  }
+
+  public long getTotalProcessingNanos() {
+    return totalProcessingNanos.sum();
+  }
+
+  /**
+   * Highest wait plus processing time observed so far.
+   */
+  public long getMaxLatencyNanos() {
+    return maxLatencyNanos.get();
+  }
+
+  /**
+   * Receives the wait plus processing time of every completed invocation, in nanoseconds.
+   */
+  public void setLatencyRecorder(LongConsumer latencyRecorder) {
+    this.latencyRecorder = latencyRecorder;
+  }
+
+  void onQueued() {
+    queued.incrementAndGet();
+  }
+
+  void onDequeued() {
+    queued.decrementAndGet();
+  }
+
+  void onDropped() {
+    queued.decrementAndGet();
+    dropped.increment();
+  }
+
+  void onCompleted(long waitNanos, long processingNanos) {
+    final long latency = waitNanos + processingNanos;
+    latencyRecorder.accept(latency);
+    totalWaitNanos.add(waitNanos);
+    totalProcessingNanos.add(processingNanos);
+    completed.increment();
+    long max;
+    while (latency > (max = maxLatencyNanos.get()) && !maxLatencyNanos.compareAndSet(max, latency)) {
+      // retry until the maximum is published
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.event;
+
+/**
+ * Event whose listener invocations are ordered by key. {@link BoundedEventMulticaster} hands all
+ * events with equal keys to the same worker, which handles them in publishing order.
+ */
+public interface OrderedEvent {
+
+  Object orderingKey();
+}
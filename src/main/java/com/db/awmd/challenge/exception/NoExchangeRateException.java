@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class NoExchangeRateException extends AccountException {
+
+  public NoExchangeRateException(String senderId, String receiverId) {
+    super("No exchange rate between the currencies of account #" + senderId + " and account #" + receiverId + ".");
+  }
+}
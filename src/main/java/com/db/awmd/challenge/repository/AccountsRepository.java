@@ -3,11 +3,143 @@ package com.db.awmd.challenge.repository;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.List;
+
 public interface AccountsRepository {
 
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  /**
+   * Creates the accounts in order. An account whose id already exists, also earlier in the same
+   * list, is skipped rather than failing the rest.
+   *
+   * @return positions in {@code accounts} rejected as duplicates
+   */
+  default BitSet createAccounts(List<Account> accounts) {
+    final BitSet duplicates = new BitSet();
+    for (int i = 0; i < accounts.size(); i++) {
+      try {
+        createAccount(accounts.get(i));
+      } catch (DuplicateAccountIdException e) {
+        duplicates.set(i);
+      }
+    }
+    return duplicates;
+  }
+
   Account getAccount(String accountId);
 
   void clearAccounts();
+
+  /**
+   * Whether {@link Account#getCurrency() currencies} of accounts are kept. Repositories that do not
+   * keep them would bring every account back in the default currency, so they only take accounts
+   * in the default currency.
+   */
+  default boolean keepsCurrencies() {
+    return false;
+  }
+
+  /**
+   * Number of accounts currently held.
+   */
+  int size();
+
+  /**
+   * Number of {@link #getAccount} calls since startup.
+   */
+  long lookups();
+
+  /**
+   * Visits up to {@code limit} accounts in creation order, starting with the account at position
+   * {@code cursor}. Positions are dense, so a caller that visited {@code n} accounts continues at
+   * {@code cursor + n}; they start over at 0 when the accounts are cleared.
+   * <p>
+   * Weakly consistent: nothing is locked, every balance is read as it is when its account is
+   * visited, and accounts created during the scan are included if the scan has not passed the end yet.
+   *
+   * @return position of the next account to visit
+   */
+  long scan(long cursor, int limit, BalanceVisitor visitor) throws IOException;
+
+  /**
+   * Visits the balances of all accounts as of a single point in the commit order, in no particular
+   * order. Transfers continue while the view is taken and read.
+   *
+   * @throws UnsupportedOperationException if the repository keeps no commit order to take the view from
+   */
+  default void scanPointInTime(BalanceVisitor visitor) throws IOException {
+    throw new UnsupportedOperationException(
+            "Point-in-time listings require accounts.repository.mode=journal.");
+  }
+
+  /**
+   * Receives accounts from {@link #scan} and {@link #scanPointInTime}.
+   */
+  interface BalanceVisitor {
+    void account(String accountId, BigDecimal balance) throws IOException;
+
+    /**
+     * Called instead of {@link #account(String, BigDecimal)} by repositories that
+     * {@link #keepsCurrencies() keep currencies}, {@code currency} is null for the default currency.
+     */
+    default void account(String accountId, BigDecimal balance, String currency) throws IOException {
+      account(accountId, balance);
+    }
+  }
+
+  /**
+   * Fails if transfers can not be recorded any more. Called before a transfer touches any balance,
+   * so a repository that stopped writing rejects transfers up front. Volatile repositories never fail.
+   */
+  default void checkWritable() {
+  }
+
+  /**
+   * Records a committed transfer. Called from the commit listener, before any credit of the
+   * transfer can be spent, so a record is always written after the records it depends on. Volatile
+   * repositories ignore it.
+   *
+   * @return position of the record, durable once {@link #durablePosition()} reaches it
+   */
+  default long recordTransfer(String senderId, String receiverId, BigDecimal amount) {
+    return 0;
+  }
+
+  /**
+   * Fixed-scale counterpart of {@link #recordTransfer(String, String, BigDecimal)}.
+   */
+  default long recordTransfer(String senderId, String receiverId, long amountUnits) {
+    return 0;
+  }
+
+  /**
+   * Records the net balance changes of a committed transfer batch, see {@link #recordTransfer}.
+   */
+  default long recordBatch(Account[] accounts, BigDecimal[] deltas) {
+    return 0;
+  }
+
+  /**
+   * Fixed-scale counterpart of {@link #recordBatch(Account[], BigDecimal[])}.
+   */
+  default long recordBatch(Account[] accounts, long[] deltaUnits) {
+    return 0;
+  }
+
+  /**
+   * Returns once everything recorded so far is durable. Called after the accounts are released.
+   */
+  default void awaitDurable() {
+  }
+
+  /**
+   * Position up to which every record is durable. Volatile repositories have nothing to wait for.
+   */
+  default long durablePosition() {
+    return Long.MAX_VALUE;
+  }
 }
@@ -0,0 +1,313 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import com.db.awmd.challenge.domain.LongSlotBalanceCell;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accounts kept in primitive columns instead of one object graph per account, for repositories
+ * with tens of millions of accounts.
+ * <p>
+ * Every account gets a dense slot. Per slot the id hash, a reference to the id in a byte arena and
+ * the balance in minor units are stored in paged {@code int}/{@code long} columns, and an
+ * open-addressing table of slot numbers indexes the ids. That is a handful of large arrays for the
+ * garbage collector, whatever the number of accounts. {@link Account} objects are created on lookup
+ * as flyweights over the balance slot, so they are short-lived and updates go straight to the column.
+ * <p>
+ * Lookups are lock-free. Creations are serialized by a lock and publish the slot with a release
+ * store into the table after its columns are written. Requires the fixed-scale balance mode.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository.mode", havingValue = "columnar")
+public class AccountsRepositoryColumnar implements AccountsRepository {
+
+  private static final VarHandle TABLE = MethodHandles.arrayElementVarHandle(int[].class);
+  private static final VarHandle BALANCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private static final int PAGE_SHIFT = 16;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  private static final int ARENA_PAGE_SHIFT = 20;
+  private static final int ARENA_PAGE_SIZE = 1 << ARENA_PAGE_SHIFT;
+
+  /**
+   * Set in an id header when the id is stored as UTF-16 instead of Latin-1.
+   */
+  private static final int WIDE = 0x8000;
+  private static final int MAX_ID_LENGTH = WIDE - 1;
+
+  private final int scale;
+
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  private final LongAdder lookups = new LongAdder();
+
+  private volatile Columns columns = new Columns();
+
+  public AccountsRepositoryColumnar(BalanceProperties balanceProperties) {
+    if (!balanceProperties.isFixedScale()) {
+      throw new IllegalStateException("The columnar repository requires accounts.balance.mode=fixed-scale.");
+    }
+    this.scale = balanceProperties.getScale();
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    final String accountId = account.getAccountId();
+    if (accountId.length() > MAX_ID_LENGTH) {
+      throw new IllegalArgumentException("Account id is longer than " + MAX_ID_LENGTH + " characters.");
+    }
+    final long units = FixedScaleBalanceCell.toUnits(account.getBalance(), scale);
+    writeLock.lock();
+    try {
+      final Columns columns = this.columns;
+      if (columns.find(accountId) >= 0) {
+        throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+      }
+      columns.add(accountId, units);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Creates the batch under a single acquisition of the write lock.
+   */
+  @Override
+  public BitSet createAccounts(List<Account> accounts) {
+    final long[] units = new long[accounts.size()];
+    for (int i = 0; i < units.length; i++) {
+      final String accountId = accounts.get(i).getAccountId();
+      if (accountId.length() > MAX_ID_LENGTH) {
+        throw new IllegalArgumentException("Account id is longer than " + MAX_ID_LENGTH + " characters.");
+      }
+      units[i] = FixedScaleBalanceCell.toUnits(accounts.get(i).getBalance(), scale);
+    }
+    final BitSet duplicates = new BitSet();
+    writeLock.lock();
+    try {
+      final Columns columns = this.columns;
+      for (int i = 0; i < units.length; i++) {
+        final String accountId = accounts.get(i).getAccountId();
+        if (columns.find(accountId) >= 0) {
+          duplicates.set(i);
+        } else {
+          columns.add(accountId, units[i]);
+        }
+      }
+    } finally {
+      writeLock.unlock();
+    }
+    return duplicates;
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    lookups.increment();
+    final Columns columns = this.columns;
+    final int slot = columns.find(accountId);
+    if (slot < 0) {
+      return null;
+    }
+    return new Account(accountId,
+            new LongSlotBalanceCell(columns.pages[slot >>> PAGE_SHIFT].balances, slot & PAGE_MASK, scale));
+  }
+
+  @Override
+  public void clearAccounts() {
+    writeLock.lock();
+    try {
+      columns = new Columns();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Positions are slots, balances are read straight from the column.
+   */
+  @Override
+  public long scan(long cursor, int limit, BalanceVisitor visitor) throws IOException {
+    final Columns columns = this.columns;
+    final long end = Math.min(columns.size, cursor + limit);
+    for (long position = cursor; position < end; position++) {
+      final int slot = (int) position;
+      final Page page = columns.pages[slot >>> PAGE_SHIFT];
+      visitor.account(columns.id(page.idRefs[slot & PAGE_MASK]),
+              FixedScaleBalanceCell.toDecimal((long) BALANCES.getVolatile(page.balances, slot & PAGE_MASK), scale));
+    }
+    return Math.max(cursor, end);
+  }
+
+  @Override
+  public int size() {
+    return columns.size;
+  }
+
+  @Override
+  public long lookups() {
+    return lookups.sum();
+  }
+
+  private static int spread(int hash) {
+    return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+  }
+
+  /**
+   * Columns of one slot page.
+   */
+  private static final class Page {
+    final int[] hashes = new int[PAGE_SIZE];
+    final long[] idRefs = new long[PAGE_SIZE];
+    final long[] balances = new long[PAGE_SIZE];
+  }
+
+  private static final class Columns {
+
+    // Slot number + 1 per table entry, 0 is empty.
+    volatile int[] table = new int[1 << 10];
+    volatile Page[] pages = new Page[0];
+    volatile byte[][] arena = new byte[0][];
+    volatile int size;
+
+    // Written under the write lock only.
+    private int arenaOffset = ARENA_PAGE_SIZE;
+
+    int find(String accountId) {
+      final int hash = accountId.hashCode();
+      final int[] table = this.table;
+      final int mask = table.length - 1;
+      for (int index = spread(hash) & mask; ; index = (index + 1) & mask) {
+        final int entry = (int) TABLE.getAcquire(table, index);
+        if (entry == 0) {
+          return -1;
+        }
+        final int slot = entry - 1;
+        final Page page = pages[slot >>> PAGE_SHIFT];
+        if (page.hashes[slot & PAGE_MASK] == hash && idEquals(page.idRefs[slot & PAGE_MASK], accountId)) {
+          return slot;
+        }
+      }
+    }
+
+    void add(String accountId, long units) {
+      final int slot = size;
+      if ((slot >>> PAGE_SHIFT) == pages.length) {
+        final Page[] grown = Arrays.copyOf(pages, pages.length + 1);
+        grown[pages.length] = new Page();
+        pages = grown;
+      }
+      final Page page = pages[slot >>> PAGE_SHIFT];
+      page.hashes[slot & PAGE_MASK] = accountId.hashCode();
+      page.idRefs[slot & PAGE_MASK] = appendId(accountId);
+      page.balances[slot & PAGE_MASK] = units;
+
+      if ((slot + 1) * 2 > table.length) {
+        resize();
+      }
+      insert(table, slot, accountId.hashCode());
+      size = slot + 1;
+    }
+
+    private void resize() {
+      final int[] resized = new int[table.length * 2];
+      for (int slot = 0; slot < size; slot++) {
+        insert(resized, slot, pages[slot >>> PAGE_SHIFT].hashes[slot & PAGE_MASK]);
+      }
+      table = resized;
+    }
+
+    private static void insert(int[] table, int slot, int hash) {
+      final int mask = table.length - 1;
+      int index = spread(hash) & mask;
+      while (table[index] != 0) {
+        index = (index + 1) & mask;
+      }
+      TABLE.setRelease(table, index, slot + 1);
+    }
+
+    /**
+     * Stores the id as a two byte header (length, {@link #WIDE} flag) followed by its characters,
+     * one byte each if all fit into Latin-1, two bytes otherwise.
+     *
+     * @return arena page in the upper and offset in the lower 32 bits
+     */
+    private long appendId(String accountId) {
+      boolean wide = false;
+      for (int i = 0; i < accountId.length() && !wide; i++) {
+        wide = accountId.charAt(i) > 0xFF;
+      }
+      final int length = 2 + accountId.length() * (wide ? 2 : 1);
+      if (arenaOffset + length > ARENA_PAGE_SIZE) {
+        final byte[][] grown = Arrays.copyOf(arena, arena.length + 1);
+        grown[arena.length] = new byte[ARENA_PAGE_SIZE];
+        arena = grown;
+        arenaOffset = 0;
+      }
+      final byte[] bytes = arena[arena.length - 1];
+      final int start = arenaOffset;
+      final int header = accountId.length() | (wide ? WIDE : 0);
+      bytes[start] = (byte) (header >>> 8);
+      bytes[start + 1] = (byte) header;
+      int position = start + 2;
+      for (int i = 0; i < accountId.length(); i++) {
+        final char c = accountId.charAt(i);
+        if (wide) {
+          bytes[position++] = (byte) (c >>> 8);
+        }
+        bytes[position++] = (byte) c;
+      }
+      arenaOffset = position;
+      return ((long) (arena.length - 1) << 32) | start;
+    }
+
+    String id(long idRef) {
+      final byte[] bytes = arena[(int) (idRef >>> 32)];
+      int position = (int) idRef;
+      final int header = ((bytes[position] & 0xFF) << 8) | (bytes[position + 1] & 0xFF);
+      final char[] chars = new char[header & MAX_ID_LENGTH];
+      final boolean wide = (header & WIDE) != 0;
+      position += 2;
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = wide
+                ? (char) (((bytes[position++] & 0xFF) << 8) | (bytes[position++] & 0xFF))
+                : (char) (bytes[position++] & 0xFF);
+      }
+      return new String(chars);
+    }
+
+    private boolean idEquals(long idRef, String accountId) {
+      final byte[] bytes = arena[(int) (idRef >>> 32)];
+      int position = (int) idRef;
+      final int header = ((bytes[position] & 0xFF) << 8) | (bytes[position + 1] & 0xFF);
+      if ((header & MAX_ID_LENGTH) != accountId.length()) {
+        return false;
+      }
+      final boolean wide = (header & WIDE) != 0;
+      position += 2;
+      for (int i = 0; i < accountId.length(); i++) {
+        final char c = wide
+                ? (char) (((bytes[position++] & 0xFF) << 8) | (bytes[position++] & 0xFF))
+                : (char) (bytes[position++] & 0xFF);
+        if (c != accountId.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
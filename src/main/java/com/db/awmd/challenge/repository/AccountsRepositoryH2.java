@@ -0,0 +1,159 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.RepositoryProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.h2.AccountStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory accounts written back to an {@link AccountStore}, an embedded H2 database on local
+ * disk. The store is loaded on startup; afterwards all reads and the balance updates of transfers
+ * are served from memory, and the store receives the net changes of every group commit.
+ * <p>
+ * Transfer records are added to the current group inside the commit, while the engine holds the
+ * accounts, and the caller waits for the group to be committed once the accounts are released. Requires the fixed-scale balance mode.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository.mode", havingValue = "h2")
+public class AccountsRepositoryH2 implements AccountsRepository, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(AccountsRepositoryH2.class);
+
+  private final AccountsRepositoryInMemory accounts = new AccountsRepositoryInMemory();
+
+  private final int scale;
+
+  private final AccountStore store;
+
+  public AccountsRepositoryH2(RepositoryProperties repositoryProperties, BalanceProperties balanceProperties)
+          throws SQLException {
+    if (!balanceProperties.isFixedScale()) {
+      throw new IllegalStateException("The h2 repository requires accounts.balance.mode=fixed-scale.");
+    }
+    this.scale = balanceProperties.getScale();
+    final RepositoryProperties.H2 properties = repositoryProperties.getH2();
+
+    final long start = System.nanoTime();
+    this.store = AccountStore.open(
+            "jdbc:h2:file:" + Paths.get(properties.getDirectory()).toAbsolutePath().resolve("accounts"),
+            scale, properties.isFsync(), this::restore);
+    log.info("Loaded {} accounts in {} ms", accounts.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    account.useFixedScale(scale);
+    store.created(account.getAccountId(), account.balanceCell().units(), () -> accounts.createAccount(account));
+    store.awaitDurable();
+  }
+
+  /**
+   * Records every creation but waits for the store once per batch instead of once per account.
+   */
+  @Override
+  public BitSet createAccounts(List<Account> accounts) {
+    final BitSet duplicates = new BitSet();
+    for (int i = 0; i < accounts.size(); i++) {
+      final Account account = accounts.get(i);
+      account.useFixedScale(scale);
+      try {
+        store.created(account.getAccountId(), account.balanceCell().units(),
+                () -> this.accounts.createAccount(account));
+      } catch (DuplicateAccountIdException e) {
+        duplicates.set(i);
+      }
+    }
+    store.awaitDurable();
+    return duplicates;
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    return accounts.getAccount(accountId);
+  }
+
+  @Override
+  public void clearAccounts() {
+    store.cleared(accounts::clearAccounts);
+    store.awaitDurable();
+  }
+
+  @Override
+  public long scan(long cursor, int limit, BalanceVisitor visitor) throws IOException {
+    return accounts.scan(cursor, limit, visitor);
+  }
+
+  @Override
+  public int size() {
+    return accounts.size();
+  }
+
+  @Override
+  public long lookups() {
+    return accounts.lookups();
+  }
+
+  @Override
+  public void checkWritable() {
+    store.checkWritable();
+  }
+
+  @Override
+  public long recordTransfer(String senderId, String receiverId, BigDecimal amount) {
+    return store.transferred(senderId, receiverId, FixedScaleBalanceCell.toUnits(amount, scale));
+  }
+
+  @Override
+  public long recordTransfer(String senderId, String receiverId, long amountUnits) {
+    return store.transferred(senderId, receiverId, amountUnits);
+  }
+
+  @Override
+  public long recordBatch(Account[] accounts, BigDecimal[] deltas) {
+    final long[] deltaUnits = new long[deltas.length];
+    for (int i = 0; i < deltas.length; i++) {
+      deltaUnits[i] = FixedScaleBalanceCell.toUnits(deltas[i], scale);
+    }
+    return store.batch(accounts, deltaUnits);
+  }
+
+  @Override
+  public long recordBatch(Account[] accounts, long[] deltaUnits) {
+    return store.batch(accounts, deltaUnits);
+  }
+
+  @Override
+  public void awaitDurable() {
+    store.awaitDurable();
+  }
+
+  @Override
+  public long durablePosition() {
+    return store.durablePosition();
+  }
+
+  @Override
+  public void destroy() {
+    store.close();
+  }
+
+  private void restore(String accountId, long balanceUnits) {
+    accounts.createAccount(new Account(accountId, new FixedScaleBalanceCell(scale, balanceUnits)));
+  }
+}
@@ -2,14 +2,35 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 @Repository
+@ConditionalOnProperty(name = "accounts.repository.mode", havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+  private final Map<String, Account> accounts;
+
+  private final LongAdder lookups = new LongAdder();
+
+  private volatile CreationOrder creationOrder = new CreationOrder();
+
+  public AccountsRepositoryInMemory() {
+    this(16);
+  }
+
+  /**
+   * Sized for {@code expectedAccounts}, so bulk loads do not resize the map over and over.
+   */
+  public AccountsRepositoryInMemory(int expectedAccounts) {
+    this.accounts = new ConcurrentHashMap<>(expectedAccounts);
+  }
 
   @Override
   public void createAccount(Account account) throws DuplicateAccountIdException {
@@ -18,16 +39,82 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
       throw new DuplicateAccountIdException(
         "Account id " + account.getAccountId() + " already exists!");
     }
+    creationOrder.add(account);
   }
 
   @Override
   public Account getAccount(String accountId) {
+    lookups.increment();
     return accounts.get(accountId);
   }
 
   @Override
   public void clearAccounts() {
     accounts.clear();
+    creationOrder = new CreationOrder();
+  }
+
+  @Override
+  public long scan(long cursor, int limit, BalanceVisitor visitor) throws IOException {
+    final CreationOrder order = this.creationOrder;
+    final long end = Math.min(order.size, cursor + limit);
+    for (long position = cursor; position < end; position++) {
+      final Account account = order.get((int) position);
+      visitor.account(account.getAccountId(), account.getBalance(), account.getCurrency());
+    }
+    return Math.max(cursor, end);
   }
 
+  /**
+   * Accounts are kept as they are, currency included.
+   */
+  @Override
+  public boolean keepsCurrencies() {
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return accounts.size();
+  }
+
+  @Override
+  public long lookups() {
+    return lookups.sum();
+  }
+
+  /**
+   * Accounts in creation order, stored in chunks so that appends never copy. Appends are serialized,
+   * readers see every position below the published size without locking.
+   */
+  private static final class CreationOrder {
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private volatile Account[][] chunks = new Account[0][];
+    private volatile int size;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    void add(Account account) {
+      appendLock.lock();
+      try {
+        final int position = size;
+        if ((position >>> CHUNK_SHIFT) == chunks.length) {
+          final Account[][] grown = Arrays.copyOf(chunks, chunks.length + 1);
+          grown[chunks.length] = new Account[CHUNK_SIZE];
+          chunks = grown;
+        }
+        chunks[position >>> CHUNK_SHIFT][position & (CHUNK_SIZE - 1)] = account;
+        size = position + 1;
+      } finally {
+        appendLock.unlock();
+      }
+    }
+
+    Account get(int position) {
+      return chunks[position >>> CHUNK_SHIFT][position & (CHUNK_SIZE - 1)];
+    }
+  }
 }
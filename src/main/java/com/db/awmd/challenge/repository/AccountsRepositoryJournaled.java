@@ -0,0 +1,396 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.RepositoryProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceCell;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.journal.AccountSnapshot;
+import com.db.awmd.challenge.repository.journal.JournalRecords;
+import com.db.awmd.challenge.repository.journal.TransferJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory accounts made durable by a {@link TransferJournal}. The journal is replayed on startup
+ * to rebuild the balances. Transfer records are enqueued from the commit listener, which runs before
+ * any credit of the transfer can be spent, so every journal prefix replays to non-negative balances;
+ * the caller waits for the group commit once the listener has returned.
+ * <p>
+ * A background task periodically seals the current journal segment and folds the sealed segments
+ * into the previous {@link AccountSnapshot}. The new snapshot is built from the journal rather than
+ * from the live accounts, so it is consistent without pausing transfers. Startup maps the latest
+ * snapshot and replays only the segments after it.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository.mode", havingValue = "journal")
+public class AccountsRepositoryJournaled implements AccountsRepository, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(AccountsRepositoryJournaled.class);
+
+  private static final String SNAPSHOT_FILE = "accounts.snapshot";
+
+  /**
+   * Sealed segments a point-in-time read folds in memory before it writes a snapshot instead.
+   */
+  private static final int MAX_TAIL_SEGMENTS = 64;
+
+  private final AccountsRepositoryInMemory accounts;
+
+  private final BalanceProperties balanceProperties;
+
+  private final Path directory;
+
+  private final TransferJournal journal;
+
+  private final ScheduledExecutorService snapshots;
+
+  // Serializes snapshots, point-in-time reads and closing the journal.
+  private final ReentrantLock snapshotLock = new ReentrantLock();
+
+  public AccountsRepositoryJournaled(RepositoryProperties repositoryProperties, BalanceProperties balanceProperties)
+          throws IOException {
+    this.balanceProperties = balanceProperties;
+    final RepositoryProperties.Journal properties = repositoryProperties.getJournal();
+    this.directory = Paths.get(properties.getDirectory());
+
+    final long start = System.nanoTime();
+    final AccountSnapshot snapshot = AccountSnapshot.open(directory.resolve(SNAPSHOT_FILE));
+    this.accounts = new AccountsRepositoryInMemory(snapshot == null ? 16 : snapshot.size());
+    if (snapshot != null) {
+      snapshot.forEach(this::restore);
+      log.info("Loaded snapshot of {} accounts up to journal segment {}", snapshot.size(),
+              snapshot.nextSegment() - 1);
+    }
+    this.journal = TransferJournal.open(directory, properties.isFsync(),
+            snapshot == null ? 0 : snapshot.nextSegment(), new Replay());
+    log.info("Recovered accounts in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    final Duration interval = repositoryProperties.getSnapshot().getInterval();
+    if (interval.isZero()) {
+      this.snapshots = null;
+    } else {
+      this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "accounts-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.snapshots.scheduleWithFixedDelay(this::snapshotSafe, interval.toMillis(), interval.toMillis(),
+              TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    // The account becomes visible under the append lock, so no transfer record can precede its creation.
+    journal.append(JournalRecords.created(account.getAccountId(), account.getBalance()),
+            () -> accounts.createAccount(account));
+    journal.awaitDurable();
+  }
+
+  /**
+   * Journals every creation but waits for the disk once per batch instead of once per account.
+   */
+  @Override
+  public BitSet createAccounts(List<Account> accounts) {
+    final BitSet duplicates = new BitSet();
+    for (int i = 0; i < accounts.size(); i++) {
+      final Account account = accounts.get(i);
+      try {
+        journal.append(JournalRecords.created(account.getAccountId(), account.getBalance()),
+                () -> this.accounts.createAccount(account));
+      } catch (DuplicateAccountIdException e) {
+        duplicates.set(i);
+      }
+    }
+    journal.awaitDurable();
+    return duplicates;
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    return accounts.getAccount(accountId);
+  }
+
+  @Override
+  public void clearAccounts() {
+    journal.append(JournalRecords.cleared(), accounts::clearAccounts);
+    journal.awaitDurable();
+  }
+
+  @Override
+  public long scan(long cursor, int limit, BalanceVisitor visitor) throws IOException {
+    return accounts.scan(cursor, limit, visitor);
+  }
+
+  /**
+   * Reads the latest snapshot with the journal segments after it applied on the fly. The current
+   * segment is sealed first, so the view ends at a prefix of the journal. A transfer is journaled
+   * only after every earlier change of its accounts, so any prefix is a consistent cut although
+   * transfers keep running. Only the segments since the last snapshot are replayed; once there are
+   * more than {@value #MAX_TAIL_SEGMENTS} of them they are folded into a new snapshot first.
+   */
+  @Override
+  public void scanPointInTime(BalanceVisitor visitor) throws IOException {
+    final AccountSnapshot snapshot;
+    final Tail tail = new Tail();
+    snapshotLock.lock();
+    try {
+      journal.roll();
+      final long sealed = journal.currentSegment() - 1;
+      AccountSnapshot current = AccountSnapshot.open(directory.resolve(SNAPSHOT_FILE));
+      long from = current == null ? 0 : current.nextSegment();
+      if (sealed - from >= MAX_TAIL_SEGMENTS) {
+        snapshot();
+        current = AccountSnapshot.open(directory.resolve(SNAPSHOT_FILE));
+        from = sealed + 1;
+      }
+      snapshot = current;
+      if (from <= sealed) {
+        TransferJournal.replay(directory, from, sealed, tail);
+      }
+    } finally {
+      snapshotLock.unlock();
+    }
+    if (snapshot != null && !tail.cleared) {
+      snapshot.forEach((accountId, balance) -> {
+        final BigDecimal delta = tail.deltas.get(accountId);
+        visitor.account(accountId, delta == null ? balance : balance.add(delta));
+      });
+    }
+    for (Map.Entry<String, BigDecimal> entry : tail.created.entrySet()) {
+      visitor.account(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public int size() {
+    return accounts.size();
+  }
+
+  @Override
+  public long lookups() {
+    return accounts.lookups();
+  }
+
+  @Override
+  public void checkWritable() {
+    journal.checkWritable();
+  }
+
+  @Override
+  public long recordTransfer(String senderId, String receiverId, BigDecimal amount) {
+    return journal.append(JournalRecords.transferred(senderId, receiverId, amount));
+  }
+
+  @Override
+  public long recordTransfer(String senderId, String receiverId, long amountUnits) {
+    return journal.append(JournalRecords.transferred(senderId, receiverId, amountUnits, balanceProperties.getScale()));
+  }
+
+  @Override
+  public long recordBatch(Account[] accounts, BigDecimal[] deltas) {
+    return journal.append(JournalRecords.batch(accounts, deltas));
+  }
+
+  @Override
+  public long recordBatch(Account[] accounts, long[] deltaUnits) {
+    return journal.append(JournalRecords.batch(accounts, deltaUnits, balanceProperties.getScale()));
+  }
+
+  @Override
+  public void awaitDurable() {
+    journal.awaitDurable();
+  }
+
+  @Override
+  public long durablePosition() {
+    return journal.durablePosition();
+  }
+
+  /**
+   * Seals the current journal segment and folds it, with the previous snapshot, into a new snapshot.
+   * Covered segments are deleted afterwards.
+   *
+   * @return whether a snapshot was written, there is nothing to do if no records were appended
+   */
+  public boolean snapshot() throws IOException {
+    snapshotLock.lock();
+    try {
+      final long sealed = journal.roll();
+      if (sealed < 0) {
+        return false;
+      }
+      final long start = System.nanoTime();
+      final Path file = directory.resolve(SNAPSHOT_FILE);
+      final AccountSnapshot previous = AccountSnapshot.open(file);
+      final Map<String, BigDecimal> balances = new HashMap<>(previous == null ? 16 : previous.size() * 4 / 3 + 1);
+      if (previous != null) {
+        previous.forEach(balances::put);
+      }
+      TransferJournal.replay(directory, previous == null ? 0 : previous.nextSegment(), sealed, new Fold(balances));
+      AccountSnapshot.write(file, sealed + 1, balances);
+      TransferJournal.deleteBefore(directory, sealed + 1);
+      log.info("Wrote snapshot of {} accounts up to journal segment {} in {} ms", balances.size(), sealed,
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      return true;
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  @Override
+  public void destroy() throws IOException {
+    if (snapshots != null) {
+      snapshots.shutdownNow();
+    }
+    snapshotLock.lock();
+    try {
+      journal.close();
+    } finally {
+      snapshotLock.unlock();
+    }
+  }
+
+  private void snapshotSafe() {
+    try {
+      snapshot();
+    } catch (Exception ex) {
+      log.error("Accounts snapshot failed, the journal is kept", ex);
+    }
+  }
+
+  private void restore(String accountId, BigDecimal balance) {
+    final Account account = new Account(accountId, balance);
+    if (balanceProperties.isFixedScale()) {
+      account.useFixedScale(balanceProperties.getScale());
+    }
+    accounts.createAccount(account);
+  }
+
+  /**
+   * Rebuilds the accounts, balance changes are applied as signed deposits without overdraft checks.
+   */
+  private class Replay implements JournalRecords.Visitor {
+
+    @Override
+    public void created(String accountId, BigDecimal balance) {
+      restore(accountId, balance);
+    }
+
+    @Override
+    public void changed(String accountId, BigDecimal delta) {
+      final Account account = accounts.getAccount(accountId);
+      if (account != null) {
+        account.balanceCell().deposit(delta);
+      }
+    }
+
+    @Override
+    public void changedUnits(String accountId, long deltaUnits, int scale) {
+      final Account account = accounts.getAccount(accountId);
+      if (account == null) {
+        return;
+      }
+      final BalanceCell cell = account.balanceCell();
+      if (cell instanceof FixedScaleBalanceCell && ((FixedScaleBalanceCell) cell).scale() == scale) {
+        cell.deposit(deltaUnits);
+      } else {
+        cell.deposit(FixedScaleBalanceCell.toDecimal(deltaUnits, scale));
+      }
+    }
+
+    @Override
+    public void cleared() {
+      accounts.clearAccounts();
+    }
+  }
+
+  /**
+   * Collects the journal records after a snapshot: net changes of the snapshot accounts and the
+   * balances of accounts created since. A clear drops the snapshot altogether.
+   */
+  private static class Tail implements JournalRecords.Visitor {
+
+    private final Map<String, BigDecimal> created = new LinkedHashMap<>();
+
+    private final Map<String, BigDecimal> deltas = new HashMap<>();
+
+    private boolean cleared;
+
+    @Override
+    public void created(String accountId, BigDecimal balance) {
+      created.putIfAbsent(accountId, balance);
+    }
+
+    @Override
+    public void changed(String accountId, BigDecimal delta) {
+      if (created.computeIfPresent(accountId, (id, balance) -> balance.add(delta)) == null && !cleared) {
+        deltas.merge(accountId, delta, BigDecimal::add);
+      }
+    }
+
+    @Override
+    public void changedUnits(String accountId, long deltaUnits, int scale) {
+      changed(accountId, FixedScaleBalanceCell.toDecimal(deltaUnits, scale));
+    }
+
+    @Override
+    public void cleared() {
+      cleared = true;
+      created.clear();
+      deltas.clear();
+    }
+  }
+
+  /**
+   * Applies journal records to plain balances, mirroring {@link Replay}.
+   */
+  private static class Fold implements JournalRecords.Visitor {
+
+    private final Map<String, BigDecimal> balances;
+
+    Fold(Map<String, BigDecimal> balances) {
+      this.balances = balances;
+    }
+
+    @Override
+    public void created(String accountId, BigDecimal balance) {
+      balances.putIfAbsent(accountId, balance);
+    }
+
+    @Override
+    public void changed(String accountId, BigDecimal delta) {
+      balances.computeIfPresent(accountId, (id, balance) -> balance.add(delta));
+    }
+
+    @Override
+    public void changedUnits(String accountId, long deltaUnits, int scale) {
+      changed(accountId, FixedScaleBalanceCell.toDecimal(deltaUnits, scale));
+    }
+
+    @Override
+    public void cleared() {
+      balances.clear();
+    }
+  }
+}
@@ -0,0 +1,381 @@
+package com.db.awmd.challenge.repository.h2;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accounts table in an embedded H2 database, written behind the in-memory accounts with group commit.
+ * <p>
+ * Callers record creations and balance changes into the current group. Changes are coalesced per
+ * account into one net delta, so a hot account touched by thousands of transfers in a group costs
+ * a single row update. A single writer thread takes all groups recorded so far and writes them in
+ * one transaction with batched, prepared statements that live as long as the store.
+ * <p>
+ * Balance changes are recorded from the commit listener, while the transfer engine holds the
+ * accounts, so every record comes after all earlier changes of its accounts. Groups are written in
+ * recording order, one transaction each, so the table always holds a prefix of the records that
+ * contains every earlier change of each account it touches: a crash loses the last groups, never
+ * half a transfer, and never leaves a balance the account did not have.
+ * Balances are stored in minor units of a fixed scale, which is checked on open.
+ */
+public class AccountStore implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(AccountStore.class);
+
+  private final Connection connection;
+
+  private final boolean fsync;
+
+  // Owned by the writer thread. Rows are keyed by creation sequence, a cheaper key than the id.
+  private final Map<String, Long> sequences;
+  private final PreparedStatement insert;
+  private final PreparedStatement update;
+  private final PreparedStatement deleteAll;
+  private final PreparedStatement checkpoint;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hasPending = lock.newCondition();
+  private final Condition madeDurable = lock.newCondition();
+
+  private List<Group> pending = new ArrayList<>();
+  private long nextSequence;
+  private long enqueued;
+  // Written under the lock, read without it by durablePosition.
+  private volatile long durable;
+  // Written under the lock, read without it by checkWritable.
+  private volatile SQLException failure;
+  private volatile boolean closed;
+
+  private final Thread writer;
+
+  private AccountStore(Connection connection, boolean fsync, Map<String, Long> sequences, long nextSequence)
+          throws SQLException {
+    this.connection = connection;
+    this.fsync = fsync;
+    this.sequences = sequences;
+    this.nextSequence = nextSequence;
+    this.insert = connection.prepareStatement("INSERT INTO accounts (seq, id, balance) VALUES (?, ?, ?)");
+    this.update = connection.prepareStatement("UPDATE accounts SET balance = balance + ? WHERE seq = ?");
+    this.deleteAll = connection.prepareStatement("DELETE FROM accounts");
+    this.checkpoint = connection.prepareStatement("CHECKPOINT SYNC");
+    this.writer = new Thread(this::writeLoop, "account-store");
+    this.writer.setDaemon(true);
+  }
+
+  /**
+   * Opens the database at {@code url}, creating the schema if needed, passes the stored accounts in
+   * creation order to the loader and starts the writer.
+   *
+   * @throws IllegalStateException if the balances were stored with a different scale
+   */
+  public static AccountStore open(String url, int scale, boolean fsync, Loader loader) throws SQLException {
+    final Connection connection = DriverManager.getConnection(url);
+    try {
+      final Map<String, Long> sequences = new HashMap<>();
+      long nextSequence = 0;
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("CREATE TABLE IF NOT EXISTS accounts ("
+                + "seq BIGINT PRIMARY KEY, id VARCHAR NOT NULL UNIQUE, balance BIGINT NOT NULL)");
+        statement.execute("CREATE TABLE IF NOT EXISTS balance_scale (scale INT NOT NULL)");
+        try (ResultSet stored = statement.executeQuery("SELECT scale FROM balance_scale")) {
+          if (!stored.next()) {
+            statement.execute("INSERT INTO balance_scale VALUES (" + scale + ")");
+          } else if (stored.getInt(1) != scale) {
+            throw new IllegalStateException("Balances are stored with scale " + stored.getInt(1)
+                    + " but accounts.balance.scale is " + scale + ".");
+          }
+        }
+        try (ResultSet accounts = statement.executeQuery("SELECT seq, id, balance FROM accounts ORDER BY seq")) {
+          while (accounts.next()) {
+            sequences.put(accounts.getString(2), accounts.getLong(1));
+            nextSequence = accounts.getLong(1) + 1;
+            loader.account(accounts.getString(2), accounts.getLong(3));
+          }
+        }
+      }
+      connection.setAutoCommit(false);
+      final AccountStore store = new AccountStore(connection, fsync, sequences, nextSequence);
+      store.writer.start();
+      return store;
+    } catch (SQLException | RuntimeException ex) {
+      connection.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Receives the stored accounts on open.
+   */
+  public interface Loader {
+    void account(String accountId, long balanceUnits);
+  }
+
+  /**
+   * Records the creation after running {@code guard}, atomically with respect to other records, so
+   * no balance change of the account can be recorded before it. If the guard throws nothing is recorded.
+   */
+  public void created(String accountId, long balanceUnits, Runnable guard) {
+    lock.lock();
+    try {
+      checkWritable();
+      guard.run();
+      current().created.add(new Creation(nextSequence++, accountId, balanceUnits));
+      recorded();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return position of the change, durable once {@link #durablePosition()} reaches it
+   */
+  public long transferred(String senderId, String receiverId, long amountUnits) {
+    lock.lock();
+    try {
+      checkWritable();
+      final Group group = current();
+      group.change(senderId, -amountUnits);
+      group.change(receiverId, amountUnits);
+      return recorded();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return position of the changes, see {@link #transferred}
+   */
+  public long batch(Account[] accounts, long[] deltaUnits) {
+    lock.lock();
+    try {
+      checkWritable();
+      final Group group = current();
+      for (int i = 0; i < accounts.length; i++) {
+        group.change(accounts[i].getAccountId(), deltaUnits[i]);
+      }
+      return recorded();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Records the removal of all accounts after running {@code guard}. Starts a new group, changes
+   * recorded before must not be coalesced with accounts created after.
+   */
+  public void cleared(Runnable guard) {
+    lock.lock();
+    try {
+      checkWritable();
+      guard.run();
+      final Group group = new Group();
+      group.cleared = true;
+      pending.add(group);
+      recorded();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until every group recorded before this call is committed, and checkpointed to disk if
+   * fsync is on.
+   */
+  public void awaitDurable() {
+    lock.lock();
+    try {
+      final long target = enqueued;
+      while (durable < target) {
+        checkWritable();
+        madeDurable.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Position up to which everything recorded is committed, and checkpointed to disk if fsync is on.
+   */
+  public long durablePosition() {
+    return durable;
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      hasPending.signal();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      connection.close();
+    } catch (SQLException ex) {
+      log.warn("Closing the account store failed", ex);
+    }
+  }
+
+  private Group current() {
+    if (pending.isEmpty()) {
+      pending.add(new Group());
+    }
+    return pending.get(pending.size() - 1);
+  }
+
+  private long recorded() {
+    hasPending.signal();
+    return ++enqueued;
+  }
+
+  /**
+   * Fails once the store stopped accepting records, after a write failed or it was closed.
+   */
+  public void checkWritable() {
+    if (failure != null) {
+      throw new AccountException("Account store is not writable.", failure);
+    }
+    if (closed) {
+      throw new AccountException("Account store is closed.");
+    }
+  }
+
+  private void writeLoop() {
+    while (true) {
+      final List<Group> groups;
+      final long groupsEnd;
+      lock.lock();
+      try {
+        while (pending.isEmpty() && !closed) {
+          hasPending.awaitUninterruptibly();
+        }
+        if (pending.isEmpty()) {
+          return;
+        }
+        groups = pending;
+        groupsEnd = enqueued;
+        pending = new ArrayList<>();
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        for (Group group : groups) {
+          write(group);
+        }
+        connection.commit();
+        if (fsync) {
+          checkpoint.execute();
+        }
+      } catch (SQLException ex) {
+        log.error("Account store write failed", ex);
+        try {
+          connection.rollback();
+        } catch (SQLException rollbackFailure) {
+          ex.addSuppressed(rollbackFailure);
+        }
+        lock.lock();
+        try {
+          failure = ex;
+          madeDurable.signalAll();
+        } finally {
+          lock.unlock();
+        }
+        return;
+      }
+
+      lock.lock();
+      try {
+        durable = groupsEnd;
+        madeDurable.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Removal first, then creations, then the net changes, which may refer to accounts created in
+   * the same group.
+   */
+  private void write(Group group) throws SQLException {
+    if (group.cleared) {
+      deleteAll.executeUpdate();
+      sequences.clear();
+    }
+    if (!group.created.isEmpty()) {
+      for (Creation creation : group.created) {
+        sequences.put(creation.accountId, creation.sequence);
+        insert.setLong(1, creation.sequence);
+        insert.setString(2, creation.accountId);
+        insert.setLong(3, creation.balanceUnits);
+        insert.addBatch();
+      }
+      insert.executeBatch();
+    }
+    boolean updates = false;
+    for (Map.Entry<String, long[]> change : group.changes.entrySet()) {
+      if (change.getValue()[0] != 0) {
+        update.setLong(1, change.getValue()[0]);
+        update.setLong(2, sequences.get(change.getKey()));
+        update.addBatch();
+        updates = true;
+      }
+    }
+    if (updates) {
+      update.executeBatch();
+    }
+  }
+
+  /**
+   * Records written in one go.
+   */
+  private static final class Group {
+
+    boolean cleared;
+
+    final List<Creation> created = new ArrayList<>();
+
+    // Net change per account id.
+    final Map<String, long[]> changes = new HashMap<>();
+
+    void change(String accountId, long deltaUnits) {
+      changes.computeIfAbsent(accountId, id -> new long[1])[0] += deltaUnits;
+    }
+  }
+
+  private static final class Creation {
+
+    final long sequence;
+    final String accountId;
+    final long balanceUnits;
+
+    Creation(long sequence, String accountId, long balanceUnits) {
+      this.sequence = sequence;
+      this.accountId = accountId;
+      this.balanceUnits = balanceUnits;
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package com.db.awmd.challenge.repository.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary image of all account balances, covering the journal up to a segment.
+ * <p>
+ * Layout: {@code magic, version, nextSegment, count}, then per account
+ * {@code idLength, id (UTF-8), scale, unscaledLength, unscaled}, then a CRC32 of everything before it.
+ * Snapshots are written to a temporary file and renamed over the previous one, so a crash leaves
+ * either the old or the new snapshot in place.
+ */
+public final class AccountSnapshot {
+
+  private static final int MAGIC = 0x41434e53;
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+  /**
+   * Receives the accounts of a snapshot.
+   */
+  public interface Loader {
+    void account(String accountId, BigDecimal balance) throws IOException;
+  }
+
+  private final MappedByteBuffer buffer;
+  private final long nextSegment;
+  private final int size;
+
+  private AccountSnapshot(MappedByteBuffer buffer, long nextSegment, int size) {
+    this.buffer = buffer;
+    this.nextSegment = nextSegment;
+    this.size = size;
+  }
+
+  /**
+   * Maps the snapshot into memory and checks its integrity.
+   *
+   * @return the snapshot, or {@code null} if there is none yet
+   */
+  public static AccountSnapshot open(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    final MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.limit() < HEADER_LENGTH + Integer.BYTES) {
+      throw new IOException("Snapshot " + file + " is truncated.");
+    }
+    final int checksumOffset = buffer.limit() - Integer.BYTES;
+    final CRC32 crc = new CRC32();
+    final ByteBuffer body = buffer.duplicate();
+    body.limit(checksumOffset);
+    crc.update(body);
+    if ((int) crc.getValue() != buffer.getInt(checksumOffset)) {
+      throw new IOException("Snapshot " + file + " is corrupt.");
+    }
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+      throw new IOException("Snapshot " + file + " has an unknown format.");
+    }
+    return new AccountSnapshot(buffer, buffer.getLong(2 * Integer.BYTES), buffer.getInt(2 * Integer.BYTES + Long.BYTES));
+  }
+
+  /**
+   * First journal segment not covered by this snapshot.
+   */
+  public long nextSegment() {
+    return nextSegment;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void forEach(Loader loader) throws IOException {
+    final ByteBuffer in = buffer.duplicate();
+    in.position(HEADER_LENGTH);
+    byte[] unscaled = new byte[16];
+    for (int i = 0; i < size; i++) {
+      final byte[] id = new byte[in.getShort() & 0xffff];
+      in.get(id);
+      final int scale = in.getInt();
+      final int unscaledLength = in.getShort() & 0xffff;
+      if (unscaled.length != unscaledLength) {
+        unscaled = new byte[unscaledLength];
+      }
+      in.get(unscaled);
+      loader.account(new String(id, StandardCharsets.UTF_8), new BigDecimal(new BigInteger(unscaled), scale));
+    }
+  }
+
+  /**
+   * Writes a snapshot of {@code balances} covering the journal segments before {@code nextSegment}.
+   */
+  public static void write(Path file, long nextSegment, Map<String, BigDecimal> balances) throws IOException {
+    final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      final CRC32 crc = new CRC32();
+      final CheckedOutputStream checked = new CheckedOutputStream(new ChannelOutput(channel), crc);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(nextSegment);
+      out.writeInt(balances.size());
+      for (Map.Entry<String, BigDecimal> entry : balances.entrySet()) {
+        writeAccount(out, entry.getKey(), entry.getValue());
+      }
+      out.flush();
+      final ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) crc.getValue());
+      while (checksum.hasRemaining()) {
+        channel.write(checksum);
+      }
+      channel.force(false);
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Writes one account in the snapshot layout: {@code idLength, id (UTF-8), scale, unscaledLength, unscaled}.
+   */
+  public static void writeAccount(DataOutput out, String accountId, BigDecimal balance) throws IOException {
+    final byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+    final byte[] unscaled = balance.unscaledValue().toByteArray();
+    out.writeShort(id.length);
+    out.write(id);
+    out.writeInt(balance.scale());
+    out.writeShort(unscaled.length);
+    out.write(unscaled);
+  }
+
+  /**
+   * Writes to the channel without closing it, so the caller can still force it.
+   */
+  private static class ChannelOutput extends OutputStream {
+
+    private final FileChannel channel;
+
+    ChannelOutput(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+}
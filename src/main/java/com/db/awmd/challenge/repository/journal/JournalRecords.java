@@ -0,0 +1,174 @@
+package com.db.awmd.challenge.repository.journal;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Binary encoding of the journal records. Transfers are stored as signed balance changes,
+ * which commute, so replaying them in any order yields the same balances.
+ */
+public final class JournalRecords {
+
+  private static final byte CREATE = 1;
+  private static final byte TRANSFER = 2;
+  private static final byte TRANSFER_UNITS = 3;
+  private static final byte BATCH = 4;
+  private static final byte BATCH_UNITS = 5;
+  private static final byte CLEAR = 6;
+
+  /**
+   * Receives the decoded records.
+   */
+  public interface Visitor {
+
+    void created(String accountId, BigDecimal balance);
+
+    void changed(String accountId, BigDecimal delta);
+
+    void changedUnits(String accountId, long deltaUnits, int scale);
+
+    void cleared();
+  }
+
+  private JournalRecords() {
+  }
+
+  public static byte[] created(String accountId, BigDecimal balance) {
+    return encode(out -> {
+      out.writeByte(CREATE);
+      out.writeUTF(accountId);
+      writeDecimal(out, balance);
+    });
+  }
+
+  public static byte[] transferred(String senderId, String receiverId, BigDecimal amount) {
+    return encode(out -> {
+      out.writeByte(TRANSFER);
+      out.writeUTF(senderId);
+      out.writeUTF(receiverId);
+      writeDecimal(out, amount);
+    });
+  }
+
+  public static byte[] transferred(String senderId, String receiverId, long amountUnits, int scale) {
+    return encode(out -> {
+      out.writeByte(TRANSFER_UNITS);
+      out.writeUTF(senderId);
+      out.writeUTF(receiverId);
+      out.writeLong(amountUnits);
+      out.writeInt(scale);
+    });
+  }
+
+  public static byte[] batch(Account[] accounts, BigDecimal[] deltas) {
+    return encode(out -> {
+      out.writeByte(BATCH);
+      out.writeInt(accounts.length);
+      for (int i = 0; i < accounts.length; i++) {
+        out.writeUTF(accounts[i].getAccountId());
+        writeDecimal(out, deltas[i]);
+      }
+    });
+  }
+
+  public static byte[] batch(Account[] accounts, long[] deltaUnits, int scale) {
+    return encode(out -> {
+      out.writeByte(BATCH_UNITS);
+      out.writeInt(scale);
+      out.writeInt(accounts.length);
+      for (int i = 0; i < accounts.length; i++) {
+        out.writeUTF(accounts[i].getAccountId());
+        out.writeLong(deltaUnits[i]);
+      }
+    });
+  }
+
+  public static byte[] cleared() {
+    return new byte[]{CLEAR};
+  }
+
+  public static void decode(byte[] record, Visitor visitor) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    final byte type = in.readByte();
+    switch (type) {
+      case CREATE:
+        visitor.created(in.readUTF(), readDecimal(in));
+        break;
+      case TRANSFER: {
+        final String senderId = in.readUTF();
+        final String receiverId = in.readUTF();
+        final BigDecimal amount = readDecimal(in);
+        visitor.changed(senderId, amount.negate());
+        visitor.changed(receiverId, amount);
+        break;
+      }
+      case TRANSFER_UNITS: {
+        final String senderId = in.readUTF();
+        final String receiverId = in.readUTF();
+        final long amountUnits = in.readLong();
+        final int scale = in.readInt();
+        visitor.changedUnits(senderId, -amountUnits, scale);
+        visitor.changedUnits(receiverId, amountUnits, scale);
+        break;
+      }
+      case BATCH: {
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          visitor.changed(in.readUTF(), readDecimal(in));
+        }
+        break;
+      }
+      case BATCH_UNITS: {
+        final int scale = in.readInt();
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          visitor.changedUnits(in.readUTF(), in.readLong(), scale);
+        }
+        break;
+      }
+      case CLEAR:
+        visitor.cleared();
+        break;
+      default:
+        throw new IOException("Unknown journal record type " + type + ".");
+    }
+  }
+
+  static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+    final byte[] unscaled = value.unscaledValue().toByteArray();
+    out.writeInt(value.scale());
+    out.writeShort(unscaled.length);
+    out.write(unscaled);
+  }
+
+  static BigDecimal readDecimal(DataInput in) throws IOException {
+    final int scale = in.readInt();
+    final byte[] unscaled = new byte[in.readUnsignedShort()];
+    in.readFully(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+
+  private interface Writer {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private static byte[] encode(Writer writer) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      writer.write(out);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return bytes.toByteArray();
+  }
+}
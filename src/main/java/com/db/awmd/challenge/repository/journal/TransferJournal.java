@@ -0,0 +1,407 @@
+package com.db.awmd.challenge.repository.journal;
+
+import com.db.awmd.challenge.exception.AccountException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal with group commit. Callers enqueue encoded records and a single writer
+ * thread writes everything enqueued so far with one {@link FileChannel#write} pass and one
+ * {@link FileChannel#force}, so concurrent transfers share the cost of an fsync.
+ * <p>
+ * Every record is framed as {@code length, bytes, crc32}. A torn record at the end of the file
+ * is the one being written during a crash; replay stops there and the file is truncated.
+ * <p>
+ * The journal is split into numbered segments. {@link #roll()} seals the current segment so it
+ * can be folded into a snapshot and deleted, while appends continue in the next one.
+ */
+public class TransferJournal implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(TransferJournal.class);
+
+  private static final int FRAME_OVERHEAD = 2 * Integer.BYTES;
+
+  private static final Pattern SEGMENT_NAME = Pattern.compile("accounts-(\\d+)\\.journal");
+
+  /**
+   * Marks the end of a segment in the pending records.
+   */
+  private static final byte[] ROLL = new byte[0];
+
+  private final Path directory;
+
+  private final boolean fsync;
+
+  // Owned by the writer thread.
+  private FileChannel channel;
+  private long writerSegment;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hasPending = lock.newCondition();
+  private final Condition madeDurable = lock.newCondition();
+
+  private List<byte[]> pending = new ArrayList<>();
+  private long segment;
+  private long segmentRecords;
+  private long enqueued;
+  // Written under the lock, read without it by durablePosition.
+  private volatile long durable;
+  // Written under the lock, read without it by checkWritable.
+  private volatile IOException failure;
+  private volatile boolean closed;
+
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+  private final CRC32 crc = new CRC32();
+
+  private final Thread writer;
+
+  private TransferJournal(Path directory, boolean fsync, FileChannel channel, long segment, long segmentRecords) {
+    this.directory = directory;
+    this.fsync = fsync;
+    this.channel = channel;
+    this.writerSegment = segment;
+    this.segment = segment;
+    this.segmentRecords = segmentRecords;
+    this.writer = new Thread(this::writeLoop, "transfer-journal");
+    this.writer.setDaemon(true);
+  }
+
+  /**
+   * Opens the journal in {@code directory}, replays the segments from {@code fromSegment} on into the
+   * visitor and starts the writer. Older segments are already covered by a snapshot and are deleted.
+   */
+  public static TransferJournal open(Path directory, boolean fsync, long fromSegment, JournalRecords.Visitor replay)
+          throws IOException {
+    Files.createDirectories(directory);
+    final long[] segments = segments(directory);
+    final long last = segments.length == 0 ? fromSegment : Math.max(fromSegment, segments[segments.length - 1]);
+    for (long segment : segments) {
+      if (segment < fromSegment) {
+        Files.delete(segmentFile(directory, segment));
+      } else if (segment < last) {
+        try (FileChannel channel = FileChannel.open(segmentFile(directory, segment), StandardOpenOption.READ)) {
+          final long validLength = replay(channel, replay, new long[1]);
+          if (validLength < channel.size()) {
+            log.warn("Ignoring {} torn bytes at the end of journal segment {}", channel.size() - validLength, segment);
+          }
+        }
+      }
+    }
+
+    final Path file = segmentFile(directory, last);
+    final FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    final long[] lastRecords = new long[1];
+    final long validLength = replay(channel, replay, lastRecords);
+    if (validLength < channel.size()) {
+      log.warn("Truncating {} torn bytes at the end of journal {}", channel.size() - validLength, file);
+      channel.truncate(validLength);
+    }
+    channel.position(validLength);
+
+    final TransferJournal journal = new TransferJournal(directory, fsync, channel, last, lastRecords[0]);
+    journal.writer.start();
+    return journal;
+  }
+
+  /**
+   * Replays sealed segments {@code from} to {@code to}, both inclusive, without opening the journal.
+   */
+  public static void replay(Path directory, long from, long to, JournalRecords.Visitor visitor) throws IOException {
+    for (long segment : segments(directory)) {
+      if (segment < from || segment > to) {
+        continue;
+      }
+      try (FileChannel channel = FileChannel.open(segmentFile(directory, segment), StandardOpenOption.READ)) {
+        replay(channel, visitor, new long[1]);
+      }
+    }
+  }
+
+  /**
+   * Deletes the segments before {@code segment}, once a snapshot covers them.
+   */
+  public static void deleteBefore(Path directory, long segment) throws IOException {
+    for (long existing : segments(directory)) {
+      if (existing < segment) {
+        Files.deleteIfExists(segmentFile(directory, existing));
+      }
+    }
+  }
+
+  static Path segmentFile(Path directory, long segment) {
+    return directory.resolve("accounts-" + segment + ".journal");
+  }
+
+  private static long[] segments(Path directory) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return new long[0];
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+              .map(file -> SEGMENT_NAME.matcher(file.getFileName().toString()))
+              .filter(Matcher::matches)
+              .mapToLong(matcher -> Long.parseLong(matcher.group(1)))
+              .sorted()
+              .toArray();
+    }
+  }
+
+  /**
+   * Replays the records of a segment.
+   *
+   * @return position right after the last valid record
+   */
+  private static long replay(FileChannel channel, JournalRecords.Visitor visitor, long[] records) throws IOException {
+    channel.position(0);
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+    final CRC32 checksum = new CRC32();
+    long position = 0;
+    while (true) {
+      final byte[] record;
+      try {
+        final int length = in.readInt();
+        if (length <= 0 || position + FRAME_OVERHEAD + length > channel.size()) {
+          break;
+        }
+        record = new byte[length];
+        in.readFully(record);
+        checksum.reset();
+        checksum.update(record, 0, length);
+        if ((int) checksum.getValue() != in.readInt()) {
+          break;
+        }
+      } catch (EOFException ex) {
+        break;
+      }
+      JournalRecords.decode(record, visitor);
+      position += FRAME_OVERHEAD + record.length;
+      records[0]++;
+    }
+    return position;
+  }
+
+  /**
+   * @return position of the record, durable once {@link #durablePosition()} reaches it
+   */
+  public long append(byte[] record) {
+    return append(record, null);
+  }
+
+  /**
+   * Enqueues the record after running {@code guard}, atomically with respect to other appends.
+   * If the guard throws nothing is enqueued.
+   *
+   * @return position of the record, durable once {@link #durablePosition()} reaches it
+   */
+  public long append(byte[] record, Runnable guard) {
+    lock.lock();
+    try {
+      checkWritable();
+      if (guard != null) {
+        guard.run();
+      }
+      pending.add(record);
+      segmentRecords++;
+      hasPending.signal();
+      return ++enqueued;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until every record enqueued before this call is written, and forced to disk if fsync is on.
+   */
+  public void awaitDurable() {
+    lock.lock();
+    try {
+      final long target = enqueued;
+      while (durable < target) {
+        checkWritable();
+        madeDurable.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Position up to which every record is written, and forced to disk if fsync is on.
+   */
+  public long durablePosition() {
+    return durable;
+  }
+
+  /**
+   * Seals the current segment: appends made after this call go to the next segment. Returns once the
+   * sealed segment is complete on disk.
+   *
+   * @return number of the sealed segment, or -1 if the current segment is empty
+   */
+  public long roll() {
+    lock.lock();
+    try {
+      checkWritable();
+      if (segmentRecords == 0) {
+        return -1;
+      }
+      final long sealed = segment++;
+      segmentRecords = 0;
+      pending.add(ROLL);
+      final long target = ++enqueued;
+      hasPending.signal();
+      while (durable < target) {
+        checkWritable();
+        madeDurable.awaitUninterruptibly();
+      }
+      return sealed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Number of the segment appends currently go to, every lower segment is sealed.
+   */
+  public long currentSegment() {
+    lock.lock();
+    try {
+      return segment;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      closed = true;
+      hasPending.signal();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+  }
+
+  /**
+   * Fails once the journal stopped accepting records, after a write failed or it was closed.
+   */
+  public void checkWritable() {
+    if (failure != null) {
+      throw new AccountException("Transfer journal is not writable.", failure);
+    }
+    if (closed) {
+      throw new AccountException("Transfer journal is closed.");
+    }
+  }
+
+  private void writeLoop() {
+    while (true) {
+      final List<byte[]> batch;
+      final long batchEnd;
+      lock.lock();
+      try {
+        while (pending.isEmpty() && !closed) {
+          hasPending.awaitUninterruptibly();
+        }
+        if (pending.isEmpty()) {
+          return;
+        }
+        batch = pending;
+        batchEnd = enqueued;
+        pending = new ArrayList<>(batch.size());
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        for (byte[] record : batch) {
+          if (record == ROLL) {
+            nextSegment();
+          } else {
+            write(record);
+          }
+        }
+        flush();
+        if (fsync) {
+          channel.force(false);
+        }
+      } catch (IOException ex) {
+        log.error("Transfer journal write failed", ex);
+        lock.lock();
+        try {
+          failure = ex;
+          madeDurable.signalAll();
+        } finally {
+          lock.unlock();
+        }
+        return;
+      }
+
+      lock.lock();
+      try {
+        durable = batchEnd;
+        madeDurable.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void nextSegment() throws IOException {
+    flush();
+    channel.force(false);
+    channel.close();
+    writerSegment++;
+    channel = FileChannel.open(segmentFile(directory, writerSegment),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+  }
+
+  private void write(byte[] record) throws IOException {
+    final int frameLength = FRAME_OVERHEAD + record.length;
+    if (frameLength > buffer.remaining()) {
+      flush();
+      if (frameLength > buffer.capacity()) {
+        buffer = ByteBuffer.allocateDirect(frameLength);
+      }
+    }
+    crc.reset();
+    crc.update(record, 0, record.length);
+    buffer.putInt(record.length).put(record).putInt((int) crc.getValue());
+  }
+
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
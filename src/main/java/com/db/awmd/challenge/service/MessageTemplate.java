@@ -0,0 +1,52 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message pattern with {@code {}} placeholders, split into literal fragments once so that
+ * rendering is plain appending instead of {@link String#format} parsing on every message.
+ */
+public final class MessageTemplate {
+
+  private static final String PLACEHOLDER = "{}";
+
+  private final String[] fragments;
+
+  private MessageTemplate(String[] fragments) {
+    this.fragments = fragments;
+  }
+
+  public static MessageTemplate compile(String pattern) {
+    final List<String> fragments = new ArrayList<>();
+    int from = 0;
+    int at;
+    while ((at = pattern.indexOf(PLACEHOLDER, from)) >= 0) {
+      fragments.add(pattern.substring(from, at));
+      from = at + PLACEHOLDER.length();
+    }
+    fragments.add(pattern.substring(from));
+    return new MessageTemplate(fragments.toArray(new String[0]));
+  }
+
+  /**
+   * Appends the message with placeholders replaced by the arguments in order.
+   *
+   * @throws IllegalArgumentException if the number of arguments does not match the placeholders
+   */
+  public StringBuilder appendTo(StringBuilder target, Object... args) {
+    if (args.length != fragments.length - 1) {
+      throw new IllegalArgumentException(
+              "Expected " + (fragments.length - 1) + " message arguments but got " + args.length + ".");
+    }
+    target.append(fragments[0]);
+    for (int i = 0; i < args.length; i++) {
+      target.append(args[i]).append(fragments[i + 1]);
+    }
+    return target;
+  }
+
+  public String render(Object... args) {
+    return appendTo(new StringBuilder(64), args).toString();
+  }
+}
@@ -1,39 +1,35 @@
 package com.db.awmd.challenge.service.account;
 
-import com.db.awmd.challenge.domain.Account;
-import com.db.awmd.challenge.service.NotificationService;
 import com.db.awmd.challenge.service.account.events.AccountBalanceTransferredEvent;
+import com.db.awmd.challenge.service.account.events.AccountBalancesBatchTransferredEvent;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
-
 @Component
 @RequiredArgsConstructor
 public class AccountEventListener {
 
-  private final NotificationService notificationService;
+  private final TransferNotificationDispatcher notificationDispatcher;
 
-  public AccountEventListener(NotificationService notificationService) {
-    this.notificationService = notificationService;
+  public AccountEventListener(TransferNotificationDispatcher notificationDispatcher) {
+    this.notificationDispatcher = notificationDispatcher;
   }
 
   @EventListener
   public void onAccountBalanceTransferred(AccountBalanceTransferredEvent event) {
-    final AccountBalanceTransferredEvent.Payload payload = event.payload();
-    sendTransferNotifications(payload.getSender(), payload.getReceiver(), payload.getAmount());
+    sendTransferNotifications(event.payload());
   }
 
-  private void sendTransferNotifications(Account sender, Account receiver, BigDecimal amount) {
-    sendTransferNotification(sender, "You've just sent %s to account #%s.",
-            amount, receiver.getAccountId());
-    sendTransferNotification(receiver, "You've just received %s from account #%s.",
-            amount, sender.getAccountId());
+  @EventListener
+  public void onAccountBalancesBatchTransferred(AccountBalancesBatchTransferredEvent event) {
+    for (AccountBalanceTransferredEvent.Payload transfer : event.payload().getTransfers()) {
+      sendTransferNotifications(transfer);
+    }
   }
 
-  private void sendTransferNotification(Account account, String msgTemplate, Object... msgArgs) {
-    String msg = String.format(msgTemplate, msgArgs);
-    notificationService.notifyAboutTransfer(account, msg);
+  private void sendTransferNotifications(AccountBalanceTransferredEvent.Payload transfer) {
+    notificationDispatcher.sent(transfer.getSenderId(), transfer.getAmount(), transfer.getReceiverId());
+    notificationDispatcher.received(transfer.getReceiverId(), transfer.getReceived(), transfer.getSenderId());
   }
 }
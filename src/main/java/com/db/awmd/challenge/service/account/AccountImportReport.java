@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.service.account;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk account import: counts plus one entry per rejected record, up to a limit.
+ */
+public class AccountImportReport {
+
+  private final int maxErrors;
+
+  private long created;
+
+  private long rejected;
+
+  private final List<Error> errors = new ArrayList<>();
+
+  public AccountImportReport(int maxErrors) {
+    this.maxErrors = maxErrors;
+  }
+
+  public void created(int count) {
+    created += count;
+  }
+
+  public void rejected(int line, String accountId, String message) {
+    rejected++;
+    if (errors.size() < maxErrors) {
+      errors.add(new Error(line, accountId, message));
+    }
+  }
+
+  public long getCreated() {
+    return created;
+  }
+
+  public long getRejected() {
+    return rejected;
+  }
+
+  /**
+   * The first rejected records, {@link #getRejected()} counts all of them.
+   */
+  public List<Error> getErrors() {
+    return errors;
+  }
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public static class Error {
+
+    private final int line;
+    private final String accountId;
+    private final String message;
+
+    Error(int line, String accountId, String message) {
+      this.line = line;
+      this.accountId = accountId;
+      this.message = message;
+    }
+
+    public int getLine() {
+      return line;
+    }
+
+    public String getAccountId() {
+      return accountId;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+  }
+}
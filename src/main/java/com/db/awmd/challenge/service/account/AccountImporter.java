@@ -0,0 +1,212 @@
+package com.db.awmd.challenge.service.account;
+
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.ImportProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates accounts from a stream of account objects, either newline-delimited or as one JSON array.
+ * <p>
+ * The input is read token by token, so only the current batch of accounts is held in memory
+ * whatever the size of the upload. Each record is validated like a single account creation and
+ * valid accounts are created in batches through {@link AccountsService#createAccounts}. Invalid and
+ * duplicate records are reported with the line they start on and do not stop the import. Malformed
+ * JSON ends it, after the accounts read up to that point are created.
+ */
+@Service
+public class AccountImporter {
+
+  private static final Logger log = LoggerFactory.getLogger(AccountImporter.class);
+
+  private final AccountsService accountsService;
+
+  private final ObjectMapper objectMapper;
+
+  private final Validator validator;
+
+  private final BalanceProperties balanceProperties;
+
+  private final ImportProperties properties;
+
+  public AccountImporter(AccountsService accountsService, ObjectMapper objectMapper, Validator validator,
+                         BalanceProperties balanceProperties, ImportProperties properties) {
+    this.accountsService = accountsService;
+    this.objectMapper = objectMapper;
+    this.validator = validator;
+    this.balanceProperties = balanceProperties;
+    this.properties = properties;
+  }
+
+  public AccountImportReport importAccounts(InputStream in) throws IOException {
+    final long start = System.nanoTime();
+    final AccountImportReport report = new AccountImportReport(properties.getMaxErrors());
+    final Batch batch = new Batch(properties.getBatchSize(), report);
+    try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+      JsonToken token = parser.nextToken();
+      final boolean array = token == JsonToken.START_ARRAY;
+      if (array) {
+        token = parser.nextToken();
+      }
+      while (token != null && token != JsonToken.END_ARRAY) {
+        final int line = parser.getTokenLocation().getLineNr();
+        if (token == JsonToken.START_OBJECT) {
+          read(parser, line, batch, report);
+        } else {
+          parser.skipChildren();
+          report.rejected(line, null, "Expected an account object.");
+        }
+        token = parser.nextToken();
+      }
+    } catch (JsonProcessingException e) {
+      report.rejected(e.getLocation() == null ? 0 : e.getLocation().getLineNr(), null,
+              "Malformed JSON, import stopped: " + e.getOriginalMessage());
+    } finally {
+      batch.flush();
+    }
+    log.info("Imported accounts created={} rejected={} in {} ms", report.getCreated(), report.getRejected(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return report;
+  }
+
+  /**
+   * Reads the fields of one account object, unknown fields are skipped.
+   */
+  private void read(JsonParser parser, int line, Batch batch, AccountImportReport report) throws IOException {
+    String accountId = null;
+    BigDecimal balance = null;
+    String currency = null;
+    String error = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      final JsonToken value = parser.nextToken();
+      if (value == JsonToken.VALUE_NULL) {
+        continue;
+      }
+      if ("accountId".equals(field)) {
+        if (value.isScalarValue()) {
+          accountId = parser.getText();
+        } else {
+          parser.skipChildren();
+          error = "accountId: must be a string.";
+        }
+      } else if ("currency".equals(field)) {
+        if (value == JsonToken.VALUE_STRING) {
+          currency = parser.getText();
+        } else {
+          parser.skipChildren();
+          error = "currency: must be a string.";
+        }
+      } else if ("balance".equals(field)) {
+        if (value.isNumeric()) {
+          balance = parser.getDecimalValue();
+        } else if (value == JsonToken.VALUE_STRING) {
+          try {
+            balance = new BigDecimal(parser.getText());
+          } catch (NumberFormatException e) {
+            error = "balance: must be a number.";
+          }
+        } else {
+          parser.skipChildren();
+          error = "balance: must be a number.";
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    final Account account = new Account(accountId, balance, currency);
+    if (error == null) {
+      error = validate(account);
+    }
+    if (error == null) {
+      batch.add(account, line);
+    } else {
+      report.rejected(line, accountId, error);
+    }
+  }
+
+  /**
+   * Applies the constraints of a single account creation.
+   *
+   * @return the error message, or {@code null} if the account is valid
+   */
+  private String validate(Account account) {
+    final Set<ConstraintViolation<Account>> violations = validator.validate(account);
+    if (!violations.isEmpty()) {
+      final Set<String> messages = new TreeSet<>();
+      for (ConstraintViolation<Account> violation : violations) {
+        messages.add(violation.getPropertyPath() + ": " + violation.getMessage());
+      }
+      return String.join(" ", messages);
+    }
+    if (balanceProperties.isFixedScale()) {
+      try {
+        FixedScaleBalanceCell.toUnits(account.getBalance(), balanceProperties.scaleOf(account.getCurrency()));
+      } catch (ArithmeticException e) {
+        return "Balance does not fit the scale of the account's currency.";
+      }
+    }
+    try {
+      accountsService.checkCurrency(account.getCurrency());
+    } catch (IllegalArgumentException e) {
+      return e.getMessage();
+    }
+    return null;
+  }
+
+  /**
+   * Valid accounts waiting to be created, with the lines they were read from.
+   */
+  private class Batch {
+
+    private final AccountImportReport report;
+    private final List<Account> accounts;
+    private final int[] lines;
+
+    Batch(int size, AccountImportReport report) {
+      this.report = report;
+      this.accounts = new ArrayList<>(size);
+      this.lines = new int[size];
+    }
+
+    void add(Account account, int line) {
+      lines[accounts.size()] = line;
+      accounts.add(account);
+      if (accounts.size() == lines.length) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (accounts.isEmpty()) {
+        return;
+      }
+      final BitSet duplicates = accountsService.createAccounts(accounts);
+      for (int i = duplicates.nextSetBit(0); i >= 0; i = duplicates.nextSetBit(i + 1)) {
+        final String accountId = accounts.get(i).getAccountId();
+        report.rejected(lines[i], accountId, "Account id " + accountId + " already exists!");
+      }
+      report.created(accounts.size() - duplicates.cardinality());
+      accounts.clear();
+    }
+  }
+}
@@ -1,18 +1,36 @@
 package com.db.awmd.challenge.service.account;
 
+import com.db.awmd.challenge.config.BalanceProperties;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import com.db.awmd.challenge.domain.TransferLeg;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.NoExchangeRateException;
 import com.db.awmd.challenge.exception.NotEnoughAccountBalanceException;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.account.engine.TransferEngine;
 import com.db.awmd.challenge.service.account.events.AccountBalanceTransferredEvent;
+import com.db.awmd.challenge.service.account.events.AccountBalancesBatchTransferredEvent;
+import com.db.awmd.challenge.service.account.fx.FxRateTable;
+import com.db.awmd.challenge.service.account.fx.FxRates;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 @Service
 public class AccountsService {
@@ -24,84 +42,626 @@ public class AccountsService {
     return accountsRepository;
   }
 
-  private final ApplicationEventPublisher applicationEventPublisher;
+  private final TransferEventOutbox eventOutbox;
+
+  private final TransferEngine transferEngine;
+
+  private final BalanceProperties balanceProperties;
+
+  private final TransferMetrics metrics;
+
+  private final IdempotencyCache idempotencyCache;
+
+  private final BalanceLedger ledger;
+
+  private final TransferHistory history;
+
+  private final FxRateTable fxRateTable;
 
   @Autowired
-  public AccountsService(AccountsRepository accountsRepository, ApplicationEventPublisher applicationEventPublisher) {
+  public AccountsService(AccountsRepository accountsRepository, TransferEventOutbox eventOutbox,
+                         TransferEngine transferEngine, BalanceProperties balanceProperties,
+                         TransferMetrics metrics, IdempotencyCache idempotencyCache, BalanceLedger ledger,
+                         TransferHistory history, FxRateTable fxRateTable) {
     this.accountsRepository = accountsRepository;
-    this.applicationEventPublisher = applicationEventPublisher;
+    this.eventOutbox = eventOutbox;
+    this.transferEngine = transferEngine;
+    this.balanceProperties = balanceProperties;
+    this.metrics = metrics;
+    this.idempotencyCache = idempotencyCache;
+    this.ledger = ledger;
+    this.history = history;
+    this.fxRateTable = fxRateTable;
+    final Integer defaultScale = balanceProperties.getCurrencyScales().get(fxRateTable.defaultCurrency());
+    if (defaultScale != null && defaultScale != balanceProperties.getScale()) {
+      throw new IllegalStateException("The scale of the default currency " + fxRateTable.defaultCurrency()
+              + " is accounts.balance.scale, it can not be changed in accounts.balance.currency-scales.");
+    }
+    // Accounts recovered by the repository on startup.
+    try {
+      accountsRepository.scan(0, Integer.MAX_VALUE, ledger::restored);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
   }
 
+  /**
+   * @throws IllegalArgumentException if the account has a currency the repository cannot keep
+   */
   public void createAccount(Account account) {
-    this.accountsRepository.createAccount(account);
+    checkCurrency(account.getCurrency());
+    if (balanceProperties.isFixedScale()) {
+      account.useFixedScale(scaleOf(account));
+    }
+    final long ticket = ledger.open();
+    try {
+      this.accountsRepository.createAccount(account);
+      ledger.created(ticket, account);
+    } finally {
+      ledger.close(ticket);
+    }
+  }
+
+  /**
+   * Creates the accounts as one batch, see {@link AccountsRepository#createAccounts}.
+   *
+   * @return positions in {@code accounts} rejected as duplicates
+   * @throws ArithmeticException      in fixed-scale mode if a balance does not fit the scale of its
+   *                                  currency, before any account of the batch is created
+   * @throws IllegalArgumentException if an account has a currency the repository cannot keep, before
+   *                                  any account of the batch is created
+   */
+  public BitSet createAccounts(List<Account> accounts) {
+    for (Account account : accounts) {
+      checkCurrency(account.getCurrency());
+    }
+    if (balanceProperties.isFixedScale()) {
+      for (Account account : accounts) {
+        account.useFixedScale(scaleOf(account));
+      }
+    }
+    final long ticket = ledger.open();
+    try {
+      final BitSet duplicates = this.accountsRepository.createAccounts(accounts);
+      for (int i = duplicates.nextClearBit(0); i < accounts.size(); i = duplicates.nextClearBit(i + 1)) {
+        ledger.created(ticket, accounts.get(i));
+      }
+      return duplicates;
+    } finally {
+      ledger.close(ticket);
+    }
+  }
+
+  /**
+   * Accounts of any currency can be created, rates are only needed once they transfer to another
+   * currency. Repositories that do not keep currencies take the default currency only.
+   *
+   * @throws IllegalArgumentException if accounts in {@code currency} cannot be kept
+   */
+  public void checkCurrency(String currency) {
+    if (currency != null && !currency.equals(fxRateTable.defaultCurrency()) && !accountsRepository.keepsCurrencies()) {
+      throw new IllegalArgumentException("This accounts repository only keeps accounts in "
+              + fxRateTable.defaultCurrency() + ".");
+    }
+  }
+
+  /**
+   * Removes all accounts. Not meant to run alongside transfers.
+   */
+  public void clearAccounts() {
+    this.accountsRepository.clearAccounts();
+    ledger.clear();
+    history.clear();
+  }
+
+  /**
+   * Balance totals and checksums at a sequence point taken now, see {@link BalanceLedger#audit}.
+   * With {@code verify} the balances of all accounts are read back and compared with the ledger.
+   */
+  public BalanceAudit audit(boolean verify) {
+    return verify ? ledger.audit(accountsRepository) : ledger.audit();
   }
 
   public Account getAccount(String accountId) {
     return this.accountsRepository.getAccount(accountId);
   }
 
+  /**
+   * Recent movements of the account after account sequence {@code since}, oldest first.
+   *
+   * @throws AccountNotFoundException if there is no such account
+   */
+  public List<TransferHistory.Entry> getTransfers(String accountId, long since) {
+    getAccountSafe(accountId);
+    return history.since(accountId, since);
+  }
+
+  /**
+   * Weakly consistent listing in creation order, see {@link AccountsRepository#scan}.
+   */
+  public long listAccounts(long cursor, int limit, AccountsRepository.BalanceVisitor visitor) throws IOException {
+    return this.accountsRepository.scan(cursor, limit, visitor);
+  }
+
+  /**
+   * Listing of all balances as of one point in time, see {@link AccountsRepository#scanPointInTime}.
+   */
+  public void listAccountsPointInTime(AccountsRepository.BalanceVisitor visitor) throws IOException {
+    this.accountsRepository.scanPointInTime(visitor);
+  }
+
+  /**
+   * @throws AccountNotFoundException         if the sender or receiver does not exist
+   * @throws NotEnoughAccountBalanceException if the sender lacks balance
+   * @throws NoExchangeRateException          if the accounts have different currencies without a rate
+   * @see #tryTransfer(String, String, BigDecimal)
+   */
   public void transfer(String senderId, String receiverId, BigDecimal amount) {
+    raise(tryTransfer(senderId, receiverId, amount), senderId, receiverId, amount);
+  }
+
+  /**
+   * Moves {@code amount} from sender to receiver and reports rejections as a result rather than
+   * an exception. The amount is in the sender's currency, a receiver with another currency is
+   * credited the converted amount, see {@link FxRateTable}. In fixed-scale mode an amount with
+   * more fraction digits than the sender's currency keeps is rejected as
+   * {@link TransferResult#AMOUNT_SCALE}.
+   *
+   * @throws IllegalArgumentException if the amount is not positive
+   */
+  public TransferResult tryTransfer(String senderId, String receiverId, BigDecimal amount) {
     if (BigDecimal.ZERO.compareTo(amount) >= 0) {
       throw new IllegalArgumentException("Transfer amount should be a positive value.");
     }
 
-    final Account sender = getAccountSafe(senderId);
-    final Account receiver = getAccountSafe(receiverId);
+    final long start = System.nanoTime();
+    final Account sender = accountsRepository.getAccount(senderId);
+    if (sender == null) {
+      return TransferResult.SENDER_NOT_FOUND;
+    }
+    final Account receiver = accountsRepository.getAccount(receiverId);
+    if (receiver == null) {
+      return TransferResult.RECEIVER_NOT_FOUND;
+    }
+    if (balanceProperties.isFixedScale()) {
+      final long amountUnits;
+      try {
+        amountUnits = FixedScaleBalanceCell.toUnits(amount, scaleOf(sender));
+      } catch (ArithmeticException ex) {
+        return TransferResult.AMOUNT_SCALE;
+      }
+      return tryTransfer(start, sender, receiver, amountUnits);
+    }
+    if (!sameCurrency(sender, receiver)) {
+      return tryConvertingTransfer(start, sender, receiver, amount);
+    }
 
-    final AccountSyncOrderResolver resolver = AccountSyncOrderResolver.resolve(sender, receiver);
-    synchronized (resolver.getFirst()) {
-      synchronized (resolver.getSecond()) {
-        addBalance(sender, amount.negate());
-        addBalance(receiver, amount);
+    accountsRepository.checkWritable();
+    final long ticket = ledger.open();
+    final boolean committed;
+    try {
+      committed = transferEngine.transfer(sender, receiver, amount,
+              (senderBalance, receiverBalance, senderSequence, receiverSequence) -> {
+                final long position = accountsRepository.recordTransfer(senderId, receiverId, amount);
+                final long sequence = ledger.transferred(senderId, receiverId, amount);
+                history.transferred(sequence, senderId, senderSequence, receiverId, receiverSequence, amount);
+                eventOutbox.stage(new AccountBalanceTransferredEvent(
+                        AccountBalanceTransferredEvent.Payload.decimal(sequence, senderId, senderSequence,
+                                receiverId, receiverSequence, amount, senderBalance, receiverBalance)), position);
+              });
+    } finally {
+      ledger.close(ticket);
+    }
+    if (!committed) {
+      metrics.transferOverdraft(start);
+      return TransferResult.INSUFFICIENT_BALANCE;
+    }
+    accountsRepository.awaitDurable();
+    eventOutbox.publishStaged(accountsRepository.durablePosition());
+    metrics.transferCommitted(start);
+    return TransferResult.COMMITTED;
+  }
 
-        onTransferred(sender, receiver, amount);
-      }
+  /**
+   * Fixed-scale transfer with the amount in minor units, the balances are updated without allocation.
+   * The commit listener, the transfer event with its payload and the staged outbox entry are still
+   * allocated once per committed transfer.
+   *
+   * @see #tryTransfer(String, String, long)
+   */
+  public void transfer(String senderId, String receiverId, long amountUnits) {
+    final TransferResult result = tryTransfer(senderId, receiverId, amountUnits);
+    if (!result.isCommitted()) {
+      raise(result, senderId, receiverId, toDecimal(senderId, amountUnits));
     }
   }
 
-  private void onTransferred(Account sender, Account receiver, BigDecimal amount) {
-    applicationEventPublisher.publishEvent(new AccountBalanceTransferredEvent(sender, receiver, amount));
+  /**
+   * Minor units counterpart of {@link #tryTransfer(String, String, BigDecimal)}, the amount is in
+   * minor units of the sender's currency.
+   */
+  public TransferResult tryTransfer(String senderId, String receiverId, long amountUnits) {
+    if (!balanceProperties.isFixedScale()) {
+      throw new IllegalStateException("Transfers in minor units require the fixed-scale balance mode.");
+    }
+    if (amountUnits <= 0) {
+      throw new IllegalArgumentException("Transfer amount should be a positive value.");
+    }
+
+    final long start = System.nanoTime();
+    final Account sender = accountsRepository.getAccount(senderId);
+    if (sender == null) {
+      return TransferResult.SENDER_NOT_FOUND;
+    }
+    final Account receiver = accountsRepository.getAccount(receiverId);
+    if (receiver == null) {
+      return TransferResult.RECEIVER_NOT_FOUND;
+    }
+    return tryTransfer(start, sender, receiver, amountUnits);
   }
 
-  private void addBalance(Account account, BigDecimal amount) {
-    final BigDecimal initialBalance = account.getBalance();
-    final BigDecimal updatedBalance = initialBalance.add(amount);
-    if (updatedBalance.signum() < 0) {
-      throw new NotEnoughAccountBalanceException(account, amount);
+  private TransferResult tryTransfer(long start, Account sender, Account receiver, long amountUnits) {
+    final int scale = scaleOf(sender);
+    if (!sameCurrency(sender, receiver)) {
+      return tryConvertingTransfer(start, sender, receiver, FixedScaleBalanceCell.toDecimal(amountUnits, scale));
     }
 
-    account.setBalance(updatedBalance);
+    final String senderId = sender.getAccountId();
+    final String receiverId = receiver.getAccountId();
+    accountsRepository.checkWritable();
+    final long ticket = ledger.open();
+    final boolean committed;
+    try {
+      committed = transferEngine.transfer(sender, receiver, amountUnits,
+              (senderBalance, receiverBalance, senderSequence, receiverSequence) -> {
+                final long position = accountsRepository.recordTransfer(senderId, receiverId, amountUnits);
+                final long sequence = ledger.transferred(senderId, receiverId, scale, amountUnits);
+                history.transferred(sequence, senderId, senderSequence, receiverId, receiverSequence,
+                        scale, amountUnits);
+                eventOutbox.stage(new AccountBalanceTransferredEvent(
+                        AccountBalanceTransferredEvent.Payload.units(sequence, senderId, senderSequence,
+                                receiverId, receiverSequence, scale, amountUnits, senderBalance, receiverBalance)),
+                        position);
+              });
+    } finally {
+      ledger.close(ticket);
+    }
+    if (!committed) {
+      metrics.transferOverdraft(start);
+      return TransferResult.INSUFFICIENT_BALANCE;
+    }
+    accountsRepository.awaitDurable();
+    eventOutbox.publishStaged(accountsRepository.durablePosition());
+    metrics.transferCommitted(start);
+    return TransferResult.COMMITTED;
   }
 
-  private Account getAccountSafe(String accountId) {
-    final Account account = accountsRepository.getAccount(accountId);
-    return Optional.ofNullable(account).orElseThrow(() -> new AccountNotFoundException(accountId));
+  /**
+   * Transfer deduplicated by the client's idempotency key. A retry with the same key gets the
+   * outcome of the first call, waiting for it if it is still running, and transfers nothing.
+   */
+  public void transfer(String senderId, String receiverId, BigDecimal amount, String idempotencyKey) {
+    raise(tryTransfer(senderId, receiverId, amount, idempotencyKey), senderId, receiverId, amount);
   }
 
-  @Getter
-  @RequiredArgsConstructor
-  private static class AccountSyncOrderResolver {
-    private final Account first;
+  /**
+   * Result counterpart of {@link #transfer(String, String, BigDecimal, String)}.
+   */
+  public TransferResult tryTransfer(String senderId, String receiverId, BigDecimal amount, String idempotencyKey) {
+    return idempotent(idempotencyKey, fingerprint(senderId, receiverId, amount),
+            () -> tryTransfer(senderId, receiverId, amount));
+  }
+
+  /**
+   * Fixed-scale counterpart of {@link #transfer(String, String, BigDecimal, String)}.
+   */
+  public void transfer(String senderId, String receiverId, long amountUnits, String idempotencyKey) {
+    final TransferResult result = tryTransfer(senderId, receiverId, amountUnits, idempotencyKey);
+    if (!result.isCommitted()) {
+      raise(result, senderId, receiverId, toDecimal(senderId, amountUnits));
+    }
+  }
+
+  /**
+   * Result counterpart of {@link #transfer(String, String, long, String)}.
+   */
+  public TransferResult tryTransfer(String senderId, String receiverId, long amountUnits, String idempotencyKey) {
+    return idempotent(idempotencyKey, fingerprint(senderId, receiverId, toDecimal(senderId, amountUnits)),
+            () -> tryTransfer(senderId, receiverId, amountUnits));
+  }
+
+  /**
+   * Commits all legs of the batch or none of them. Overdrafts are checked against the net
+   * change of every account, so an account may forward funds it receives in the same batch.
+   *
+   * @throws AccountNotFoundException         if an account does not exist
+   * @throws NotEnoughAccountBalanceException if an account lacks balance for its net change
+   */
+  public void transferBatch(List<TransferLeg> legs) {
+    transferBatch(legs, true);
+  }
+
+  /**
+   * Result counterpart of {@link #transferBatch(List)}.
+   */
+  public TransferResult tryTransferBatch(List<TransferLeg> legs) {
+    return transferBatch(legs, false);
+  }
+
+  /**
+   * @param raise whether rejections are thrown, naming the account, instead of returned
+   */
+  private TransferResult transferBatch(List<TransferLeg> legs, boolean raise) {
+    if (legs.isEmpty()) {
+      throw new IllegalArgumentException("Transfer batch should contain at least one leg.");
+    }
+    final long start = System.nanoTime();
 
-    public AccountSyncOrderResolver(Account first, Account second) {
-      this.first = first;
-      this.second = second;
+    final SortedMap<String, BigDecimal> netDeltas = new TreeMap<>();
+    for (TransferLeg leg : legs) {
+      if (BigDecimal.ZERO.compareTo(leg.getAmount()) >= 0) {
+        throw new IllegalArgumentException("Transfer amount should be a positive value.");
+      }
+      netDeltas.merge(leg.getSenderId(), leg.getAmount().negate(), BigDecimal::add);
+      netDeltas.merge(leg.getReceiverId(), leg.getAmount(), BigDecimal::add);
+    }
+
+    final Map<String, Integer> indexById = new HashMap<>();
+    final Account[] accounts = new Account[netDeltas.size()];
+    final BigDecimal[] deltas = netDeltas.values().toArray(new BigDecimal[0]);
+    int index = 0;
+    for (String accountId : netDeltas.keySet()) {
+      accounts[index] = accountsRepository.getAccount(accountId);
+      if (accounts[index] == null) {
+        if (raise) {
+          throw new AccountNotFoundException(accountId);
+        }
+        return TransferResult.ACCOUNT_NOT_FOUND;
+      }
+      indexById.put(accountId, index++);
+    }
+    final String currency = currencyOf(accounts[0]);
+    for (Account account : accounts) {
+      if (!currencyOf(account).equals(currency)) {
+        throw new IllegalArgumentException("All accounts of a transfer batch should have the same currency.");
+      }
+    }
+
+    final int scale = scaleOf(accounts[0]);
+    final long[] legUnits = balanceProperties.isFixedScale() ? new long[legs.size()] : null;
+    final long[] deltaUnits = balanceProperties.isFixedScale() ? new long[deltas.length] : null;
+    if (balanceProperties.isFixedScale()) {
+      try {
+        for (int i = 0; i < legUnits.length; i++) {
+          legUnits[i] = FixedScaleBalanceCell.toUnits(legs.get(i).getAmount(), scale);
+        }
+        for (int i = 0; i < deltas.length; i++) {
+          deltaUnits[i] = FixedScaleBalanceCell.toUnits(deltas[i], scale);
+        }
+      } catch (ArithmeticException ex) {
+        if (raise) {
+          throw new ArithmeticException("Transfer amount does not fit the scale of the accounts' currency.");
+        }
+        return TransferResult.AMOUNT_SCALE;
+      }
+    }
+
+    accountsRepository.checkWritable();
+    final int rejected;
+    final long[] sequences = new long[accounts.length];
+    final long ticket = ledger.open();
+    try {
+      if (balanceProperties.isFixedScale()) {
+        final long[] balanceUnits = new long[accounts.length];
+        rejected = transferEngine.transferBatch(accounts, deltaUnits, balanceUnits, sequences, () -> {
+          final long position = accountsRepository.recordBatch(accounts, deltaUnits);
+          final long sequence = ledger.batch(accounts, deltaUnits);
+          final List<AccountBalanceTransferredEvent.Payload> transfers = new ArrayList<>(legs.size());
+          for (int i = 0; i < legUnits.length; i++) {
+            final TransferLeg leg = legs.get(i);
+            final int sender = indexById.get(leg.getSenderId());
+            final int receiver = indexById.get(leg.getReceiverId());
+            history.transferred(sequence, leg.getSenderId(), sequences[sender],
+                    leg.getReceiverId(), sequences[receiver], scale, legUnits[i]);
+            transfers.add(AccountBalanceTransferredEvent.Payload.units(sequence,
+                    leg.getSenderId(), sequences[sender], leg.getReceiverId(), sequences[receiver], scale, legUnits[i],
+                    balanceUnits[sender], balanceUnits[receiver]));
+          }
+          eventOutbox.stage(new AccountBalancesBatchTransferredEvent(
+                  new AccountBalancesBatchTransferredEvent.Payload(sequence, transfers)), position);
+        });
+      } else {
+        final BigDecimal[] balances = new BigDecimal[accounts.length];
+        rejected = transferEngine.transferBatch(accounts, deltas, balances, sequences, () -> {
+          final long position = accountsRepository.recordBatch(accounts, deltas);
+          final long sequence = ledger.batch(accounts, deltas);
+          final List<AccountBalanceTransferredEvent.Payload> transfers = new ArrayList<>(legs.size());
+          for (TransferLeg leg : legs) {
+            final int sender = indexById.get(leg.getSenderId());
+            final int receiver = indexById.get(leg.getReceiverId());
+            history.transferred(sequence, leg.getSenderId(), sequences[sender],
+                    leg.getReceiverId(), sequences[receiver], leg.getAmount());
+            transfers.add(AccountBalanceTransferredEvent.Payload.decimal(sequence,
+                    leg.getSenderId(), sequences[sender], leg.getReceiverId(), sequences[receiver], leg.getAmount(),
+                    balances[sender], balances[receiver]));
+          }
+          eventOutbox.stage(new AccountBalancesBatchTransferredEvent(
+                  new AccountBalancesBatchTransferredEvent.Payload(sequence, transfers)), position);
+        });
+      }
+    } finally {
+      ledger.close(ticket);
+    }
+    if (rejected >= 0) {
+      metrics.batchOverdraft(start);
+      if (raise) {
+        throw new NotEnoughAccountBalanceException(accounts[rejected], deltas[rejected].negate());
+      }
+      return TransferResult.INSUFFICIENT_BALANCE;
     }
+    accountsRepository.awaitDurable();
+    eventOutbox.publishStaged(accountsRepository.durablePosition());
+    metrics.batchCommitted(start);
+    return TransferResult.COMMITTED;
+  }
 
-    public Account getFirst() {
-      return first;
+  /**
+   * Transfer between accounts of different currencies. The receiver is credited the amount
+   * converted with the current rates and rounded to the scale of its currency. Debit and credit
+   * commit together as a two-account batch.
+   *
+   * @throws IllegalArgumentException if the converted amount rounds to zero
+   */
+  private TransferResult tryConvertingTransfer(long start, Account sender, Account receiver, BigDecimal amount) {
+    final FxRates rates = fxRateTable.rates();
+    final int from = rates.index(currencyOf(sender));
+    final int to = rates.index(currencyOf(receiver));
+    if (from < 0 || to < 0) {
+      return TransferResult.NO_EXCHANGE_RATE;
     }
+    final int senderScale = scaleOf(sender);
+    final int receiverScale = scaleOf(receiver);
+    final BigDecimal received = rates.convert(amount, from, to, receiverScale);
+    if (received.signum() <= 0) {
+      throw new IllegalArgumentException("Transfer amount is too small to convert.");
+    }
+
+    final String senderId = sender.getAccountId();
+    final String receiverId = receiver.getAccountId();
+    final int senderIndex = senderId.compareTo(receiverId) < 0 ? 0 : 1;
+    final int receiverIndex = 1 - senderIndex;
+    final Account[] accounts = new Account[2];
+    accounts[senderIndex] = sender;
+    accounts[receiverIndex] = receiver;
 
-    public Account getSecond() {
-      return second;
+    accountsRepository.checkWritable();
+    final int rejected;
+    final long[] sequences = new long[2];
+    final long ticket = ledger.open();
+    try {
+      if (balanceProperties.isFixedScale()) {
+        final long[] deltaUnits = new long[2];
+        deltaUnits[senderIndex] = -FixedScaleBalanceCell.toUnits(amount, senderScale);
+        deltaUnits[receiverIndex] = FixedScaleBalanceCell.toUnits(received, receiverScale);
+        final long[] balanceUnits = new long[2];
+        rejected = transferEngine.transferBatch(accounts, deltaUnits, balanceUnits, sequences, () -> {
+          final long position = accountsRepository.recordBatch(accounts, deltaUnits);
+          final long sequence = ledger.converted(accounts, deltaUnits);
+          history.transferred(sequence, senderId, sequences[senderIndex], receiverId, sequences[receiverIndex],
+                  senderScale, -deltaUnits[senderIndex], receiverScale, deltaUnits[receiverIndex]);
+          eventOutbox.stage(new AccountBalanceTransferredEvent(
+                  AccountBalanceTransferredEvent.Payload.units(sequence, senderId, sequences[senderIndex],
+                          receiverId, sequences[receiverIndex], senderScale, receiverScale,
+                          -deltaUnits[senderIndex], deltaUnits[receiverIndex],
+                          balanceUnits[senderIndex], balanceUnits[receiverIndex])), position);
+        });
+      } else {
+        final BigDecimal[] deltas = new BigDecimal[2];
+        deltas[senderIndex] = amount.negate();
+        deltas[receiverIndex] = received;
+        final BigDecimal[] balances = new BigDecimal[2];
+        rejected = transferEngine.transferBatch(accounts, deltas, balances, sequences, () -> {
+          final long position = accountsRepository.recordBatch(accounts, deltas);
+          final long sequence = ledger.converted(accounts, deltas);
+          history.transferred(sequence, senderId, sequences[senderIndex], receiverId, sequences[receiverIndex],
+                  amount, received);
+          eventOutbox.stage(new AccountBalanceTransferredEvent(
+                  AccountBalanceTransferredEvent.Payload.decimal(sequence, senderId, sequences[senderIndex],
+                          receiverId, sequences[receiverIndex], amount, received,
+                          balances[senderIndex], balances[receiverIndex])), position);
+        });
+      }
+    } finally {
+      ledger.close(ticket);
+    }
+    if (rejected >= 0) {
+      metrics.transferOverdraft(start);
+      return TransferResult.INSUFFICIENT_BALANCE;
     }
+    accountsRepository.awaitDurable();
+    eventOutbox.publishStaged(accountsRepository.durablePosition());
+    metrics.transferCommitted(start);
+    return TransferResult.COMMITTED;
+  }
+
+  /**
+   * Accounts without a currency are in the default one, so two of them match without a lookup.
+   */
+  private boolean sameCurrency(Account sender, Account receiver) {
+    final String senderCurrency = sender.getCurrency();
+    final String receiverCurrency = receiver.getCurrency();
+    return senderCurrency == receiverCurrency || currencyOf(sender).equals(currencyOf(receiver));
+  }
+
+  private String currencyOf(Account account) {
+    final String currency = account.getCurrency();
+    return currency != null ? currency : fxRateTable.defaultCurrency();
+  }
+
+  private int scaleOf(Account account) {
+    return balanceProperties.scaleOf(account.getCurrency());
+  }
 
-    private final Account second;
+  /**
+   * Minor units of the sender's currency as an amount, for messages and fingerprints.
+   */
+  private BigDecimal toDecimal(String senderId, long amountUnits) {
+    final Account sender = accountsRepository.getAccount(senderId);
+    return sender == null ? balanceProperties.toDecimal(amountUnits)
+            : FixedScaleBalanceCell.toDecimal(amountUnits, scaleOf(sender));
+  }
 
-    public static AccountSyncOrderResolver resolve(Account a1, Account a2) {
-      return a1.getAccountId().compareTo(a2.getAccountId()) > 0
-              ? new AccountSyncOrderResolver(a1, a2)
-              : new AccountSyncOrderResolver(a2, a1);
+  private TransferResult idempotent(String idempotencyKey, String fingerprint, Supplier<TransferResult> transfer) {
+    final CompletableFuture<TransferResult> outcome = new CompletableFuture<>();
+    final CompletableFuture<TransferResult> previous =
+            idempotencyCache.putIfAbsent(idempotencyKey, fingerprint, outcome);
+    if (previous != null) {
+      try {
+        return previous.join();
+      } catch (CompletionException ex) {
+        if (ex.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) ex.getCause();
+        }
+        throw ex;
+      }
     }
+    try {
+      final TransferResult result = transfer.get();
+      outcome.complete(result);
+      return result;
+    } catch (RuntimeException | Error ex) {
+      outcome.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  /**
+   * Turns a rejected single transfer into the exception of the throwing API.
+   */
+  private void raise(TransferResult result, String senderId, String receiverId, BigDecimal amount) {
+    switch (result) {
+      case SENDER_NOT_FOUND:
+        throw new AccountNotFoundException(senderId);
+      case RECEIVER_NOT_FOUND:
+        throw new AccountNotFoundException(receiverId);
+      case INSUFFICIENT_BALANCE:
+        throw new NotEnoughAccountBalanceException(getAccountSafe(senderId), amount);
+      case NO_EXCHANGE_RATE:
+        throw new NoExchangeRateException(senderId, receiverId);
+      case AMOUNT_SCALE:
+        throw new ArithmeticException("Transfer amount does not fit the scale of the sender's currency.");
+      case IDEMPOTENCY_KEYS_EXHAUSTED:
+        throw new IllegalStateException("Too many recent idempotency keys, retry the transfer later.");
+      default:
+    }
+  }
+
+  private static String fingerprint(String senderId, String receiverId, BigDecimal amount) {
+    return senderId + '\n' + receiverId + '\n' + amount.stripTrailingZeros().toPlainString();
+  }
+
+  private Account getAccountSafe(String accountId) {
+    final Account account = accountsRepository.getAccount(accountId);
+    return Optional.ofNullable(account).orElseThrow(() -> new AccountNotFoundException(accountId));
   }
 }
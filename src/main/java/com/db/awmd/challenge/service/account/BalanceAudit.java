@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.service.account;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Ledger totals at one sequence point, see {@link BalanceLedger#audit}.
+ */
+public class BalanceAudit {
+
+  private final long sequence;
+  private final BigDecimal issued;
+  private final BigDecimal total;
+  private final List<Shard> shards;
+
+  BalanceAudit(long sequence, BigDecimal issued, BigDecimal total, List<Shard> shards) {
+    this.sequence = sequence;
+    this.issued = issued;
+    this.total = total;
+    this.shards = shards;
+  }
+
+  /**
+   * Sequence of the last transfer event included. Every transfer up to it is included and none
+   * after it, as is every creation started before the cut.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Money brought in by account creations.
+   */
+  public BigDecimal getIssued() {
+    return issued;
+  }
+
+  /**
+   * Sum of all balances.
+   */
+  public BigDecimal getTotal() {
+    return total;
+  }
+
+  /**
+   * Whether transfers moved money without creating or destroying any.
+   */
+  public boolean isConserved() {
+    return total.compareTo(issued) == 0;
+  }
+
+  public List<Shard> getShards() {
+    return shards;
+  }
+
+  public static class Shard {
+
+    private final int shard;
+    private final BigDecimal total;
+    private final BigDecimal checksum;
+    private final Boolean verified;
+
+    Shard(int shard, BigDecimal total, BigDecimal checksum, Boolean verified) {
+      this.shard = shard;
+      this.total = total;
+      this.checksum = checksum;
+      this.verified = verified;
+    }
+
+    public int getShard() {
+      return shard;
+    }
+
+    public BigDecimal getTotal() {
+      return total;
+    }
+
+    /**
+     * Sum of the balances weighted by a hash of their account id, so that money moved between
+     * accounts of the same shard changes it.
+     */
+    public BigDecimal getChecksum() {
+      return checksum;
+    }
+
+    /**
+     * Whether the balances read from the accounts match the ledger, {@code null} if they were not
+     * compared or a transfer touched the shard while they were read.
+     */
+    public Boolean getVerified() {
+      return verified;
+    }
+  }
+}
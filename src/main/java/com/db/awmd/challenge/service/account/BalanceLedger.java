@@ -0,0 +1,469 @@
+package com.db.awmd.challenge.service.account;
+
+import com.db.awmd.challenge.config.AuditProperties;
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Balance totals and checksums per shard of accounts, updated by every creation and transfer, with
+ * consistent cuts taken while transfers keep running.
+ * <p>
+ * An operation takes a ticket of the current epoch before it touches a balance, adds its balance
+ * changes to the accumulators of that epoch inside the commit and returns the ticket when done.
+ * Tickets are counted in striped in-flight counters. A cut starts the next epoch, waits for the
+ * tickets of the previous one still in flight and folds their accumulators into the totals, so it
+ * covers exactly the operations started before it. Operations of the next epoch never wait.
+ * <p>
+ * Transfers are booked under their transfer sequence instead, drawn from the same clock as the
+ * epoch. They belong to the epoch their sequence was drawn in, so a cut covers exactly the
+ * transfers up to the last sequence before it. That epoch is the ticket's or the one after it, whose
+ * cut cannot start before the ticket is returned.
+ * <p>
+ * Verification reads all balances in parallel between two cuts. No operation started before the
+ * first cut is still running, and any that starts before the second one is counted against the
+ * shards it touches. The balances of untouched shards were therefore stable while read and must add
+ * up to the ledger's total and checksum.
+ */
+@Component
+public class BalanceLedger {
+
+  private static final Logger log = LoggerFactory.getLogger(BalanceLedger.class);
+
+  private static final int STRIPES = 64;
+  // Longs between two in-flight counters, keeps them on separate cache lines.
+  private static final int PAD = 16;
+
+  private static final int TOTAL = 0;
+  private static final int CHECKSUM = 1;
+  private static final int TOUCHES = 2;
+  private static final int STRIDE = 8;
+
+  private static final int RECOMPUTE_THRESHOLD = 1 << 14;
+
+  // The clock holds the epoch above the last transfer sequence, so a cut learns the last sequence
+  // of the epoch it ends in the same step. Epochs wrap around, only the current one and its parity matter.
+  private static final int SEQUENCE_BITS = 48;
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+  private static final long NEXT_EPOCH = 1L << SEQUENCE_BITS;
+
+  private final BalanceProperties balanceProperties;
+  private final boolean fixedScale;
+  // Largest scale of all currencies, fixed-scale amounts are accumulated in its minor units.
+  private final int scale;
+  private final int shardMask;
+
+  private final AtomicLongArray inFlight = new AtomicLongArray(2 * STRIPES * PAD);
+
+  private final Accumulators[] epochs;
+
+  // Everything before the current epoch, guarded by cutLock.
+  private final Accumulators folded;
+
+  private final ReentrantLock cutLock = new ReentrantLock();
+
+  private final AtomicLong clock = new AtomicLong();
+
+  public BalanceLedger(BalanceProperties balanceProperties, AuditProperties auditProperties) {
+    this.balanceProperties = balanceProperties;
+    this.fixedScale = balanceProperties.isFixedScale();
+    this.scale = balanceProperties.maxScale();
+    this.shardMask = Integer.highestOneBit(Math.max(1, auditProperties.getShards() * 2 - 1)) - 1;
+    this.epochs = new Accumulators[]{new Accumulators(), new Accumulators()};
+    this.folded = new Accumulators();
+  }
+
+  /**
+   * Takes a ticket of the current epoch, to be returned with {@link #close} once the operation is done.
+   */
+  public long open() {
+    final int stripe = (int) Thread.currentThread().threadId() & (STRIPES - 1);
+    for (;;) {
+      final long current = clock.get() >>> SEQUENCE_BITS;
+      final int counter = counter(current, stripe);
+      inFlight.incrementAndGet(counter);
+      if (clock.get() >>> SEQUENCE_BITS == current) {
+        return current << 16 | stripe;
+      }
+      // A cut started in between and may already have drained this epoch.
+      inFlight.decrementAndGet(counter);
+    }
+  }
+
+  public void close(long ticket) {
+    inFlight.decrementAndGet(counter(ticket >>> 16, (int) ticket & 0xFFFF));
+  }
+
+  public void created(long ticket, Account account) {
+    final Accumulators accumulators = epochs[(int) (ticket >>> 16) & 1];
+    final String accountId = account.getAccountId();
+    final int issued = shardMask + 1;
+    if (fixedScale) {
+      final long units = account.balanceCell().units();
+      final int unitScale = balanceProperties.scaleOf(account.getCurrency());
+      accumulators.add(shard(accountId), weight(accountId), units, unitScale);
+      accumulators.add(issued, 0, units, unitScale);
+    } else {
+      accumulators.add(shard(accountId), weight(accountId), account.getBalance());
+      accumulators.add(issued, 0, account.getBalance());
+    }
+  }
+
+  /**
+   * Books a transfer and returns its transfer sequence. Must be called while holding a ticket.
+   */
+  public long transferred(String senderId, String receiverId, BigDecimal amount) {
+    final long stamp = clock.incrementAndGet();
+    final Accumulators accumulators = epochs[(int) (stamp >>> SEQUENCE_BITS) & 1];
+    accumulators.add(shard(senderId), weight(senderId), amount.negate());
+    accumulators.add(shard(receiverId), weight(receiverId), amount);
+    return stamp & SEQUENCE_MASK;
+  }
+
+  /**
+   * Fixed-scale transfer of {@code amountUnits} minor units of {@code amountScale}.
+   */
+  public long transferred(String senderId, String receiverId, int amountScale, long amountUnits) {
+    final long stamp = clock.incrementAndGet();
+    final Accumulators accumulators = epochs[(int) (stamp >>> SEQUENCE_BITS) & 1];
+    accumulators.add(shard(senderId), weight(senderId), -amountUnits, amountScale);
+    accumulators.add(shard(receiverId), weight(receiverId), amountUnits, amountScale);
+    return stamp & SEQUENCE_MASK;
+  }
+
+  public long batch(Account[] accounts, BigDecimal[] deltas) {
+    final long stamp = clock.incrementAndGet();
+    book(epochs[(int) (stamp >>> SEQUENCE_BITS) & 1], accounts, deltas);
+    return stamp & SEQUENCE_MASK;
+  }
+
+  /**
+   * Fixed-scale batch, every delta in minor units of its account's currency.
+   */
+  public long batch(Account[] accounts, long[] deltaUnits) {
+    final long stamp = clock.incrementAndGet();
+    book(epochs[(int) (stamp >>> SEQUENCE_BITS) & 1], accounts, deltaUnits);
+    return stamp & SEQUENCE_MASK;
+  }
+
+  /**
+   * Books a cross-currency transfer, whose debit and credit differ. The difference is added to the
+   * issued money, so the ledger stays conserved although the total is no longer a single currency.
+   */
+  public long converted(Account[] accounts, BigDecimal[] deltas) {
+    final long stamp = clock.incrementAndGet();
+    final Accumulators accumulators = epochs[(int) (stamp >>> SEQUENCE_BITS) & 1];
+    book(accumulators, accounts, deltas);
+    for (BigDecimal delta : deltas) {
+      accumulators.add(shardMask + 1, 0, delta);
+    }
+    return stamp & SEQUENCE_MASK;
+  }
+
+  public long converted(Account[] accounts, long[] deltaUnits) {
+    final long stamp = clock.incrementAndGet();
+    final Accumulators accumulators = epochs[(int) (stamp >>> SEQUENCE_BITS) & 1];
+    book(accumulators, accounts, deltaUnits);
+    for (int i = 0; i < accounts.length; i++) {
+      accumulators.add(shardMask + 1, 0, deltaUnits[i], balanceProperties.scaleOf(accounts[i].getCurrency()));
+    }
+    return stamp & SEQUENCE_MASK;
+  }
+
+  private void book(Accumulators accumulators, Account[] accounts, BigDecimal[] deltas) {
+    for (int i = 0; i < accounts.length; i++) {
+      final String accountId = accounts[i].getAccountId();
+      accumulators.add(shard(accountId), weight(accountId), deltas[i]);
+    }
+  }
+
+  private void book(Accumulators accumulators, Account[] accounts, long[] deltaUnits) {
+    for (int i = 0; i < accounts.length; i++) {
+      final String accountId = accounts[i].getAccountId();
+      accumulators.add(shard(accountId), weight(accountId), deltaUnits[i],
+              balanceProperties.scaleOf(accounts[i].getCurrency()));
+    }
+  }
+
+  /**
+   * Adds an account that exists without having been created through the ledger, e.g. one recovered
+   * on startup. Must not race with operations on the account.
+   */
+  public void restored(String accountId, BigDecimal balance) {
+    cutLock.lock();
+    try {
+      folded.add(shard(accountId), weight(accountId), balance);
+      folded.add(shardMask + 1, 0, balance);
+    } finally {
+      cutLock.unlock();
+    }
+  }
+
+  /**
+   * Forgets all accounts. Must not race with other operations.
+   */
+  public void clear() {
+    cutLock.lock();
+    try {
+      folded.reset();
+      epochs[0].reset();
+      epochs[1].reset();
+    } finally {
+      cutLock.unlock();
+    }
+  }
+
+  /**
+   * Totals as of a cut taken now, without verification.
+   */
+  public BalanceAudit audit() {
+    return audit(null);
+  }
+
+  /**
+   * Totals as of a cut taken now. If {@code repository} is given, the balances of its accounts are
+   * summed up in parallel and compared with the totals of every shard they did not change in the meantime.
+   */
+  public BalanceAudit audit(AccountsRepository repository) {
+    cutLock.lock();
+    try {
+      final long stamp = clock.getAndAdd(NEXT_EPOCH);
+      fold(stamp >>> SEQUENCE_BITS);
+      final Accumulators ledger = folded.copy();
+
+      final Boolean[] verified = new Boolean[shardMask + 1];
+      if (repository != null) {
+        final Accumulators accounts = ForkJoinPool.commonPool().invoke(new Recompute(repository, 0, repository.size()));
+        final long[] touches = fold(clock.getAndAdd(NEXT_EPOCH) >>> SEQUENCE_BITS);
+        for (int shard = 0; shard <= shardMask; shard++) {
+          if (touches[shard] == 0) {
+            verified[shard] = ledger.sameBalances(accounts, shard);
+            if (!verified[shard]) {
+              log.warn("Balance ledger mismatch in shard {}: ledger total={} checksum={}, "
+                              + "accounts total={} checksum={}", shard, ledger.total(shard), ledger.checksum(shard),
+                      accounts.total(shard), accounts.checksum(shard));
+            }
+          }
+        }
+      }
+
+      final List<BalanceAudit.Shard> shards = new ArrayList<>(shardMask + 1);
+      BigDecimal total = BigDecimal.ZERO;
+      for (int shard = 0; shard <= shardMask; shard++) {
+        shards.add(new BalanceAudit.Shard(shard, ledger.total(shard), ledger.checksum(shard), verified[shard]));
+        total = total.add(ledger.total(shard));
+      }
+      return new BalanceAudit(stamp & SEQUENCE_MASK, ledger.total(shardMask + 1), total, shards);
+    } finally {
+      cutLock.unlock();
+    }
+  }
+
+  /**
+   * Folds the epoch {@code previous}, which a cut has just ended, once its operations are done.
+   *
+   * @return operations per shard in the folded epoch
+   */
+  private long[] fold(long previous) {
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      final int counter = counter(previous, stripe);
+      while (inFlight.get(counter) != 0) {
+        Thread.yield();
+      }
+    }
+    final Accumulators drained = epochs[(int) previous & 1];
+    final long[] touches = drained.touches();
+    folded.addAll(drained);
+    drained.reset();
+    return touches;
+  }
+
+  /**
+   * Minor units of {@code unitScale} as minor units of the ledger's scale.
+   *
+   * @throws ArithmeticException if they do not fit into a long
+   */
+  private long rescale(long units, int unitScale) {
+    for (int i = unitScale; i < scale; i++) {
+      units = Math.multiplyExact(units, 10);
+    }
+    return units;
+  }
+
+  private static int counter(long epoch, int stripe) {
+    return (((int) epoch & 1) * STRIPES + stripe) * PAD;
+  }
+
+  private static int spread(String accountId) {
+    final int hash = accountId.hashCode();
+    return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+  }
+
+  private int shard(String accountId) {
+    return spread(accountId) & shardMask;
+  }
+
+  private static long weight(String accountId) {
+    return (spread(accountId) >>> 16) | 1;
+  }
+
+  /**
+   * Total, checksum and number of changes per shard, plus one slot for the issued money. Fixed-scale
+   * amounts are added in minor units, checksums wrap around on overflow. An amount whose minor units
+   * do not fit into a long goes into the total as a decimal instead. Decimal amounts are added by
+   * compare-and-set per slot.
+   */
+  private final class Accumulators {
+
+    private final AtomicLongArray units = new AtomicLongArray((shardMask + 2) * STRIDE);
+    private final AtomicReferenceArray<BigDecimal> decimals = new AtomicReferenceArray<>((shardMask + 2) * 2);
+
+    Accumulators() {
+      for (int i = 0; i < decimals.length(); i++) {
+        decimals.set(i, BigDecimal.ZERO);
+      }
+    }
+
+    void add(int slot, long weight, long amountUnits) {
+      units.getAndAdd(slot * STRIDE + TOTAL, amountUnits);
+      units.getAndAdd(slot * STRIDE + CHECKSUM, weight * amountUnits);
+      units.getAndIncrement(slot * STRIDE + TOUCHES);
+    }
+
+    /**
+     * Fixed-scale amount in minor units of {@code amountScale}.
+     */
+    void add(int slot, long weight, long amountUnits, int amountScale) {
+      final long rescaled;
+      try {
+        rescaled = rescale(amountUnits, amountScale);
+      } catch (ArithmeticException ex) {
+        add(slot, weight, FixedScaleBalanceCell.toDecimal(amountUnits, amountScale));
+        return;
+      }
+      add(slot, weight, rescaled);
+    }
+
+    void add(int slot, long weight, BigDecimal amount) {
+      if (fixedScale) {
+        final BigInteger amountUnits = amount.movePointRight(scale).toBigIntegerExact();
+        if (amountUnits.bitLength() < Long.SIZE) {
+          add(slot, weight, amountUnits.longValue());
+          return;
+        }
+        decimals.accumulateAndGet(slot * 2 + TOTAL, amount, BigDecimal::add);
+        units.getAndAdd(slot * STRIDE + CHECKSUM, amountUnits.multiply(BigInteger.valueOf(weight)).longValue());
+      } else {
+        decimals.accumulateAndGet(slot * 2 + TOTAL, amount, BigDecimal::add);
+        decimals.accumulateAndGet(slot * 2 + CHECKSUM, amount.multiply(BigDecimal.valueOf(weight)), BigDecimal::add);
+      }
+      units.getAndIncrement(slot * STRIDE + TOUCHES);
+    }
+
+    /**
+     * Only while neither side is updated concurrently, i.e. for drained epochs and under the ledger's lock.
+     */
+    void addAll(Accumulators other) {
+      for (int slot = 0; slot <= shardMask + 1; slot++) {
+        for (int field = TOTAL; field <= TOUCHES; field++) {
+          units.getAndAdd(slot * STRIDE + field, other.units.get(slot * STRIDE + field));
+        }
+      }
+      for (int i = 0; i < decimals.length(); i++) {
+        decimals.set(i, decimals.get(i).add(other.decimals.get(i)));
+      }
+    }
+
+    Accumulators copy() {
+      final Accumulators copy = new Accumulators();
+      copy.addAll(this);
+      return copy;
+    }
+
+    void reset() {
+      for (int i = 0; i < units.length(); i++) {
+        units.set(i, 0);
+      }
+      for (int i = 0; i < decimals.length(); i++) {
+        decimals.set(i, BigDecimal.ZERO);
+      }
+    }
+
+    long[] touches() {
+      final long[] touches = new long[shardMask + 1];
+      for (int shard = 0; shard <= shardMask; shard++) {
+        touches[shard] = units.get(shard * STRIDE + TOUCHES);
+      }
+      return touches;
+    }
+
+    BigDecimal total(int slot) {
+      return fixedScale
+              ? FixedScaleBalanceCell.toDecimal(units.get(slot * STRIDE + TOTAL), scale).add(decimals.get(slot * 2 + TOTAL))
+              : decimals.get(slot * 2 + TOTAL);
+    }
+
+    BigDecimal checksum(int slot) {
+      return fixedScale
+              ? FixedScaleBalanceCell.toDecimal(units.get(slot * STRIDE + CHECKSUM), scale)
+              : decimals.get(slot * 2 + CHECKSUM);
+    }
+
+    boolean sameBalances(Accumulators other, int slot) {
+      return total(slot).compareTo(other.total(slot)) == 0 && checksum(slot).compareTo(other.checksum(slot)) == 0;
+    }
+  }
+
+  /**
+   * Sums up the balances of a range of account positions, splitting it across the pool.
+   */
+  private class Recompute extends RecursiveTask<Accumulators> {
+
+    private final AccountsRepository repository;
+    private final long from;
+    private final long to;
+
+    Recompute(AccountsRepository repository, long from, long to) {
+      this.repository = repository;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Accumulators compute() {
+      if (to - from <= RECOMPUTE_THRESHOLD) {
+        final Accumulators accounts = new Accumulators();
+        try {
+          repository.scan(from, (int) (to - from),
+                  (accountId, balance) -> accounts.add(shard(accountId), weight(accountId), balance));
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+        return accounts;
+      }
+      final long middle = (from + to) >>> 1;
+      final Recompute right = new Recompute(repository, middle, to);
+      right.fork();
+      final Accumulators accounts = new Recompute(repository, from, middle).compute();
+      accounts.addAll(right.join());
+      return accounts;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.db.awmd.challenge.service.account;
+
+import com.db.awmd.challenge.config.IdempotencyProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, time-evicting map from idempotency key to transfer outcome. Keys are spread over
+ * independently locked stripes, each an open-addressing table probed linearly over a short window,
+ * so there is no global lock and lookups touch a few adjacent slots.
+ * <p>
+ * Expired slots are reused in place. A live entry is never evicted, since a retry of its key would
+ * then transfer a second time: when the whole probe window is live, the new key is refused with
+ * {@link TransferResult#IDEMPOTENCY_KEYS_EXHAUSTED} and the transfer is not attempted.
+ */
+@Component
+public class IdempotencyCache {
+
+  private static final int PROBE_WINDOW = 8;
+
+  private static final CompletableFuture<TransferResult> EXHAUSTED =
+          CompletableFuture.completedFuture(TransferResult.IDEMPOTENCY_KEYS_EXHAUSTED);
+
+  private final Stripe[] stripes;
+
+  private final long ttlNanos;
+
+  public IdempotencyCache(IdempotencyProperties properties) {
+    final int stripeCount = powerOfTwo(properties.getStripes());
+    final int slotsPerStripe = Math.max(PROBE_WINDOW, powerOfTwo(properties.getCapacity() / stripeCount));
+    this.stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new Stripe(slotsPerStripe);
+    }
+    this.ttlNanos = properties.getTtl().toNanos();
+  }
+
+  /**
+   * Records {@code outcome} for the key unless a live entry exists.
+   *
+   * @param fingerprint identifies the request the key was first used for
+   * @return the outcome recorded earlier, {@link TransferResult#IDEMPOTENCY_KEYS_EXHAUSTED} if there is
+   * no room for the key, or {@code null} if {@code outcome} was recorded now
+   * @throws IllegalArgumentException if the key was recorded for a different request
+   */
+  public CompletableFuture<TransferResult> putIfAbsent(String key, String fingerprint,
+                                                      CompletableFuture<TransferResult> outcome) {
+    final int hash = spread(key.hashCode());
+    final Stripe stripe = stripes[hash & (stripes.length - 1)];
+    return stripe.putIfAbsent(key, hash >>> 16, fingerprint, outcome, System.nanoTime(), ttlNanos);
+  }
+
+  /**
+   * Smallest power of two not below {@code n}, at least 1.
+   */
+  private static int powerOfTwo(int n) {
+    return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+  }
+
+  private static int spread(int hash) {
+    return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+  }
+
+  private static final class Stripe {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final String[] keys;
+    private final String[] fingerprints;
+    private final Object[] outcomes;
+    private final long[] expiresAt;
+    private final int mask;
+
+    Stripe(int slots) {
+      this.keys = new String[slots];
+      this.fingerprints = new String[slots];
+      this.outcomes = new Object[slots];
+      this.expiresAt = new long[slots];
+      this.mask = slots - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    CompletableFuture<TransferResult> putIfAbsent(String key, int hash, String fingerprint,
+                                                  CompletableFuture<TransferResult> outcome, long now, long ttlNanos) {
+      lock.lock();
+      try {
+        int free = -1;
+        for (int probe = 0; probe < PROBE_WINDOW; probe++) {
+          final int slot = (hash + probe) & mask;
+          final String existing = keys[slot];
+          final boolean live = existing != null && expiresAt[slot] - now > 0;
+          if (live && existing.equals(key)) {
+            if (!fingerprints[slot].equals(fingerprint)) {
+              throw new IllegalArgumentException("Idempotency key " + key + " was used for a different transfer.");
+            }
+            return (CompletableFuture<TransferResult>) outcomes[slot];
+          }
+          if (!live && free < 0) {
+            free = slot;
+          }
+        }
+        if (free < 0) {
+          return EXHAUSTED;
+        }
+        keys[free] = key;
+        fingerprints[free] = fingerprint;
+        outcomes[free] = outcome;
+        expiresAt[free] = now + ttlNanos;
+        return null;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
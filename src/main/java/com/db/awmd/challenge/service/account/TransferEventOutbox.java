@@ -0,0 +1,119 @@
+package com.db.awmd.challenge.service.account;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps transfer events out of the commit critical section. Events are staged from the commit
+ * listener and published later in staging order. Engines may call the listeners of one account
+ * out of balance order, so consumers order the events of an account by its account sequence.
+ * <p>
+ * Every event is staged with the repository position of its record, see
+ * {@link AccountsRepository#recordTransfer}, and is only published once that position is durable.
+ * A single publisher thread publishes the staged events up to the first one that is not durable
+ * yet, transfers only report how far the repository is durable and wake it up. Staged events
+ * that are durable are published on shutdown.
+ */
+@Component
+public class TransferEventOutbox implements DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(TransferEventOutbox.class);
+
+  private final ApplicationEventPublisher applicationEventPublisher;
+
+  private final Queue<Staged> staged = new ConcurrentLinkedQueue<>();
+
+  // Highest durable position reported by a caller of publishStaged.
+  private final AtomicLong durable = new AtomicLong();
+
+  private final Thread publisher;
+
+  private volatile boolean closed;
+
+  public TransferEventOutbox(ApplicationEventPublisher applicationEventPublisher) {
+    this.applicationEventPublisher = applicationEventPublisher;
+    this.publisher = new Thread(this::publishLoop, "transfer-events");
+    this.publisher.setDaemon(true);
+    this.publisher.start();
+  }
+
+  /**
+   * Called from inside the commit, must stay cheap.
+   *
+   * @param position repository position of the record of the event
+   */
+  public void stage(ApplicationEvent event, long position) {
+    staged.add(new Staged(event, position));
+  }
+
+  /**
+   * Lets the publisher publish the staged events whose records are durable. Returns right away,
+   * the events are published in staging order by the publisher thread.
+   *
+   * @param durablePosition position up to which the repository is durable, read after the caller's
+   *                        own records became durable
+   */
+  public void publishStaged(long durablePosition) {
+    durable.accumulateAndGet(durablePosition, Math::max);
+    if (publishable()) {
+      LockSupport.unpark(publisher);
+    }
+  }
+
+  /**
+   * Publishes the durable staged events that are left and stops the publisher.
+   */
+  @Override
+  public void destroy() throws InterruptedException {
+    closed = true;
+    LockSupport.unpark(publisher);
+    publisher.join();
+  }
+
+  private void publishLoop() {
+    while (!closed) {
+      if (publishable()) {
+        publishDurable();
+      } else {
+        LockSupport.park(this);
+      }
+    }
+    publishDurable();
+  }
+
+  private void publishDurable() {
+    while (publishable()) {
+      final ApplicationEvent event = staged.poll().event;
+      try {
+        applicationEventPublisher.publishEvent(event);
+      } catch (RuntimeException ex) {
+        log.error("Publishing {} failed", event.getClass().getSimpleName(), ex);
+      }
+    }
+  }
+
+  private boolean publishable() {
+    final Staged next = staged.peek();
+    return next != null && next.position <= durable.get();
+  }
+
+  private static final class Staged {
+    private final ApplicationEvent event;
+    private final long position;
+
+    private Staged(ApplicationEvent event, long position) {
+      this.event = event;
+      this.position = position;
+    }
+  }
+}
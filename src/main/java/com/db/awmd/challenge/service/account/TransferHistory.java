@@ -0,0 +1,223 @@
+package com.db.awmd.challenge.service.account;
+
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recent movements of every account in a bounded ring of primitive columns, appended inside the
+ * transfer commit.
+ * <p>
+ * An append claims the next position of the account's ring and takes over its slot with a
+ * compare-and-set on the slot's stamp. The stamp is negative while the slot is written and holds
+ * the position + 1 of its entry afterwards. Readers take no locks: they read a slot between two
+ * reads of its stamp and skip it if the stamp changed, like a seqlock. Nothing is allocated per
+ * movement. The counterparty is the id the transfer already holds, decimal amounts are the
+ * transfer's own {@link BigDecimal}.
+ */
+@Component
+public class TransferHistory {
+
+  private static final VarHandle STAMPS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private static final Comparator<Entry> BY_ACCOUNT_SEQUENCE = Comparator.comparingLong(Entry::getAccountSequence);
+
+  private final int capacity;
+
+  private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+  public TransferHistory(HistoryProperties historyProperties) {
+    this.capacity = historyProperties.getCapacity() <= 0
+            ? 0 : Integer.highestOneBit(historyProperties.getCapacity() * 2 - 1);
+  }
+
+  /**
+   * @param senderSequence   account sequence of the debit, see {@link Entry#getAccountSequence()}
+   * @param receiverSequence account sequence of the credit
+   */
+  public void transferred(long sequence, String senderId, long senderSequence, String receiverId,
+                          long receiverSequence, BigDecimal amount) {
+    transferred(sequence, senderId, senderSequence, receiverId, receiverSequence, amount, amount);
+  }
+
+  /**
+   * Transfer whose receiver is credited another amount than the sender is debited, e.g. after a
+   * currency conversion.
+   */
+  public void transferred(long sequence, String senderId, long senderSequence, String receiverId,
+                          long receiverSequence, BigDecimal sent, BigDecimal received) {
+    if (capacity == 0) {
+      return;
+    }
+    final long now = System.currentTimeMillis();
+    ring(senderId).append(sequence, senderSequence, receiverId, true, 0, 0, sent, now);
+    ring(receiverId).append(sequence, receiverSequence, senderId, false, 0, 0, received, now);
+  }
+
+  /**
+   * Fixed-scale transfer of {@code amountUnits} minor units of {@code scale}.
+   */
+  public void transferred(long sequence, String senderId, long senderSequence, String receiverId,
+                          long receiverSequence, int scale, long amountUnits) {
+    transferred(sequence, senderId, senderSequence, receiverId, receiverSequence,
+            scale, amountUnits, scale, amountUnits);
+  }
+
+  /**
+   * Fixed-scale transfer between currencies, each side in the scale of its own currency.
+   */
+  public void transferred(long sequence, String senderId, long senderSequence, String receiverId,
+                          long receiverSequence, int senderScale, long sentUnits, int receiverScale,
+                          long receivedUnits) {
+    if (capacity == 0) {
+      return;
+    }
+    final long now = System.currentTimeMillis();
+    ring(senderId).append(sequence, senderSequence, receiverId, true, senderScale, sentUnits, null, now);
+    ring(receiverId).append(sequence, receiverSequence, senderId, false, receiverScale, receivedUnits, null, now);
+  }
+
+  /**
+   * Movements of the account with an account sequence above {@code since}, oldest first. Only the
+   * latest movements are kept, and ones appended during the call may be missing.
+   */
+  public List<Entry> since(String accountId, long since) {
+    final Ring ring = rings.get(accountId);
+    return ring == null ? Collections.emptyList() : ring.since(since);
+  }
+
+  public void clear() {
+    rings.clear();
+  }
+
+  private Ring ring(String accountId) {
+    final Ring ring = rings.get(accountId);
+    return ring != null ? ring : rings.computeIfAbsent(accountId, id -> new Ring());
+  }
+
+  /**
+   * One movement, the amount is negative for money sent.
+   */
+  public static class Entry {
+
+    private final long sequence;
+    private final long accountSequence;
+    private final String counterpartyId;
+    private final BigDecimal amount;
+    private final Instant timestamp;
+
+    Entry(long sequence, long accountSequence, String counterpartyId, BigDecimal amount, Instant timestamp) {
+      this.sequence = sequence;
+      this.accountSequence = accountSequence;
+      this.counterpartyId = counterpartyId;
+      this.amount = amount;
+      this.timestamp = timestamp;
+    }
+
+    /**
+     * Sequence of the transfer event, shared by all legs of a batch.
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * Position of the movement in the order the account's balance changed, shared by all legs of a
+     * batch. Increasing, but not contiguous.
+     */
+    public long getAccountSequence() {
+      return accountSequence;
+    }
+
+    public String getCounterpartyId() {
+      return counterpartyId;
+    }
+
+    public BigDecimal getAmount() {
+      return amount;
+    }
+
+    public Instant getTimestamp() {
+      return timestamp;
+    }
+  }
+
+  private final class Ring {
+
+    private final AtomicLong next = new AtomicLong();
+    private final long[] stamps = new long[capacity];
+    private final long[] sequences = new long[capacity];
+    private final long[] accountSequences = new long[capacity];
+    private final long[] timestamps = new long[capacity];
+    private final long[] amountUnits = new long[capacity];
+    private final byte[] scales = new byte[capacity];
+    private final BigDecimal[] amounts = new BigDecimal[capacity];
+    private final String[] counterparties = new String[capacity];
+    private final boolean[] outgoing = new boolean[capacity];
+
+    void append(long sequence, long accountSequence, String counterparty, boolean sent, int scale, long units,
+                BigDecimal amount, long timestamp) {
+      final long position = next.getAndIncrement();
+      final int slot = (int) position & (capacity - 1);
+      for (;;) {
+        final long stamp = (long) STAMPS.getVolatile(stamps, slot);
+        if (Math.abs(stamp) > position + 1) {
+          // A whole ring of newer movements went past while this one was on its way.
+          return;
+        }
+        if (stamp >= 0 && STAMPS.compareAndSet(stamps, slot, stamp, -(position + 1))) {
+          break;
+        }
+        Thread.onSpinWait();
+      }
+      sequences[slot] = sequence;
+      accountSequences[slot] = accountSequence;
+      timestamps[slot] = timestamp;
+      amountUnits[slot] = units;
+      scales[slot] = (byte) scale;
+      amounts[slot] = amount;
+      counterparties[slot] = counterparty;
+      outgoing[slot] = sent;
+      STAMPS.setRelease(stamps, slot, position + 1);
+    }
+
+    List<Entry> since(long since) {
+      final long end = next.get();
+      final List<Entry> entries = new ArrayList<>();
+      for (long position = Math.max(0, end - capacity); position < end; position++) {
+        final int slot = (int) position & (capacity - 1);
+        if ((long) STAMPS.getAcquire(stamps, slot) != position + 1) {
+          continue;
+        }
+        final long sequence = sequences[slot];
+        final long accountSequence = accountSequences[slot];
+        final long timestamp = timestamps[slot];
+        final long units = amountUnits[slot];
+        final int scale = scales[slot];
+        final BigDecimal decimal = amounts[slot];
+        final String counterparty = counterparties[slot];
+        final boolean sent = outgoing[slot];
+        VarHandle.acquireFence();
+        if ((long) STAMPS.getVolatile(stamps, slot) != position + 1 || accountSequence <= since) {
+          continue;
+        }
+        final BigDecimal amount = decimal != null ? decimal : FixedScaleBalanceCell.toDecimal(units, scale);
+        entries.add(new Entry(sequence, accountSequence, counterparty, sent ? amount.negate() : amount, Instant.ofEpochMilli(timestamp)));
+      }
+      entries.sort(BY_ACCOUNT_SEQUENCE);
+      return entries;
+    }
+  }
+}
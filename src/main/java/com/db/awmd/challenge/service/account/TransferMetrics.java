@@ -0,0 +1,84 @@
+package com.db.awmd.challenge.service.account;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the transfer hot path. Everything is registered up front, so recording is a primitive
+ * update of an existing meter and does not allocate.
+ */
+@Component
+public class TransferMetrics {
+
+  private final Timer transferCommitted;
+  private final Timer transferOverdraft;
+  private final Timer batchCommitted;
+  private final Timer batchOverdraft;
+  private final Timer lockWait;
+  private final Timer lockHold;
+  private final Counter lockContended;
+
+  public TransferMetrics(MeterRegistry registry) {
+    this.transferCommitted = latency("accounts.transfer", "committed", registry);
+    this.transferOverdraft = latency("accounts.transfer", "overdraft", registry);
+    this.batchCommitted = latency("accounts.transfer.batch", "committed", registry);
+    this.batchOverdraft = latency("accounts.transfer.batch", "overdraft", registry);
+    this.lockWait = Timer.builder("accounts.transfer.lock.wait")
+            .description("Time spent acquiring the account locks of a transfer")
+            .publishPercentileHistogram()
+            .register(registry);
+    this.lockHold = Timer.builder("accounts.transfer.lock.hold")
+            .description("Time the account locks of a transfer are held")
+            .publishPercentileHistogram()
+            .register(registry);
+    this.lockContended = Counter.builder("accounts.transfer.lock.contended")
+            .description("Account lock acquisitions that found the lock taken and had to wait")
+            .register(registry);
+  }
+
+  /**
+   * @param startNanos {@link System#nanoTime()} when the transfer was received
+   */
+  public void transferCommitted(long startNanos) {
+    transferCommitted.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void transferOverdraft(long startNanos) {
+    transferOverdraft.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void batchCommitted(long startNanos) {
+    batchCommitted.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void batchOverdraft(long startNanos) {
+    batchOverdraft.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records the lock acquisition and hold time of one transfer or batch.
+   */
+  public void locked(long waitNanos, long holdNanos) {
+    lockWait.record(waitNanos, TimeUnit.NANOSECONDS);
+    lockHold.record(holdNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Counts one account lock that was already taken when a transfer tried to acquire it.
+   */
+  public void lockContended() {
+    lockContended.increment();
+  }
+
+  private static Timer latency(String name, String outcome, MeterRegistry registry) {
+    return Timer.builder(name)
+            .description("Transfer latency from request to durable commit")
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(registry);
+  }
+}
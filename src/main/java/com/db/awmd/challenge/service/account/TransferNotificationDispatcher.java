@@ -0,0 +1,188 @@
+package com.db.awmd.challenge.service.account;
+
+import com.db.awmd.challenge.config.NotificationProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.MessageTemplate;
+import com.db.awmd.challenge.service.NotificationService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces transfer notifications per account. The first notification of an account opens
+ * a window, everything arriving for that account until the window ends or the batch is full
+ * is sent as a single digest. Pending digests are sent on shutdown.
+ */
+@Component
+public class TransferNotificationDispatcher implements DisposableBean {
+
+  private static final MessageTemplate SENT = MessageTemplate.compile("You've just sent {} to account #{}.");
+  private static final MessageTemplate RECEIVED = MessageTemplate.compile("You've just received {} from account #{}.");
+  private static final MessageTemplate DIGEST = MessageTemplate.compile("You've had {} transfers:");
+
+  private final NotificationService notificationService;
+
+  private final AccountsRepository accountsRepository;
+
+  private final long windowNanos;
+
+  private final int maxBatch;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final Map<String, Digest> digests = new ConcurrentHashMap<>();
+
+  private volatile boolean closed;
+
+  public TransferNotificationDispatcher(NotificationService notificationService, AccountsRepository accountsRepository,
+                                        NotificationProperties properties) {
+    this.notificationService = notificationService;
+    this.accountsRepository = accountsRepository;
+    this.windowNanos = properties.getWindow().toNanos();
+    this.maxBatch = properties.getMaxBatch();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "notification-digest");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public void sent(String accountId, BigDecimal amount, String receiverId) {
+    add(accountId, new Entry(SENT, amount, receiverId));
+  }
+
+  public void received(String accountId, BigDecimal amount, String senderId) {
+    add(accountId, new Entry(RECEIVED, amount, senderId));
+  }
+
+  /**
+   * Number of accounts with a digest waiting for its window to end.
+   */
+  public int getPendingDigests() {
+    return digests.size();
+  }
+
+  /**
+   * Sends every pending digest now, without waiting for its window to end.
+   */
+  public void flushPending() {
+    for (Digest digest : digests.values()) {
+      flush(digest);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    closed = true;
+    scheduler.shutdownNow();
+    flushPending();
+  }
+
+  private void add(String accountId, Entry entry) {
+    if (closed || windowNanos <= 0) {
+      deliver(accountId, Collections.singletonList(entry));
+      return;
+    }
+    for (;;) {
+      final Digest digest = digests.computeIfAbsent(accountId, Digest::new);
+      boolean full;
+      digest.lock.lock();
+      try {
+        if (digest.flushed) {
+          continue;
+        }
+        digest.entries.add(entry);
+        full = digest.entries.size() >= maxBatch;
+        if (digest.entries.size() == 1) {
+          try {
+            scheduler.schedule(() -> flush(digest), windowNanos, TimeUnit.NANOSECONDS);
+          } catch (RejectedExecutionException ex) {
+            // Shut down after the closed check above, destroy may have flushed the digests already.
+            full = true;
+          }
+        }
+      } finally {
+        digest.lock.unlock();
+      }
+      if (full) {
+        flush(digest);
+      }
+      return;
+    }
+  }
+
+  private void flush(Digest digest) {
+    final List<Entry> entries;
+    digest.lock.lock();
+    try {
+      if (digest.flushed) {
+        return;
+      }
+      digest.flushed = true;
+      digests.remove(digest.accountId, digest);
+      entries = digest.entries;
+    } finally {
+      digest.lock.unlock();
+    }
+    deliver(digest.accountId, entries);
+  }
+
+  private void deliver(String accountId, List<Entry> entries) {
+    // The notification contract takes the account itself, the balance is not read from it.
+    final Account account = accountsRepository.getAccount(accountId);
+    if (account == null) {
+      return;
+    }
+
+    final StringBuilder message = new StringBuilder(64 * entries.size());
+    if (entries.size() == 1) {
+      entries.get(0).appendTo(message);
+    } else {
+      DIGEST.appendTo(message, entries.size());
+      for (Entry entry : entries) {
+        entry.appendTo(message.append(System.lineSeparator()));
+      }
+    }
+    notificationService.notifyAboutTransfer(account, message.toString());
+  }
+
+  private static final class Digest {
+    private final String accountId;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by the lock.
+    private final List<Entry> entries = new ArrayList<>();
+    private boolean flushed;
+
+    private Digest(String accountId) {
+      this.accountId = accountId;
+    }
+  }
+
+  private static final class Entry {
+    private final MessageTemplate template;
+    private final BigDecimal amount;
+    private final String counterpartyId;
+
+    private Entry(MessageTemplate template, BigDecimal amount, String counterpartyId) {
+      this.template = template;
+      this.amount = amount;
+      this.counterpartyId = counterpartyId;
+    }
+
+    private void appendTo(StringBuilder message) {
+      template.appendTo(message, amount, counterpartyId);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.db.awmd.challenge.service.account;
+
+/**
+ * Outcome of a transfer or transfer batch. Overdrafts and unknown accounts are ordinary outcomes,
+ * reported as constants so rejecting a transfer costs no exception or message.
+ */
+public enum TransferResult {
+
+  COMMITTED,
+
+  SENDER_NOT_FOUND,
+
+  RECEIVER_NOT_FOUND,
+
+  /**
+   * An account of a transfer batch does not exist.
+   */
+  ACCOUNT_NOT_FOUND,
+
+  /**
+   * The sender, or in a batch an account with a negative net change, lacks balance.
+   */
+  INSUFFICIENT_BALANCE,
+
+  /**
+   * Sender and receiver keep different currencies and the current rates have no quote for one of them.
+   */
+  NO_EXCHANGE_RATE,
+
+  /**
+   * In fixed-scale mode, an amount has more fraction digits than the scale of the sender's currency.
+   */
+  AMOUNT_SCALE,
+
+  /**
+   * The idempotency cache has no room for the key without forgetting a live one, the transfer is
+   * not attempted and may be retried.
+   */
+  IDEMPOTENCY_KEYS_EXHAUSTED;
+
+  public boolean isCommitted() {
+    return this == COMMITTED;
+  }
+
+  public boolean isAccountNotFound() {
+    return this == SENDER_NOT_FOUND || this == RECEIVER_NOT_FOUND || this == ACCOUNT_NOT_FOUND;
+  }
+}
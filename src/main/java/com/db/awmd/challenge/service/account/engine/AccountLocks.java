@@ -0,0 +1,107 @@
+package com.db.awmd.challenge.service.account.engine;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed table of striped account locks. Stripes are always locked in ascending order, so single
+ * transfers and batches can not deadlock each other. Waiting threads park instead of spinning,
+ * which leaves the carrier of a waiting virtual thread free. A stripe found taken is counted as
+ * contended. Each stripe also numbers the balance changes of its accounts, see {@link #next(int)}.
+ */
+final class AccountLocks {
+
+  private final Stripe[] locks;
+
+  private final TransferMetrics metrics;
+
+  AccountLocks(int stripes, TransferMetrics metrics) {
+    this.metrics = metrics;
+    this.locks = new Stripe[stripes];
+    for (int i = 0; i < stripes; i++) {
+      locks[i] = new Stripe();
+    }
+  }
+
+  int stripe(Account account) {
+    final int hash = account.getAccountId().hashCode();
+    return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % locks.length;
+  }
+
+  /**
+   * Account sequence of the next balance change in the stripe, only while the stripe is locked.
+   */
+  long next(int stripe) {
+    return ++locks[stripe].sequence;
+  }
+
+  /**
+   * Fills in the account sequences of a batch whose stripes are all locked.
+   */
+  void next(Account[] accounts, long[] sequences) {
+    for (int i = 0; i < accounts.length; i++) {
+      sequences[i] = next(stripe(accounts[i]));
+    }
+  }
+
+  void lockPair(int stripe1, int stripe2) {
+    lock(Math.min(stripe1, stripe2));
+    if (stripe1 != stripe2) {
+      lock(Math.max(stripe1, stripe2));
+    }
+  }
+
+  void unlockPair(int stripe1, int stripe2) {
+    if (stripe1 != stripe2) {
+      locks[Math.max(stripe1, stripe2)].unlock();
+    }
+    locks[Math.min(stripe1, stripe2)].unlock();
+  }
+
+  /**
+   * Locks the stripes of all accounts in ascending order.
+   *
+   * @return the locked stripes, to be passed to {@link #unlockAll(int[])}
+   */
+  int[] lockAll(Account[] accounts) {
+    final int[] stripes = new int[accounts.length];
+    for (int i = 0; i < accounts.length; i++) {
+      stripes[i] = stripe(accounts[i]);
+    }
+    Arrays.sort(stripes);
+    int distinct = 0;
+    for (int i = 0; i < stripes.length; i++) {
+      if (i == 0 || stripes[i] != stripes[i - 1]) {
+        stripes[distinct++] = stripes[i];
+      }
+    }
+    final int[] acquired = Arrays.copyOf(stripes, distinct);
+    for (int stripe : acquired) {
+      lock(stripe);
+    }
+    return acquired;
+  }
+
+  void unlockAll(int[] stripes) {
+    for (int i = stripes.length - 1; i >= 0; i--) {
+      locks[stripes[i]].unlock();
+    }
+  }
+
+  private void lock(int stripe) {
+    final Stripe lock = locks[stripe];
+    if (!lock.tryLock()) {
+      metrics.lockContended();
+      lock.lock();
+    }
+  }
+
+  private static final class Stripe extends ReentrantLock {
+
+    // Guarded by the lock itself.
+    private long sequence;
+  }
+}
@@ -0,0 +1,129 @@
+package com.db.awmd.challenge.service.account.engine;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+
+import java.math.BigDecimal;
+
+/**
+ * All-or-nothing application of net balance changes. Callers hold every account exclusively, so
+ * the debits are checked first and only applied once all of them are covered: a rejected batch
+ * never changes, and never shows, a balance. Credits can not fail.
+ */
+final class BalanceDeltas {
+
+  private BalanceDeltas() {
+  }
+
+  static int apply(Account[] accounts, BigDecimal[] deltas, BigDecimal[] balances) {
+    final int rejected = uncovered(accounts, deltas);
+    if (rejected >= 0) {
+      return rejected;
+    }
+    for (int i = 0; i < accounts.length; i++) {
+      if (deltas[i].signum() < 0) {
+        balances[i] = accounts[i].balanceCell().tryWithdraw(deltas[i].negate());
+      } else if (deltas[i].signum() > 0) {
+        balances[i] = accounts[i].balanceCell().deposit(deltas[i]);
+      } else {
+        balances[i] = accounts[i].getBalance();
+      }
+    }
+    return -1;
+  }
+
+  static int apply(Account[] accounts, long[] deltaUnits, long[] balanceUnits) {
+    final int rejected = uncovered(accounts, deltaUnits);
+    if (rejected >= 0) {
+      return rejected;
+    }
+    for (int i = 0; i < accounts.length; i++) {
+      if (deltaUnits[i] < 0) {
+        balanceUnits[i] = accounts[i].balanceCell().tryWithdraw(-deltaUnits[i]);
+      } else if (deltaUnits[i] > 0) {
+        balanceUnits[i] = accounts[i].balanceCell().deposit(deltaUnits[i]);
+      } else {
+        balanceUnits[i] = accounts[i].balanceCell().units();
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Takes back the changes of an applied batch whose commit listener failed. The accounts must
+   * still be held since they were applied, so every change can be reverted.
+   */
+  static void revert(Account[] accounts, BigDecimal[] deltas) {
+    for (int i = 0; i < accounts.length; i++) {
+      if (deltas[i].signum() < 0) {
+        accounts[i].balanceCell().deposit(deltas[i].negate());
+      } else if (deltas[i].signum() > 0) {
+        accounts[i].balanceCell().tryWithdraw(deltas[i]);
+      }
+    }
+  }
+
+  static void revert(Account[] accounts, long[] deltaUnits) {
+    for (int i = 0; i < accounts.length; i++) {
+      if (deltaUnits[i] < 0) {
+        accounts[i].balanceCell().deposit(-deltaUnits[i]);
+      } else if (deltaUnits[i] > 0) {
+        accounts[i].balanceCell().tryWithdraw(deltaUnits[i]);
+      }
+    }
+  }
+
+  /**
+   * Pair counterpart of {@link #revert(Account[], BigDecimal[])}.
+   */
+  static void revert(Account sender, Account receiver, BigDecimal amount) {
+    receiver.balanceCell().tryWithdraw(amount);
+    sender.balanceCell().deposit(amount);
+  }
+
+  static void revert(Account sender, Account receiver, long amountUnits) {
+    receiver.balanceCell().tryWithdraw(amountUnits);
+    sender.balanceCell().deposit(amountUnits);
+  }
+
+  /**
+   * @return index of the first account whose balance does not cover its debit, or {@code -1}
+   */
+  static int uncovered(Account[] accounts, BigDecimal[] deltas) {
+    for (int i = 0; i < accounts.length; i++) {
+      if (deltas[i].signum() < 0 && accounts[i].getBalance().compareTo(deltas[i].negate()) < 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Minor units counterpart of {@link #uncovered(Account[], BigDecimal[])}.
+   *
+   * @throws ArithmeticException if a credit would overflow its balance
+   */
+  static int uncovered(Account[] accounts, long[] deltaUnits) {
+    for (int i = 0; i < accounts.length; i++) {
+      if (deltaUnits[i] < 0 && accounts[i].balanceCell().units() < -deltaUnits[i]) {
+        return i;
+      }
+    }
+    for (int i = 0; i < accounts.length; i++) {
+      if (deltaUnits[i] > 0) {
+        checkCredit(accounts[i], deltaUnits[i]);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Rejects a credit that would overflow the balance before anything is debited. Only meaningful
+   * while the account is held, otherwise the balance may change right after.
+   *
+   * @throws ArithmeticException if the credit would overflow
+   */
+  static void checkCredit(Account account, long amountUnits) {
+    FixedScaleBalanceCell.addUnits(account.balanceCell().units(), amountUnits);
+  }
+}
@@ -0,0 +1,152 @@
+package com.db.awmd.challenge.service.account.engine;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Optimistic engine: a transfer first reads the sender balance without locking and rejects an
+ * overdraft right away. Otherwise it takes the striped parking locks of its accounts
+ * ({@code accounts.transfer.lock-stripes}) and holds them for the balance updates and the commit
+ * listener. The balance cells are still updated by compare-and-set, so readers never block. Lock
+ * wait and hold times are recorded like those of the locking engine, overdrafts rejected up front
+ * take no lock and record nothing.
+ * <p>
+ * The locks cannot be avoided. The account sequences must be drawn in the order the balances
+ * changed, a record must be journaled before its credit can be spent, and a failing listener needs
+ * its transfer reverted before anyone sees it. Compare-and-set on two cells can guarantee none of
+ * these for a pair of accounts.
+ * <p>
+ * The sender is debited first and only then the receiver is credited. A credit can not fail, so a
+ * successful debit always completes the transfer and nothing has to be rolled back. Batches lock
+ * all their accounts and check every debit before applying any, so a rejected batch never shows a
+ * debit to readers or to other transfers.
+ */
+@Component
+@ConditionalOnProperty(name = "accounts.transfer.engine", havingValue = "cas", matchIfMissing = true)
+public class CasTransferEngine implements TransferEngine {
+
+  private final AccountLocks locks;
+
+  private final TransferMetrics metrics;
+
+  public CasTransferEngine(@Value("${accounts.transfer.lock-stripes:4096}") int stripes, TransferMetrics metrics) {
+    this.metrics = metrics;
+    this.locks = new AccountLocks(stripes, metrics);
+  }
+
+  @Override
+  public boolean transfer(Account sender, Account receiver, BigDecimal amount, DecimalCommitListener listener) {
+    if (sender.balanceCell().get().compareTo(amount) < 0) {
+      return false;
+    }
+    final int senderStripe = locks.stripe(sender);
+    final int receiverStripe = locks.stripe(receiver);
+    final long start = System.nanoTime();
+    locks.lockPair(senderStripe, receiverStripe);
+    final long locked = System.nanoTime();
+    try {
+      final BigDecimal senderBalance = sender.balanceCell().tryWithdraw(amount);
+      if (senderBalance == null) {
+        return false;
+      }
+      final BigDecimal receiverBalance = receiver.balanceCell().deposit(amount);
+      final long senderSequence = locks.next(senderStripe);
+      final long receiverSequence = locks.next(receiverStripe);
+      try {
+        listener.committed(senderBalance, receiverBalance, senderSequence, receiverSequence);
+      } catch (RuntimeException | Error ex) {
+        BalanceDeltas.revert(sender, receiver, amount);
+        throw ex;
+      }
+      return true;
+    } finally {
+      locks.unlockPair(senderStripe, receiverStripe);
+      metrics.locked(locked - start, System.nanoTime() - locked);
+    }
+  }
+
+  @Override
+  public boolean transfer(Account sender, Account receiver, long amountUnits, UnitsCommitListener listener) {
+    if (sender.balanceCell().units() < amountUnits) {
+      return false;
+    }
+    final int senderStripe = locks.stripe(sender);
+    final int receiverStripe = locks.stripe(receiver);
+    final long start = System.nanoTime();
+    locks.lockPair(senderStripe, receiverStripe);
+    final long locked = System.nanoTime();
+    try {
+      BalanceDeltas.checkCredit(receiver, amountUnits);
+      final long senderBalance = sender.balanceCell().tryWithdraw(amountUnits);
+      if (senderBalance < 0) {
+        return false;
+      }
+      final long receiverBalance = receiver.balanceCell().deposit(amountUnits);
+      final long senderSequence = locks.next(senderStripe);
+      final long receiverSequence = locks.next(receiverStripe);
+      try {
+        listener.committed(senderBalance, receiverBalance, senderSequence, receiverSequence);
+      } catch (RuntimeException | Error ex) {
+        BalanceDeltas.revert(sender, receiver, amountUnits);
+        throw ex;
+      }
+      return true;
+    } finally {
+      locks.unlockPair(senderStripe, receiverStripe);
+      metrics.locked(locked - start, System.nanoTime() - locked);
+    }
+  }
+
+  @Override
+  public int transferBatch(Account[] accounts, BigDecimal[] deltas, BigDecimal[] balances, long[] sequences,
+                           CommitListener listener) {
+    final long start = System.nanoTime();
+    final int[] stripes = locks.lockAll(accounts);
+    final long locked = System.nanoTime();
+    try {
+      final int rejected = BalanceDeltas.apply(accounts, deltas, balances);
+      if (rejected < 0) {
+        locks.next(accounts, sequences);
+        try {
+          listener.committed();
+        } catch (RuntimeException | Error ex) {
+          BalanceDeltas.revert(accounts, deltas);
+          throw ex;
+        }
+      }
+      return rejected;
+    } finally {
+      locks.unlockAll(stripes);
+      metrics.locked(locked - start, System.nanoTime() - locked);
+    }
+  }
+
+  @Override
+  public int transferBatch(Account[] accounts, long[] deltaUnits, long[] balanceUnits, long[] sequences,
+                           CommitListener listener) {
+    final long start = System.nanoTime();
+    final int[] stripes = locks.lockAll(accounts);
+    final long locked = System.nanoTime();
+    try {
+      final int rejected = BalanceDeltas.apply(accounts, deltaUnits, balanceUnits);
+      if (rejected < 0) {
+        locks.next(accounts, sequences);
+        try {
+          listener.committed();
+        } catch (RuntimeException | Error ex) {
+          BalanceDeltas.revert(accounts, deltaUnits);
+          throw ex;
+        }
+      }
+      return rejected;
+    } finally {
+      locks.unlockAll(stripes);
+      metrics.locked(locked - start, System.nanoTime() - locked);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.db.awmd.challenge.service.account.engine;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Pessimistic engine: accounts are guarded by a fixed table of striped locks which are always
+ * taken in ascending stripe order, so single transfers and batches can not deadlock each other.
+ * Every transfer takes the locks, including those that end up rejected. Kept selectable
+ * ({@code accounts.transfer.engine=locking}) for comparison with the CAS engine.
+ */
+@Component
+@ConditionalOnProperty(name = "accounts.transfer.engine", havingValue = "locking")
+public class LockingTransferEngine implements TransferEngine {
+
+  private final AccountLocks locks;
+
+  private final TransferMetrics metrics;
+
+  public LockingTransferEngine(@Value("${accounts.transfer.lock-stripes:1024}") int stripes, TransferMetrics metrics) {
+    this.metrics = metrics;
+    this.locks = new AccountLocks(stripes, metrics);
+  }
+
+  @Override
+  public boolean transfer(Account sender, Account receiver, BigDecimal amount, DecimalCommitListener listener) {
+    final int senderStripe = locks.stripe(sender);
+    final int receiverStripe = locks.stripe(receiver);
+    final long start = System.nanoTime();
+    locks.lockPair(senderStripe, receiverStripe);
+    final long locked = System.nanoTime();
+    try {
+      final BigDecimal senderBalance = sender.balanceCell().tryWithdraw(amount);
+      if (senderBalance == null) {
+        return false;
+      }
+      final BigDecimal receiverBalance = receiver.balanceCell().deposit(amount);
+      final long senderSequence = locks.next(senderStripe);
+      final long receiverSequence = locks.next(receiverStripe);
+      try {
+        listener.committed(senderBalance, receiverBalance, senderSequence, receiverSequence);
+      } catch (RuntimeException | Error ex) {
+        BalanceDeltas.revert(sender, receiver, amount);
+        throw ex;
+      }
+      return true;
+    } finally {
+      locks.unlockPair(senderStripe, receiverStripe);
+      metrics.locked(locked - start, System.nanoTime() - locked);
+    }
+  }
+
+  @Override
+  public boolean transfer(Account sender, Account receiver, long amountUnits, UnitsCommitListener listener) {
+    final int senderStripe = locks.stripe(sender);
+    final int receiverStripe = locks.stripe(receiver);
+    final long start = System.nanoTime();
+    locks.lockPair(senderStripe, receiverStripe);
+    final long locked = System.nanoTime();
+    try {
+      BalanceDeltas.checkCredit(receiver, amountUnits);
+      final long senderBalance = sender.balanceCell().tryWithdraw(amountUnits);
+      if (senderBalance < 0) {
+        return false;
+      }
+      final long receiverBalance = receiver.balanceCell().deposit(amountUnits);
+      final long senderSequence = locks.next(senderStripe);
+      final long receiverSequence = locks.next(receiverStripe);
+      try {
+        listener.committed(senderBalance, receiverBalance, senderSequence, receiverSequence);
+      } catch (RuntimeException | Error ex) {
+        BalanceDeltas.revert(sender, receiver, amountUnits);
+        throw ex;
+      }
+      return true;
+    } finally {
+      locks.unlockPair(senderStripe, receiverStripe);
+      metrics.locked(locked - start, System.nanoTime() - locked);
+    }
+  }
+
+  @Override
+  public int transferBatch(Account[] accounts, BigDecimal[] deltas, BigDecimal[] balances, long[] sequences,
+                           CommitListener listener) {
+    final long start = System.nanoTime();
+    final int[] stripes = locks.lockAll(accounts);
+    final long locked = System.nanoTime();
+    try {
+      final int rejected = BalanceDeltas.apply(accounts, deltas, balances);
+      if (rejected < 0) {
+        locks.next(accounts, sequences);
+        try {
+          listener.committed();
+        } catch (RuntimeException | Error ex) {
+          BalanceDeltas.revert(accounts, deltas);
+          throw ex;
+        }
+      }
+      return rejected;
+    } finally {
+      locks.unlockAll(stripes);
+      metrics.locked(locked - start, System.nanoTime() - locked);
+    }
+  }
+
+  @Override
+  public int transferBatch(Account[] accounts, long[] deltaUnits, long[] balanceUnits, long[] sequences,
+                           CommitListener listener) {
+    final long start = System.nanoTime();
+    final int[] stripes = locks.lockAll(accounts);
+    final long locked = System.nanoTime();
+    try {
+      final int rejected = BalanceDeltas.apply(accounts, deltaUnits, balanceUnits);
+      if (rejected < 0) {
+        locks.next(accounts, sequences);
+        try {
+          listener.committed();
+        } catch (RuntimeException | Error ex) {
+          BalanceDeltas.revert(accounts, deltaUnits);
+          throw ex;
+        }
+      }
+      return rejected;
+    } finally {
+      locks.unlockAll(stripes);
+      metrics.locked(locked - start, System.nanoTime() - locked);
+    }
+  }
+}
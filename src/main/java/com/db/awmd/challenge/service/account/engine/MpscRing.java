@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.service.account.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer single-consumer ring in the style of the LMAX Disruptor. Producers claim
+ * a sequence, wait until the consumer has freed that slot and publish into it. A non-null slot is
+ * a published entry, the consumer clears it before advancing its sequence.
+ */
+final class MpscRing<T> {
+
+  private final AtomicReferenceArray<T> slots;
+  private final int mask;
+
+  private final AtomicLong claimed = new AtomicLong();
+  private final AtomicLong consumed = new AtomicLong();
+
+  // Consumer-local copy of the consumed sequence.
+  private long next;
+
+  MpscRing(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+    }
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Publishes the entry, yielding while the ring is full.
+   */
+  void offer(T entry) {
+    final long sequence = claimed.getAndIncrement();
+    while (sequence - slots.length() >= consumed.get()) {
+      Thread.yield();
+    }
+    slots.set((int) sequence & mask, entry);
+  }
+
+  /**
+   * Takes the next published entry. Called by the consumer thread only.
+   *
+   * @return the entry, or {@code null} if the next slot is not published yet
+   */
+  T poll() {
+    final int index = (int) next & mask;
+    final T entry = slots.get(index);
+    if (entry == null) {
+      return null;
+    }
+    slots.lazySet(index, null);
+    consumed.lazySet(++next);
+    return entry;
+  }
+
+  boolean isEmpty() {
+    return slots.get((int) next & mask) == null;
+  }
+}
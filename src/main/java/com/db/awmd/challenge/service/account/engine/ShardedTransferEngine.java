@@ -0,0 +1,462 @@
+package com.db.awmd.challenge.service.account.engine;
+
+import com.db.awmd.challenge.domain.Account;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer engine: accounts are hashed onto a fixed number of shards and every balance is only
+ * ever updated by the thread of its shard, so balances never bounce between cores. Each shard also
+ * numbers the balance changes of its accounts, which gives their account sequences.
+ * <p>
+ * Callers publish a command into the ring inbox of the shard owning the sender (or the first shard
+ * of a batch) and wait for it to complete. The sender's shard debits and hands the transfer off to
+ * the receiver's shard, which credits it and runs the commit listener before it takes its next
+ * command. If the listener fails, the receiver's shard takes back the credit and hands the transfer
+ * back to the sender's shard to return the debit. Between debit and credit the amount is in flight
+ * and visible as neither balance.
+ * <p>
+ * A batch is handed along its shards in ascending order. Every shard but the last holds still until
+ * the batch is done, so the last one owns all accounts of the batch: it checks and applies all
+ * changes, numbers them and runs the listener, then lets the other shards go. Shards only ever wait
+ * for higher shards, so batches can not deadlock.
+ * <p>
+ * Shards talk to each other only through their inboxes. Hand-offs go through an unbounded queue
+ * next to the ring, so a shard never waits for another to accept a command; their number is bounded
+ * by the callers waiting, each has one command in flight.
+ */
+@Component
+@ConditionalOnProperty(name = "accounts.transfer.engine", havingValue = "sharded")
+public class ShardedTransferEngine implements TransferEngine, DisposableBean {
+
+  private static final int SPINS_BEFORE_PARK = 100;
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final Shard[] shards;
+
+  public ShardedTransferEngine(@Value("${accounts.transfer.shards:0}") int shards,
+                               @Value("${accounts.transfer.shard-inbox-capacity:1024}") int inboxCapacity) {
+    final int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+    this.shards = new Shard[count];
+    for (int i = 0; i < count; i++) {
+      this.shards[i] = new Shard(i, inboxCapacity);
+    }
+    for (Shard shard : this.shards) {
+      shard.thread.start();
+    }
+  }
+
+  @Override
+  public boolean transfer(Account sender, Account receiver, BigDecimal amount, DecimalCommitListener listener) {
+    final Command command = pair(Command.PAIR_DECIMAL, sender, receiver);
+    command.amount = amount;
+    command.decimalListener = listener;
+    submit(command.senderShard, command);
+    return command.committed;
+  }
+
+  @Override
+  public boolean transfer(Account sender, Account receiver, long amountUnits, UnitsCommitListener listener) {
+    final Command command = pair(Command.PAIR_UNITS, sender, receiver);
+    command.amountUnits = amountUnits;
+    command.unitsListener = listener;
+    submit(command.senderShard, command);
+    return command.committed;
+  }
+
+  @Override
+  public int transferBatch(Account[] accounts, BigDecimal[] deltas, BigDecimal[] balances, long[] sequences,
+                           CommitListener listener) {
+    final Command command = batch(Command.BATCH_DECIMAL, accounts, sequences, listener);
+    command.deltas = deltas;
+    command.balances = balances;
+    submit(command.route[0], command);
+    return command.rejected;
+  }
+
+  @Override
+  public int transferBatch(Account[] accounts, long[] deltaUnits, long[] balanceUnits, long[] sequences,
+                           CommitListener listener) {
+    final Command command = batch(Command.BATCH_UNITS, accounts, sequences, listener);
+    command.deltaUnits = deltaUnits;
+    command.balanceUnits = balanceUnits;
+    submit(command.route[0], command);
+    return command.rejected;
+  }
+
+  @Override
+  public void destroy() throws InterruptedException {
+    for (Shard shard : shards) {
+      shard.running = false;
+      LockSupport.unpark(shard.thread);
+    }
+    for (Shard shard : shards) {
+      shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  private Command pair(int kind, Account sender, Account receiver) {
+    final Command command = new Command(kind);
+    command.sender = sender;
+    command.receiver = receiver;
+    command.senderShard = shardOf(sender);
+    command.receiverShard = shardOf(receiver);
+    return command;
+  }
+
+  private Command batch(int kind, Account[] accounts, long[] sequences, CommitListener listener) {
+    final Command command = new Command(kind);
+    command.accounts = accounts;
+    command.sequences = sequences;
+    command.listener = listener;
+    command.shardOf = new int[accounts.length];
+    for (int i = 0; i < accounts.length; i++) {
+      command.shardOf[i] = shardOf(accounts[i]);
+    }
+    final int[] sorted = command.shardOf.clone();
+    Arrays.sort(sorted);
+    int distinct = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[distinct++] = sorted[i];
+      }
+    }
+    command.route = Arrays.copyOf(sorted, distinct);
+    return command;
+  }
+
+  private void submit(int shard, Command command) {
+    command.waiter = Thread.currentThread();
+    shards[shard].inbox.offer(command);
+    shards[shard].wakeUp();
+
+    int spins = SPINS_BEFORE_PARK;
+    while (!command.done) {
+      if (spins > 0) {
+        spins--;
+        Thread.yield();
+      } else {
+        LockSupport.park(this);
+      }
+    }
+    if (command.failure != null) {
+      if (command.failure instanceof RuntimeException) {
+        throw (RuntimeException) command.failure;
+      }
+      throw (Error) command.failure;
+    }
+  }
+
+  private int shardOf(Account account) {
+    final int hash = account.getAccountId().hashCode();
+    return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.length;
+  }
+
+  /**
+   * A transfer or batch travelling between shards. Fields are handed over together with the
+   * command through the inbox and hand-off queues, which publish them safely.
+   */
+  private static final class Command {
+
+    static final int PAIR_DECIMAL = 0;
+    static final int PAIR_UNITS = 1;
+    static final int BATCH_DECIMAL = 2;
+    static final int BATCH_UNITS = 3;
+
+    static final int DEBIT = 0;
+    static final int CREDIT = 1;
+    static final int UNDO = 2;
+
+    final int kind;
+    int phase = DEBIT;
+
+    Account sender;
+    Account receiver;
+    int senderShard;
+    int receiverShard;
+    BigDecimal amount;
+    long amountUnits;
+    BigDecimal senderBalance;
+    long senderBalanceUnits;
+    BigDecimal receiverBalance;
+    long receiverBalanceUnits;
+    long senderSequence;
+    long receiverSequence;
+    DecimalCommitListener decimalListener;
+    UnitsCommitListener unitsListener;
+    boolean committed;
+
+    Account[] accounts;
+    int[] shardOf;
+    int[] route;
+    int position;
+    BigDecimal[] deltas;
+    BigDecimal[] balances;
+    long[] deltaUnits;
+    long[] balanceUnits;
+    long[] sequences;
+    CommitListener listener;
+    int rejected = -1;
+    // Lets the shards holding still for a batch go again.
+    volatile boolean released;
+
+    Thread waiter;
+    Throwable failure;
+    volatile boolean done;
+
+    Command(int kind) {
+      this.kind = kind;
+    }
+
+    boolean isBatch() {
+      return kind == BATCH_DECIMAL || kind == BATCH_UNITS;
+    }
+
+    boolean isUnits() {
+      return kind == PAIR_UNITS || kind == BATCH_UNITS;
+    }
+  }
+
+  private final class Shard implements Runnable {
+
+    private final int index;
+    private final MpscRing<Command> inbox;
+    private final Queue<Command> handOffs = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+
+    // Account sequence of the last balance change on this shard. Written by the shard's own thread,
+    // or by the last shard of a batch while this one holds still.
+    private long sequence;
+
+    private volatile boolean running = true;
+    private volatile boolean sleeping;
+
+    private Shard(int index, int inboxCapacity) {
+      this.index = index;
+      this.inbox = new MpscRing<>(inboxCapacity);
+      this.thread = new Thread(this, "transfer-shard-" + index);
+      this.thread.setDaemon(true);
+    }
+
+    void handOff(Command command) {
+      handOffs.add(command);
+      wakeUp();
+    }
+
+    void wakeUp() {
+      if (sleeping) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    @Override
+    public void run() {
+      int idle = 0;
+      while (true) {
+        // In-flight transfers first, they already hold debited funds.
+        Command command = handOffs.poll();
+        if (command == null) {
+          command = inbox.poll();
+        }
+        if (command != null) {
+          idle = 0;
+          execute(command);
+          continue;
+        }
+        if (!running) {
+          return;
+        }
+        if (++idle < SPINS_BEFORE_PARK) {
+          Thread.yield();
+          continue;
+        }
+        sleeping = true;
+        if (handOffs.isEmpty() && inbox.isEmpty() && running) {
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        sleeping = false;
+      }
+    }
+
+    private void execute(Command command) {
+      try {
+        if (command.isBatch()) {
+          executeBatch(command);
+        } else {
+          executePair(command);
+        }
+      } catch (RuntimeException | Error ex) {
+        command.failure = ex;
+        complete(command);
+      }
+    }
+
+    private void executePair(Command command) {
+      switch (command.phase) {
+        case Command.DEBIT:
+          if (command.isUnits() && command.receiverShard == index) {
+            // Nothing runs between debit and credit here, so an overflow is rejected up front.
+            BalanceDeltas.checkCredit(command.receiver, command.amountUnits);
+          }
+          if (!debit(command)) {
+            complete(command);
+            return;
+          }
+          command.senderSequence = ++sequence;
+          if (command.receiverShard != index) {
+            command.phase = Command.CREDIT;
+            shards[command.receiverShard].handOff(command);
+            return;
+          }
+          credit(command);
+          commit(command);
+          break;
+        case Command.CREDIT:
+          try {
+            credit(command);
+          } catch (ArithmeticException ex) {
+            returnDebit(command, ex);
+            return;
+          }
+          commit(command);
+          break;
+        default:
+          undoDebit(command);
+          complete(command);
+      }
+    }
+
+    private boolean debit(Command command) {
+      if (command.isUnits()) {
+        command.senderBalanceUnits = command.sender.balanceCell().tryWithdraw(command.amountUnits);
+        return command.senderBalanceUnits >= 0;
+      }
+      command.senderBalance = command.sender.balanceCell().tryWithdraw(command.amount);
+      return command.senderBalance != null;
+    }
+
+    /**
+     * @throws ArithmeticException if the receiver balance would overflow, it is left unchanged
+     */
+    private void credit(Command command) {
+      if (command.isUnits()) {
+        command.receiverBalanceUnits = command.receiver.balanceCell().deposit(command.amountUnits);
+      } else {
+        command.receiverBalance = command.receiver.balanceCell().deposit(command.amount);
+      }
+    }
+
+    /**
+     * Numbers the credit and runs the listener. Nothing else runs on this shard in the meantime,
+     * so a failed transfer can still take back its credit.
+     */
+    private void commit(Command command) {
+      command.receiverSequence = ++sequence;
+      try {
+        if (command.isUnits()) {
+          command.unitsListener.committed(command.senderBalanceUnits, command.receiverBalanceUnits,
+                  command.senderSequence, command.receiverSequence);
+        } else {
+          command.decimalListener.committed(command.senderBalance, command.receiverBalance,
+                  command.senderSequence, command.receiverSequence);
+        }
+      } catch (RuntimeException | Error ex) {
+        if (command.isUnits()) {
+          command.receiver.balanceCell().tryWithdraw(command.amountUnits);
+        } else {
+          command.receiver.balanceCell().tryWithdraw(command.amount);
+        }
+        returnDebit(command, ex);
+        return;
+      }
+      command.committed = true;
+      complete(command);
+    }
+
+    /**
+     * Fails the transfer once the sender's shard has taken back the debit.
+     */
+    private void returnDebit(Command command, Throwable failure) {
+      command.failure = failure;
+      if (command.senderShard == index) {
+        undoDebit(command);
+        complete(command);
+      } else {
+        command.phase = Command.UNDO;
+        shards[command.senderShard].handOff(command);
+      }
+    }
+
+    private void undoDebit(Command command) {
+      if (command.isUnits()) {
+        command.sender.balanceCell().deposit(command.amountUnits);
+      } else {
+        command.sender.balanceCell().deposit(command.amount);
+      }
+    }
+
+    /**
+     * Holds still for the batch unless this is its last shard, which runs it.
+     */
+    private void executeBatch(Command command) {
+      if (command.position < command.route.length - 1) {
+        command.position++;
+        shards[command.route[command.position]].handOff(command);
+        while (!command.released) {
+          LockSupport.park(this);
+        }
+        return;
+      }
+      try {
+        runBatch(command);
+      } finally {
+        command.released = true;
+        for (int i = 0; i < command.route.length - 1; i++) {
+          LockSupport.unpark(shards[command.route[i]].thread);
+        }
+      }
+      complete(command);
+    }
+
+    /**
+     * Runs while every other shard of the batch holds still, so this thread owns all its accounts.
+     */
+    private void runBatch(Command command) {
+      command.rejected = command.isUnits()
+              ? BalanceDeltas.apply(command.accounts, command.deltaUnits, command.balanceUnits)
+              : BalanceDeltas.apply(command.accounts, command.deltas, command.balances);
+      if (command.rejected >= 0) {
+        return;
+      }
+      for (int i = 0; i < command.accounts.length; i++) {
+        command.sequences[i] = ++shards[command.shardOf[i]].sequence;
+      }
+      try {
+        command.listener.committed();
+      } catch (RuntimeException | Error ex) {
+        if (command.isUnits()) {
+          BalanceDeltas.revert(command.accounts, command.deltaUnits);
+        } else {
+          BalanceDeltas.revert(command.accounts, command.deltas);
+        }
+        throw ex;
+      }
+    }
+
+    private void complete(Command command) {
+      final Thread waiter = command.waiter;
+      command.done = true;
+      LockSupport.unpark(waiter);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.db.awmd.challenge.service.account.engine;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.math.BigDecimal;
+
+/**
+ * Commits the debit/credit pairs of transfers.
+ * <p>
+ * Every balance change gets an account sequence. The sequences of an account increase in the
+ * order its balance changed, but are not contiguous. Commit listeners receive the sequences and
+ * may be called in a different order for the same account: the sharded engine runs them on the
+ * receiver's shard. Callers order the history and events of an account by these sequences.
+ * <p>
+ * A listener runs before any balance it credited can be debited again, so a record journaled by
+ * the listener always comes before the records that spend its credits.
+ * <p>
+ * A listener that throws rejects the commit: the engine reverts the balance changes and rethrows.
+ * Listeners therefore throw before they record anything, e.g. when the journal no longer accepts
+ * records.
+ */
+public interface TransferEngine {
+
+  /**
+   * Moves {@code amount} from {@code sender} to {@code receiver}.
+   *
+   * @return {@code false} if the sender balance would become negative, in which case
+   * neither account is changed and the listener is not called
+   */
+  boolean transfer(Account sender, Account receiver, BigDecimal amount, DecimalCommitListener listener);
+
+  /**
+   * Same as {@link #transfer(Account, Account, BigDecimal, DecimalCommitListener)} for fixed-scale
+   * balances, with the amount given in minor units.
+   *
+   * @throws ArithmeticException if the receiver balance would overflow, neither account is changed
+   */
+  boolean transfer(Account sender, Account receiver, long amountUnits, UnitsCommitListener listener);
+
+  /**
+   * Applies the net balance changes of a transfer batch, either all of them or none.
+   *
+   * @param accounts distinct accounts ordered by account id
+   * @param deltas   signed net change of every account
+   * @param balances  receives the balance of every account right after the commit
+   * @param sequences receives the account sequence of every balance change
+   * @return index of the account that lacks balance, or {@code -1} if the batch is committed
+   */
+  int transferBatch(Account[] accounts, BigDecimal[] deltas, BigDecimal[] balances, long[] sequences,
+                    CommitListener listener);
+
+  /**
+   * Same as {@link #transferBatch(Account[], BigDecimal[], BigDecimal[], long[], CommitListener)} in minor units.
+   *
+   * @throws ArithmeticException if a credited balance would overflow, no account is changed
+   */
+  int transferBatch(Account[] accounts, long[] deltaUnits, long[] balanceUnits, long[] sequences,
+                    CommitListener listener);
+
+  /**
+   * Called once the balances and sequences of a batch are filled in.
+   */
+  interface CommitListener {
+    void committed();
+  }
+
+  /**
+   * Called once the balances of a transfer are updated, with the balances this transfer left
+   * behind and the account sequences of both changes.
+   */
+  interface DecimalCommitListener {
+    void committed(BigDecimal senderBalance, BigDecimal receiverBalance, long senderSequence, long receiverSequence);
+  }
+
+  /**
+   * Minor units counterpart of {@link DecimalCommitListener}.
+   */
+  interface UnitsCommitListener {
+    void committed(long senderBalanceUnits, long receiverBalanceUnits, long senderSequence, long receiverSequence);
+  }
+}
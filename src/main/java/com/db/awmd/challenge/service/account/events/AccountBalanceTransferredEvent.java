@@ -1,40 +1,196 @@
 package com.db.awmd.challenge.service.account.events;
 
-import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
 import com.db.awmd.challenge.event.GenericEvent;
-import lombok.Data;
+import com.db.awmd.challenge.event.OrderedEvent;
 
 import java.math.BigDecimal;
 
+/**
+ * Ordered by sender, so the transfers of one sending account reach listeners in publishing order.
+ * Receivers order their credits by {@link Payload#getReceiverSequence()}.
+ */
+public class AccountBalanceTransferredEvent extends GenericEvent<AccountBalanceTransferredEvent.Payload>
+        implements OrderedEvent {
 
-public class AccountBalanceTransferredEvent extends GenericEvent<AccountBalanceTransferredEvent.Payload> {
+  /**
+   * Immutable snapshot of a committed transfer. Fixed-scale transfers keep the amount and
+   * the balances as minor units and only convert them to {@link BigDecimal} when asked.
+   */
+  public static final class Payload {
+    private static final int DECIMAL = -1;
 
-  @Data
-  public static class Payload {
-    private final Account sender;
-    private final Account receiver;
+    private final long sequence;
+    private final String senderId;
+    private final long senderSequence;
+    private final String receiverId;
+    private final long receiverSequence;
+    private final int scale;
+    private final int receiverScale;
+    private final long amountUnits;
+    private final long receivedUnits;
+    private final long senderBalanceUnits;
+    private final long receiverBalanceUnits;
     private final BigDecimal amount;
+    private final BigDecimal received;
+    private final BigDecimal senderBalance;
+    private final BigDecimal receiverBalance;
 
-    public Payload(Account sender, Account receiver, BigDecimal amount) {
-      this.sender = sender;
-      this.receiver = receiver;
+    private Payload(long sequence, String senderId, long senderSequence, String receiverId, long receiverSequence,
+                    int scale, int receiverScale, long amountUnits, long receivedUnits, long senderBalanceUnits,
+                    long receiverBalanceUnits, BigDecimal amount, BigDecimal received, BigDecimal senderBalance,
+                    BigDecimal receiverBalance) {
+      this.sequence = sequence;
+      this.senderId = senderId;
+      this.senderSequence = senderSequence;
+      this.receiverId = receiverId;
+      this.receiverSequence = receiverSequence;
+      this.scale = scale;
+      this.receiverScale = receiverScale;
+      this.amountUnits = amountUnits;
+      this.receivedUnits = receivedUnits;
+      this.senderBalanceUnits = senderBalanceUnits;
+      this.receiverBalanceUnits = receiverBalanceUnits;
       this.amount = amount;
+      this.received = received;
+      this.senderBalance = senderBalance;
+      this.receiverBalance = receiverBalance;
     }
 
-    public Account getSender() {
-      return sender;
+    public static Payload decimal(long sequence, String senderId, long senderSequence, String receiverId,
+                                  long receiverSequence, BigDecimal amount, BigDecimal senderBalance,
+                                  BigDecimal receiverBalance) {
+      return decimal(sequence, senderId, senderSequence, receiverId, receiverSequence, amount, amount,
+              senderBalance, receiverBalance);
     }
 
-    public Account getReceiver() {
-      return receiver;
+    /**
+     * Transfer whose receiver is credited {@code received}, the amount converted to its currency.
+     */
+    public static Payload decimal(long sequence, String senderId, long senderSequence, String receiverId,
+                                  long receiverSequence, BigDecimal amount, BigDecimal received,
+                                  BigDecimal senderBalance, BigDecimal receiverBalance) {
+      return new Payload(sequence, senderId, senderSequence, receiverId, receiverSequence, DECIMAL, DECIMAL,
+              0, 0, 0, 0, amount, received, senderBalance, receiverBalance);
     }
 
+    public static Payload units(long sequence, String senderId, long senderSequence, String receiverId,
+                                long receiverSequence, int scale, long amountUnits, long senderBalanceUnits,
+                                long receiverBalanceUnits) {
+      return units(sequence, senderId, senderSequence, receiverId, receiverSequence, scale, scale,
+              amountUnits, amountUnits, senderBalanceUnits, receiverBalanceUnits);
+    }
+
+    /**
+     * Transfer between currencies, the receiver's units are in {@code receiverScale}.
+     */
+    public static Payload units(long sequence, String senderId, long senderSequence, String receiverId,
+                                long receiverSequence, int scale, int receiverScale, long amountUnits,
+                                long receivedUnits, long senderBalanceUnits, long receiverBalanceUnits) {
+      return new Payload(sequence, senderId, senderSequence, receiverId, receiverSequence, scale, receiverScale,
+              amountUnits, receivedUnits, senderBalanceUnits, receiverBalanceUnits, null, null, null, null);
+    }
+
+    /**
+     * Transfer event sequence, unique across all transfers. Events of an account may be published
+     * out of its balance order, the account sequences give that order.
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    public String getSenderId() {
+      return senderId;
+    }
+
+    /**
+     * Position of the debit in the order the sender's balance changed. Increasing, but not contiguous.
+     */
+    public long getSenderSequence() {
+      return senderSequence;
+    }
+
+    public String getReceiverId() {
+      return receiverId;
+    }
+
+    /**
+     * Position of the credit in the order the receiver's balance changed.
+     */
+    public long getReceiverSequence() {
+      return receiverSequence;
+    }
+
+    public boolean isFixedScale() {
+      return scale != DECIMAL;
+    }
+
+    /**
+     * Scale of the sender's units, the amount and the sender balance.
+     */
+    public int getScale() {
+      return scale;
+    }
+
+    /**
+     * Scale of the receiver's units, the received amount and the receiver balance.
+     */
+    public int getReceiverScale() {
+      return receiverScale;
+    }
+
+    public long getAmountUnits() {
+      return amountUnits;
+    }
+
+    public long getReceivedUnits() {
+      return receivedUnits;
+    }
+
+    public long getSenderBalanceUnits() {
+      return senderBalanceUnits;
+    }
+
+    public long getReceiverBalanceUnits() {
+      return receiverBalanceUnits;
+    }
+
+    /**
+     * Amount debited from the sender, in the sender's currency.
+     */
     public BigDecimal getAmount() {
-      return amount;
+      return isFixedScale() ? FixedScaleBalanceCell.toDecimal(amountUnits, scale) : amount;
+    }
+
+    /**
+     * Amount credited to the receiver, in the receiver's currency. Differs from {@link #getAmount()}
+     * only for cross-currency transfers.
+     */
+    public BigDecimal getReceived() {
+      return isFixedScale() ? FixedScaleBalanceCell.toDecimal(receivedUnits, receiverScale) : received;
+    }
+
+    /**
+     * Sender balance right after the transfer.
+     */
+    public BigDecimal getSenderBalance() {
+      return isFixedScale() ? FixedScaleBalanceCell.toDecimal(senderBalanceUnits, scale) : senderBalance;
     }
+
+    /**
+     * Receiver balance right after the transfer.
+     */
+    public BigDecimal getReceiverBalance() {
+      return isFixedScale() ? FixedScaleBalanceCell.toDecimal(receiverBalanceUnits, receiverScale) : receiverBalance;
+    }
+  }
+
+  public AccountBalanceTransferredEvent(Payload payload) {
+    super(payload);
   }
 
-  public AccountBalanceTransferredEvent(Account sender, Account receiver, BigDecimal amount) {
-    super(new Payload(sender, receiver, amount));
+  @Override
+  public Object orderingKey() {
+    return payload().getSenderId();
   }
 }
@@ -0,0 +1,45 @@
+package com.db.awmd.challenge.service.account.events;
+
+import com.db.awmd.challenge.event.GenericEvent;
+import com.db.awmd.challenge.event.OrderedEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered by the sender of the first leg, like a single transfer of that account.
+ */
+public class AccountBalancesBatchTransferredEvent
+        extends GenericEvent<AccountBalancesBatchTransferredEvent.Payload> implements OrderedEvent {
+
+  /**
+   * Immutable snapshot of a committed batch. All legs share the batch sequence number and
+   * carry the balances their accounts had once the whole batch was applied.
+   */
+  public static final class Payload {
+    private final long sequence;
+    private final List<AccountBalanceTransferredEvent.Payload> transfers;
+
+    public Payload(long sequence, List<AccountBalanceTransferredEvent.Payload> transfers) {
+      this.sequence = sequence;
+      this.transfers = Collections.unmodifiableList(transfers);
+    }
+
+    public long getSequence() {
+      return sequence;
+    }
+
+    public List<AccountBalanceTransferredEvent.Payload> getTransfers() {
+      return transfers;
+    }
+  }
+
+  public AccountBalancesBatchTransferredEvent(Payload payload) {
+    super(payload);
+  }
+
+  @Override
+  public Object orderingKey() {
+    return payload().getTransfers().get(0).getSenderId();
+  }
+}
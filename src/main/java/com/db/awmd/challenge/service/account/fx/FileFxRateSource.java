@@ -0,0 +1,51 @@
+package com.db.awmd.challenge.service.account.fx;
+
+import com.db.awmd.challenge.config.CurrencyProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Reads the quotes from a properties file, one {@code CODE=units} line per currency. Stands in for
+ * a market data feed; the file is read again on every refresh, so it can be replaced while running.
+ */
+@Component
+@ConditionalOnProperty(name = "accounts.currency.rates.source", havingValue = "file", matchIfMissing = true)
+public class FileFxRateSource implements FxRateSource {
+
+  private final String file;
+
+  public FileFxRateSource(CurrencyProperties currencyProperties) {
+    this.file = currencyProperties.getRates().getFile();
+  }
+
+  @Override
+  public Map<String, BigDecimal> quotes() throws IOException {
+    final Map<String, BigDecimal> quotes = new HashMap<>();
+    if (file == null || file.isEmpty()) {
+      return quotes;
+    }
+    final Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    for (String currency : properties.stringPropertyNames()) {
+      final String value = properties.getProperty(currency).trim();
+      try {
+        quotes.put(currency.trim(), new BigDecimal(value));
+      } catch (NumberFormatException ex) {
+        throw new IOException("Rate " + currency + "=" + value + " in " + file + " is not a number.");
+      }
+    }
+    return quotes;
+  }
+}
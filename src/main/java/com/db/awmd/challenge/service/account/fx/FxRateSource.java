@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.service.account.fx;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Where {@link FxRateTable} loads its rates from. Implementations are selected with
+ * {@code accounts.currency.rates.source}.
+ */
+@FunctionalInterface
+public interface FxRateSource {
+
+  /**
+   * Current quotes as the units of each currency worth one unit of a common reference currency,
+   * which need not be among them. Called on startup and from the refresh thread.
+   */
+  Map<String, BigDecimal> quotes() throws IOException;
+}
@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.service.account.fx;
+
+import com.db.awmd.challenge.config.CurrencyProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Locally cached exchange rates for cross-currency transfers.
+ * <p>
+ * The rates are loaded from the {@link FxRateSource} on startup and then periodically by a
+ * background thread. Every load builds a new immutable {@link FxRates} and swaps it in with one
+ * volatile write, so transfers read the current rates without locking and a transfer converts with
+ * rates of a single load. If a refresh fails, the previous rates stay in use.
+ */
+@Component
+public class FxRateTable implements DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(FxRateTable.class);
+
+  private final FxRateSource source;
+
+  private final String defaultCurrency;
+
+  private final ScheduledExecutorService refresher;
+
+  private volatile FxRates rates = FxRates.EMPTY;
+
+  /**
+   * @throws IOException if the rates cannot be loaded on startup
+   */
+  public FxRateTable(FxRateSource source, CurrencyProperties currencyProperties) throws IOException {
+    this.source = source;
+    this.defaultCurrency = currencyProperties.getDefaultCurrency();
+    refresh();
+
+    final Duration interval = currencyProperties.getRates().getRefreshInterval();
+    if (interval.isZero()) {
+      this.refresher = null;
+    } else {
+      this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "fx-rates-refresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.refresher.scheduleWithFixedDelay(this::refreshSafe, interval.toMillis(), interval.toMillis(),
+              TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Rates of the latest successful load.
+   */
+  public FxRates rates() {
+    return rates;
+  }
+
+  /**
+   * Currency of accounts created without one.
+   */
+  public String defaultCurrency() {
+    return defaultCurrency;
+  }
+
+  /**
+   * Loads the rates from the source and swaps them in.
+   *
+   * @throws IllegalArgumentException if the source returns an invalid quote, the rates are kept
+   */
+  public void refresh() throws IOException {
+    final FxRates loaded = FxRates.of(source.quotes());
+    rates = loaded;
+    log.debug("Loaded exchange rates of {}", loaded.currencies());
+  }
+
+  @Override
+  public void destroy() {
+    if (refresher != null) {
+      refresher.shutdownNow();
+    }
+  }
+
+  private void refreshSafe() {
+    try {
+      refresh();
+    } catch (Exception ex) {
+      log.error("Exchange rate refresh failed, the previous rates are kept", ex);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.service.account.fx;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable exchange rates between a set of currencies, as loaded by one refresh of {@link FxRateTable}.
+ * <p>
+ * Cross rates of all pairs are computed when the table is built and kept in a flat matrix. A
+ * three-letter code maps to its row through an array over all 26<sup>3</sup> possible codes, so a
+ * lookup is two array reads without hashing and never allocates.
+ */
+public final class FxRates {
+
+  private static final int CODES = 26 * 26 * 26;
+
+  private static final MathContext PRECISION = MathContext.DECIMAL64;
+
+  static final FxRates EMPTY = of(Collections.emptyMap());
+
+  // Row of the currency + 1 per code, 0 for currencies without a quote.
+  private final short[] indices = new short[CODES];
+  private final Set<String> currencies;
+  private final int size;
+  private final BigDecimal[] rates;
+
+  private FxRates(Map<String, BigDecimal> quotes) {
+    this.currencies = Collections.unmodifiableSet(quotes.keySet());
+    this.size = quotes.size();
+    this.rates = new BigDecimal[size * size];
+    final BigDecimal[] units = quotes.values().toArray(new BigDecimal[0]);
+    int index = 0;
+    for (String currency : quotes.keySet()) {
+      indices[code(currency)] = (short) (++index);
+    }
+    for (int from = 0; from < size; from++) {
+      for (int to = 0; to < size; to++) {
+        rates[from * size + to] = from == to ? BigDecimal.ONE : units[to].divide(units[from], PRECISION);
+      }
+    }
+  }
+
+  /**
+   * @param quotes units of each currency worth one unit of a common reference currency
+   * @throws IllegalArgumentException if a code is not three capital letters or a quote is not positive
+   */
+  public static FxRates of(Map<String, BigDecimal> quotes) {
+    final Map<String, BigDecimal> sorted = new TreeMap<>(quotes);
+    for (Map.Entry<String, BigDecimal> quote : sorted.entrySet()) {
+      if (code(quote.getKey()) < 0) {
+        throw new IllegalArgumentException("Currency " + quote.getKey() + " is not an ISO 4217 code.");
+      }
+      if (quote.getValue() == null || quote.getValue().signum() <= 0) {
+        throw new IllegalArgumentException("Quote of " + quote.getKey() + " should be a positive value.");
+      }
+    }
+    return new FxRates(sorted);
+  }
+
+  /**
+   * @return row and column of the currency in the rate matrix, or {@code -1} if it has no quote
+   */
+  public int index(String currency) {
+    final int code = code(currency);
+    return code < 0 ? -1 : indices[code] - 1;
+  }
+
+  /**
+   * Units of currency {@code to} worth one unit of currency {@code from}.
+   */
+  public BigDecimal rate(int from, int to) {
+    return rates[from * size + to];
+  }
+
+  /**
+   * {@code amount} of currency {@code from} in currency {@code to}, rounded half-even to {@code scale}.
+   */
+  public BigDecimal convert(BigDecimal amount, int from, int to, int scale) {
+    return amount.multiply(rate(from, to)).setScale(scale, RoundingMode.HALF_EVEN);
+  }
+
+  public Set<String> currencies() {
+    return currencies;
+  }
+
+  private static int code(String currency) {
+    if (currency == null || currency.length() != 3) {
+      return -1;
+    }
+    int code = 0;
+    for (int i = 0; i < 3; i++) {
+      final char c = currency.charAt(i);
+      if (c < 'A' || c > 'Z') {
+        return -1;
+      }
+      code = code * 26 + (c - 'A');
+    }
+    return code;
+  }
+}
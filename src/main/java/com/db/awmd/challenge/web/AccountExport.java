@@ -0,0 +1,136 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.journal.AccountSnapshot;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes listed accounts to the response as they are visited, through a fixed-size buffer. The
+ * response is only opened with the first account, so a listing that fails up front can still
+ * answer with an error status.
+ */
+abstract class AccountExport implements AccountsRepository.BalanceVisitor {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final HttpServletResponse response;
+  private final String contentType;
+
+  private long count;
+
+  AccountExport(HttpServletResponse response, String contentType) {
+    this.response = response;
+    this.contentType = contentType;
+  }
+
+  /**
+   * One JSON object per line: {@code {"accountId":"...","balance":...,"currency":"..."}}, without
+   * the currency for accounts in the default currency.
+   */
+  static AccountExport ndjson(HttpServletResponse response, JsonFactory jsonFactory) {
+    return new AccountExport(response, MediaType.APPLICATION_NDJSON_VALUE) {
+
+      private JsonGenerator generator;
+
+      @Override
+      void open(OutputStream out) throws IOException {
+        generator = jsonFactory.createGenerator(new BufferedOutputStream(out, BUFFER_SIZE));
+        generator.setRootValueSeparator(null);
+      }
+
+      @Override
+      void write(String accountId, BigDecimal balance, String currency) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("accountId", accountId);
+        generator.writeNumberField("balance", balance);
+        if (currency != null) {
+          generator.writeStringField("currency", currency);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+      }
+
+      @Override
+      void close() throws IOException {
+        generator.close();
+      }
+    };
+  }
+
+  /**
+   * Accounts back to back in the {@link AccountSnapshot#writeAccount account layout of snapshots},
+   * each followed by {@code currencyLength, currency (UTF-8)}, up to the end of the stream. The
+   * currency is empty for accounts in the default currency.
+   */
+  static AccountExport binary(HttpServletResponse response) {
+    return new AccountExport(response, MediaType.APPLICATION_OCTET_STREAM_VALUE) {
+
+      private DataOutputStream out;
+
+      @Override
+      void open(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+      }
+
+      @Override
+      void write(String accountId, BigDecimal balance, String currency) throws IOException {
+        AccountSnapshot.writeAccount(out, accountId, balance);
+        final byte[] code = currency != null ? currency.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        out.writeShort(code.length);
+        out.write(code);
+      }
+
+      @Override
+      void close() throws IOException {
+        out.close();
+      }
+    };
+  }
+
+  abstract void open(OutputStream out) throws IOException;
+
+  abstract void write(String accountId, BigDecimal balance, String currency) throws IOException;
+
+  abstract void close() throws IOException;
+
+  @Override
+  public void account(String accountId, BigDecimal balance) throws IOException {
+    account(accountId, balance, null);
+  }
+
+  @Override
+  public void account(String accountId, BigDecimal balance, String currency) throws IOException {
+    if (count++ == 0) {
+      start();
+    }
+    write(accountId, balance, currency);
+  }
+
+  /**
+   * Completes the response.
+   *
+   * @return number of accounts written
+   */
+  long finish() throws IOException {
+    if (count == 0) {
+      start();
+    }
+    close();
+    return count;
+  }
+
+  private void start() throws IOException {
+    response.setContentType(contentType);
+    open(response.getOutputStream());
+  }
+}
@@ -0,0 +1,100 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.ReadCacheProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceCell;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * JSON of accounts as served by {@code GET /v1/accounts/{id}}, serialized once per balance.
+ * <p>
+ * A read takes one snapshot of the balance, either the immutable {@link BigDecimal} or the minor
+ * units, and serializes that snapshot with {@link AccountJsonWriter} rather than the live account.
+ * The balance is the account's version: apart from the fixed id and currency the JSON only depends
+ * on it, so cached bytes are served as long as the balance is unchanged. Entries are immutable and replaced in a direct-mapped table without locks;
+ * concurrent readers may both serialize, the last one stays.
+ */
+@Component
+public class AccountJsonCache {
+
+  private final BalanceProperties balanceProperties;
+
+  private final boolean fixedScale;
+
+  private final AtomicReferenceArray<Entry> entries;
+
+  public AccountJsonCache(BalanceProperties balanceProperties, ReadCacheProperties readCacheProperties) {
+    this.balanceProperties = balanceProperties;
+    this.fixedScale = balanceProperties.isFixedScale();
+    this.entries = readCacheProperties.getEntries() <= 0
+            ? null : new AtomicReferenceArray<>(Integer.highestOneBit(readCacheProperties.getEntries() * 2 - 1));
+  }
+
+  public Entry get(Account account) {
+    final String accountId = account.getAccountId();
+    final String currency = account.getCurrency();
+    final BalanceCell cell = account.balanceCell();
+    final long units = fixedScale ? cell.units() : 0;
+    final BigDecimal balance = fixedScale ? null : cell.get();
+    if (entries == null) {
+      return serialize(accountId, units, balance, currency);
+    }
+    final int hash = accountId.hashCode();
+    final int index = (hash ^ (hash >>> 16)) & (entries.length() - 1);
+    Entry entry = entries.get(index);
+    if (entry == null || entry.units != units || !Objects.equals(entry.balance, balance)
+            || !entry.accountId.equals(accountId) || !Objects.equals(entry.currency, currency)) {
+      entry = serialize(accountId, units, balance, currency);
+      entries.lazySet(index, entry);
+    }
+    return entry;
+  }
+
+  private Entry serialize(String accountId, long units, BigDecimal balance, String currency) {
+    return new Entry(accountId, units, balance, currency, fixedScale
+            ? AccountJsonWriter.write(accountId, units, balanceProperties.scaleOf(currency), currency)
+            : AccountJsonWriter.write(accountId, balance, currency),
+            "\"" + (fixedScale ? Long.toString(units) : balance.toString()) + "\"");
+  }
+
+  /**
+   * Serialized account at one balance.
+   */
+  public static final class Entry {
+
+    private final String accountId;
+    private final long units;
+    private final BigDecimal balance;
+    private final String currency;
+    private final byte[] json;
+    private final String etag;
+
+    private Entry(String accountId, long units, BigDecimal balance, String currency, byte[] json, String etag) {
+      this.accountId = accountId;
+      this.units = units;
+      this.balance = balance;
+      this.currency = currency;
+      this.json = json;
+      this.etag = etag;
+    }
+
+    /**
+     * Shared between readers, must not be modified.
+     */
+    public byte[] getJson() {
+      return json;
+    }
+
+    /**
+     * Entity tag derived from the balance.
+     */
+    public String getEtag() {
+      return etag;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package com.db.awmd.challenge.web;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hand-rolled serializer of {@code {"accountId":"...","balance":...}}, followed by
+ * {@code "currency":"..."} for accounts with a currency, byte for byte what Jackson
+ * writes for an {@link com.db.awmd.challenge.domain.Account}. The exact length is computed first,
+ * so an account costs one array and fixed-scale balances are written digit by digit without
+ * creating a {@link BigDecimal} or string.
+ */
+final class AccountJsonWriter {
+
+  private static final byte[] ACCOUNT_ID = "{\"accountId\":\"".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] BALANCE = "\",\"balance\":".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CURRENCY = ",\"currency\":\"".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+  // Up to this scale BigDecimal.toString() of minor units never switches to exponent notation.
+  private static final int MAX_PLAIN_SCALE = 6;
+
+  private AccountJsonWriter() {
+  }
+
+  static byte[] write(String accountId, long units, int scale, String currency) {
+    if (scale < 0 || scale > MAX_PLAIN_SCALE || units < 0) {
+      return write(accountId, BigDecimal.valueOf(units, scale), currency);
+    }
+    final int digits = Math.max(digits(units), scale + 1);
+    final byte[] json = new byte[ACCOUNT_ID.length + escapedLength(accountId) + BALANCE.length
+            + digits + (scale > 0 ? 1 : 0) + suffixLength(currency)];
+    int position = prefix(json, accountId);
+    long remaining = units;
+    int end = position + digits + (scale > 0 ? 1 : 0);
+    for (int i = end - 1; i >= position; i--) {
+      if (scale > 0 && i == end - 1 - scale) {
+        json[i] = '.';
+        continue;
+      }
+      json[i] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+    suffix(json, end, currency);
+    return json;
+  }
+
+  static byte[] write(String accountId, BigDecimal balance, String currency) {
+    final String value = balance.toString();
+    final byte[] json = new byte[ACCOUNT_ID.length + escapedLength(accountId) + BALANCE.length + value.length()
+            + suffixLength(currency)];
+    int position = prefix(json, accountId);
+    for (int i = 0; i < value.length(); i++) {
+      json[position++] = (byte) value.charAt(i);
+    }
+    suffix(json, position, currency);
+    return json;
+  }
+
+  private static int prefix(byte[] json, String accountId) {
+    System.arraycopy(ACCOUNT_ID, 0, json, 0, ACCOUNT_ID.length);
+    int position = escape(accountId, json, ACCOUNT_ID.length);
+    System.arraycopy(BALANCE, 0, json, position, BALANCE.length);
+    return position + BALANCE.length;
+  }
+
+  private static int suffixLength(String currency) {
+    return currency == null ? 1 : CURRENCY.length + escapedLength(currency) + 2;
+  }
+
+  /**
+   * Writes the currency, if any, and the closing brace.
+   */
+  private static void suffix(byte[] json, int position, String currency) {
+    if (currency != null) {
+      System.arraycopy(CURRENCY, 0, json, position, CURRENCY.length);
+      position = escape(currency, json, position + CURRENCY.length);
+      json[position++] = '"';
+    }
+    json[position] = '}';
+  }
+
+  private static int digits(long value) {
+    int digits = 1;
+    while (value >= 10) {
+      value /= 10;
+      digits++;
+    }
+    return digits;
+  }
+
+  /**
+   * UTF-8 length of the string with JSON escapes. Like Jackson, control characters and surrogates
+   * are written as {@code \\uXXXX}.
+   */
+  private static int escapedLength(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\' || c == '\b' || c == '\t' || c == '\n' || c == '\f' || c == '\r') {
+        length += 2;
+      } else if (c < 0x20 || Character.isSurrogate(c)) {
+        length += 6;
+      } else if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  private static int escape(String value, byte[] json, int position) {
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+          json[position++] = '\\';
+          json[position++] = (byte) c;
+          continue;
+        case '\b':
+          json[position++] = '\\';
+          json[position++] = 'b';
+          continue;
+        case '\t':
+          json[position++] = '\\';
+          json[position++] = 't';
+          continue;
+        case '\n':
+          json[position++] = '\\';
+          json[position++] = 'n';
+          continue;
+        case '\f':
+          json[position++] = '\\';
+          json[position++] = 'f';
+          continue;
+        case '\r':
+          json[position++] = '\\';
+          json[position++] = 'r';
+          continue;
+        default:
+      }
+      if (c < 0x20 || Character.isSurrogate(c)) {
+        json[position++] = '\\';
+        json[position++] = 'u';
+        json[position++] = HEX[c >> 12];
+        json[position++] = HEX[(c >> 8) & 0xF];
+        json[position++] = HEX[(c >> 4) & 0xF];
+        json[position++] = HEX[c & 0xF];
+      } else if (c < 0x80) {
+        json[position++] = (byte) c;
+      } else if (c < 0x800) {
+        json[position++] = (byte) (0xC0 | (c >> 6));
+        json[position++] = (byte) (0x80 | (c & 0x3F));
+      } else {
+        json[position++] = (byte) (0xE0 | (c >> 12));
+        json[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        json[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    return position;
+  }
+}
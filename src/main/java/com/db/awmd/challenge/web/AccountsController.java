@@ -1,25 +1,41 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.service.EmailNotificationService;
+import com.db.awmd.challenge.service.account.AccountImportReport;
+import com.db.awmd.challenge.service.account.AccountImporter;
 import com.db.awmd.challenge.service.account.AccountsService;
+import com.db.awmd.challenge.service.account.BalanceAudit;
+import com.db.awmd.challenge.service.account.TransferHistory;
+import com.db.awmd.challenge.service.account.TransferResult;
 import com.db.awmd.challenge.web.dto.AccountTransferBalanceRequest;
+import com.db.awmd.challenge.web.dto.AccountTransferBatchRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/v1/accounts")
@@ -30,28 +46,149 @@ public class AccountsController {
 
   private final AccountsService accountsService;
 
+  private final AccountImporter accountImporter;
+
+  private final ObjectMapper objectMapper;
+
+  private final AccountJsonCache accountJsonCache;
+
+  private final int maxBatchLegs;
+
+  private final RequestLogSampler.Sampler createAccountLog;
+  private final RequestLogSampler.Sampler getAccountLog;
+  private final RequestLogSampler.Sampler transferLog;
+  private final RequestLogSampler.Sampler transferBatchLog;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService, AccountImporter accountImporter,
+                            ObjectMapper objectMapper, AccountJsonCache accountJsonCache, RequestLogSampler logSampler,
+                            @Value("${accounts.transfer.max-batch-legs:1000}") int maxBatchLegs) {
     this.accountsService = accountsService;
+    this.accountImporter = accountImporter;
+    this.objectMapper = objectMapper;
+    this.accountJsonCache = accountJsonCache;
+    this.maxBatchLegs = maxBatchLegs;
+    this.createAccountLog = logSampler.forEndpoint("create-account", log);
+    this.getAccountLog = logSampler.forEndpoint("get-account", log);
+    this.transferLog = logSampler.forEndpoint("transfer", log);
+    this.transferBatchLog = logSampler.forEndpoint("transfer-batch", log);
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
-    log.info("Creating account {}", account);
+    if (createAccountLog.sample()) {
+      log.info("Creating account accountId={} balance={}", account.getAccountId(), account.getBalance());
+    }
 
     try {
       this.accountsService.createAccount(account);
     } catch (DuplicateAccountIdException daie) {
-      return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+      return PreEncodedResponses.error(HttpStatus.BAD_REQUEST, daie.getMessage());
+    } catch (ArithmeticException ae) {
+      return PreEncodedResponses.BALANCE_SCALE;
+    } catch (IllegalArgumentException iae) {
+      return PreEncodedResponses.error(HttpStatus.BAD_REQUEST, iae.getMessage());
     }
 
-    return new ResponseEntity<>(HttpStatus.CREATED);
+    return PreEncodedResponses.CREATED;
+  }
+
+  /**
+   * Bulk creation from newline-delimited account objects or a JSON array of them. The body is
+   * streamed rather than bound, so uploads of any size are fine.
+   */
+  @PostMapping(path = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+  public AccountImportReport importAccounts(HttpServletRequest request) throws IOException {
+    log.info("Importing accounts contentType={}", request.getContentType());
+    return this.accountImporter.importAccounts(request.getInputStream());
   }
 
+  /**
+   * Streams accounts in creation order from position {@code cursor} on, as NDJSON or, when the client
+   * accepts {@code application/octet-stream}, in the binary account layout of snapshots followed by the
+   * currency. The next page starts at {@code cursor} plus the number of accounts received. With
+   * {@code pointInTime} all accounts are listed with their balances as of one point in the commit order
+   * instead.
+   */
+  @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+  public ResponseEntity<?> listAccounts(@RequestParam(defaultValue = "0") long cursor,
+                                        @RequestParam(defaultValue = "2147483647") int limit,
+                                        @RequestParam(defaultValue = "false") boolean pointInTime,
+                                        @RequestHeader(value = "Accept", defaultValue = "") String accept,
+                                        HttpServletResponse response) throws IOException {
+    if (cursor < 0 || limit < 0) {
+      return new ResponseEntity<>("Cursor and limit must not be negative.", HttpStatus.BAD_REQUEST);
+    }
+    if (pointInTime && (cursor > 0 || limit != Integer.MAX_VALUE)) {
+      return new ResponseEntity<>("Point-in-time listings are not paginated.", HttpStatus.BAD_REQUEST);
+    }
+    final long start = System.nanoTime();
+    final AccountExport export = accept.contains(MediaType.APPLICATION_OCTET_STREAM_VALUE)
+            ? AccountExport.binary(response)
+            : AccountExport.ndjson(response, objectMapper.getFactory());
+    try {
+      if (pointInTime) {
+        this.accountsService.listAccountsPointInTime(export);
+      } else {
+        this.accountsService.listAccounts(cursor, limit, export);
+      }
+    } catch (UnsupportedOperationException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+    final long count = export.finish();
+    log.info("Listed accounts cursor={} count={} pointInTime={} in {} ms", cursor, count, pointInTime,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return null;
+  }
+
+  /**
+   * Total and per-shard checksums of all balances at one sequence point, taken without pausing
+   * transfers. With {@code verify} the balances are read back in parallel and compared per shard.
+   */
+  @GetMapping(path = "/balances:audit")
+  public BalanceAudit auditBalances(@RequestParam(defaultValue = "false") boolean verify) {
+    final long start = System.nanoTime();
+    final BalanceAudit audit = this.accountsService.audit(verify);
+    log.info("Audited balances sequence={} total={} conserved={} verify={} in {} ms", audit.getSequence(),
+            audit.getTotal(), audit.isConserved(), verify, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return audit;
+  }
+
+  /**
+   * Serves cached JSON while the balance is unchanged, and 304 if the client already has it.
+   */
   @GetMapping(path = "/{accountId}")
-  public Account getAccount(@PathVariable String accountId) {
-    log.info("Retrieving account for id {}", accountId);
-    return this.accountsService.getAccount(accountId);
+  public ResponseEntity<byte[]> getAccount(@PathVariable String accountId,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                           String ifNoneMatch) {
+    if (getAccountLog.sample()) {
+      log.info("Retrieving account accountId={}", accountId);
+    }
+    final Account account = this.accountsService.getAccount(accountId);
+    if (account == null) {
+      return PreEncodedResponses.NO_ACCOUNT;
+    }
+    final AccountJsonCache.Entry json = accountJsonCache.get(account);
+    if (json.getEtag().equals(ifNoneMatch)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(json.getEtag()).build();
+    }
+    return ResponseEntity.ok().eTag(json.getEtag()).contentType(MediaType.APPLICATION_JSON).body(json.getJson());
+  }
+
+  /**
+   * Recent movements of the account with an account sequence above {@code since}, oldest first.
+   */
+  @GetMapping(path = "/{accountId}/transfers")
+  public ResponseEntity<?> getTransfers(@PathVariable String accountId,
+                                        @RequestParam(defaultValue = "0") long since) {
+    if (getAccountLog.sample()) {
+      log.info("Retrieving transfers accountId={} since={}", accountId, since);
+    }
+    try {
+      return new ResponseEntity<>(this.accountsService.getTransfers(accountId, since), HttpStatus.OK);
+    } catch (AccountNotFoundException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
+    }
   }
 
   @Data
@@ -63,25 +200,55 @@ public class AccountsController {
     private BigDecimal amount;
   }
 
+  /**
+   * Outcomes and the fixed validation failures are answered with {@link PreEncodedResponses}, a
+   * rejected transfer costs neither an exception nor a message.
+   */
   @PostMapping(value = "/{accountId}/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<?> transferBalance(@PathVariable String accountId,
                                            @RequestBody @Valid AccountTransferBalanceRequest request) {
 
-    log.info("Transferring funds {} from account #{} to account #{}", request.getAmount(), accountId, request.getReceiverId());
-    Exception error = null;
-    HttpStatus status = HttpStatus.OK;
+    if (transferLog.sample()) {
+      log.info("Transferring funds amount={} senderId={} receiverId={}",
+              request.getAmount(), accountId, request.getReceiverId());
+    }
+    if (request.getAmount().signum() <= 0) {
+      return PreEncodedResponses.NON_POSITIVE_AMOUNT;
+    }
+    final String idempotencyKey = request.getIdempotencyKey();
+    final TransferResult result;
     try {
-      this.accountsService.transfer(accountId, request.getReceiverId(), request.getAmount());
-    } catch (AccountNotFoundException ex) {
-      error = ex;
-      status = HttpStatus.NOT_FOUND;
+      result = idempotencyKey == null
+              ? this.accountsService.tryTransfer(accountId, request.getReceiverId(), request.getAmount())
+              : this.accountsService.tryTransfer(accountId, request.getReceiverId(), request.getAmount(),
+              idempotencyKey);
     } catch (Exception ex) {
-      error = ex;
-      status = HttpStatus.BAD_REQUEST;
+      return PreEncodedResponses.error(HttpStatus.BAD_REQUEST, ex.getMessage());
     }
+    return PreEncodedResponses.transfer(result);
+  }
+
+  @PostMapping(value = "/transfers:batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> transferBalanceBatch(@RequestBody @Valid AccountTransferBatchRequest request) {
 
-    return error == null
-            ? new ResponseEntity<>(status)
-            : new ResponseEntity<>(error.getMessage(), status);
+    if (transferBatchLog.sample()) {
+      log.info("Transferring batch legs={}", request.getLegs().size());
+    }
+    if (request.getLegs().size() > maxBatchLegs) {
+      return PreEncodedResponses.error(HttpStatus.BAD_REQUEST,
+              "Transfer batch should contain at most " + maxBatchLegs + " legs.");
+    }
+    final List<TransferLeg> legs = new ArrayList<>(request.getLegs().size());
+    for (AccountTransferBatchRequest.Leg leg : request.getLegs()) {
+      legs.add(new TransferLeg(leg.getSenderId(), leg.getReceiverId(), leg.getAmount()));
+    }
+
+    final TransferResult result;
+    try {
+      result = this.accountsService.tryTransferBatch(legs);
+    } catch (Exception ex) {
+      return PreEncodedResponses.error(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+    return PreEncodedResponses.transfer(result);
   }
 }
@@ -0,0 +1,71 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.service.account.TransferResult;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Responses of the account endpoints whose status and body never change, built once. A
+ * {@link ResponseEntity} has read-only headers and these bodies are never modified, so they are
+ * shared by all requests instead of being created and encoded per request.
+ */
+final class PreEncodedResponses {
+
+  static final MediaType TEXT_PLAIN_UTF8 = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
+  static final ResponseEntity<Object> OK = new ResponseEntity<>(HttpStatus.OK);
+
+  static final ResponseEntity<Object> CREATED = new ResponseEntity<>(HttpStatus.CREATED);
+
+  static final ResponseEntity<byte[]> NO_ACCOUNT = ResponseEntity.ok().build();
+
+  static final ResponseEntity<Object> NON_POSITIVE_AMOUNT =
+          error(HttpStatus.BAD_REQUEST, "Transfer amount should be a positive value.");
+
+  static final ResponseEntity<Object> BALANCE_SCALE =
+          error(HttpStatus.BAD_REQUEST, "Balance does not fit the scale of the account's currency.");
+
+  static final ResponseEntity<Object> AMOUNT_SCALE =
+          error(HttpStatus.BAD_REQUEST, "Transfer amount does not fit the scale of the sender's currency.");
+
+  private static final Map<TransferResult, ResponseEntity<Object>> TRANSFER_RESULTS =
+          new EnumMap<>(TransferResult.class);
+
+  static {
+    TRANSFER_RESULTS.put(TransferResult.COMMITTED, OK);
+    TRANSFER_RESULTS.put(TransferResult.SENDER_NOT_FOUND,
+            error(HttpStatus.NOT_FOUND, "Sender account is not found."));
+    TRANSFER_RESULTS.put(TransferResult.RECEIVER_NOT_FOUND,
+            error(HttpStatus.NOT_FOUND, "Receiver account is not found."));
+    TRANSFER_RESULTS.put(TransferResult.ACCOUNT_NOT_FOUND,
+            error(HttpStatus.NOT_FOUND, "An account of the batch is not found."));
+    TRANSFER_RESULTS.put(TransferResult.INSUFFICIENT_BALANCE,
+            error(HttpStatus.BAD_REQUEST, "Sender account has not enough balance."));
+    TRANSFER_RESULTS.put(TransferResult.NO_EXCHANGE_RATE,
+            error(HttpStatus.BAD_REQUEST, "No exchange rate between the account currencies."));
+    TRANSFER_RESULTS.put(TransferResult.AMOUNT_SCALE, AMOUNT_SCALE);
+    TRANSFER_RESULTS.put(TransferResult.IDEMPOTENCY_KEYS_EXHAUSTED,
+            error(HttpStatus.SERVICE_UNAVAILABLE, "Too many recent idempotency keys, retry the transfer later."));
+  }
+
+  private PreEncodedResponses() {
+  }
+
+  static ResponseEntity<Object> transfer(TransferResult result) {
+    return TRANSFER_RESULTS.get(result);
+  }
+
+  /**
+   * Plain text error, encoded here so that the message converters only copy the bytes. Exceptions
+   * without a message are answered with the reason phrase of the status.
+   */
+  static ResponseEntity<Object> error(HttpStatus status, String message) {
+    return ResponseEntity.status(status).contentType(TEXT_PLAIN_UTF8)
+            .body((message != null ? message : status.getReasonPhrase()).getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,69 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.config.RequestLoggingProperties;
+import org.slf4j.Logger;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which requests of an endpoint are logged. Controllers resolve one {@link Sampler} per
+ * endpoint up front, so the per-request decision is a counter update.
+ */
+@Component
+public class RequestLogSampler {
+
+  private final RequestLoggingProperties properties;
+
+  public RequestLogSampler(RequestLoggingProperties properties) {
+    this.properties = properties;
+  }
+
+  public Sampler forEndpoint(String endpoint, Logger log) {
+    final RequestLoggingProperties.Sampling sampling = properties.getEndpoints()
+            .getOrDefault(endpoint, new RequestLoggingProperties.Sampling());
+    return new Sampler(log, Math.max(1, sampling.getSampleEvery()), sampling.getMaxPerSecond());
+  }
+
+  public static final class Sampler {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Logger log;
+    private final long sampleEvery;
+    private final long maxPerSecond;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong logged = new AtomicLong();
+    private volatile long window;
+
+    private Sampler(Logger log, long sampleEvery, long maxPerSecond) {
+      this.log = log;
+      this.sampleEvery = sampleEvery;
+      this.maxPerSecond = maxPerSecond;
+    }
+
+    /**
+     * Whether the current request should be logged at INFO. The per-second limit is approximate,
+     * a window switch racing with other requests may let a few more through.
+     */
+    public boolean sample() {
+      if (!log.isInfoEnabled()) {
+        return false;
+      }
+      if (sampleEvery > 1 && requests.getAndIncrement() % sampleEvery != 0) {
+        return false;
+      }
+      if (maxPerSecond <= 0) {
+        return true;
+      }
+      final long current = System.nanoTime() / SECOND_NANOS;
+      if (current != window) {
+        window = current;
+        logged.set(0);
+      }
+      return logged.incrementAndGet() <= maxPerSecond;
+    }
+  }
+}
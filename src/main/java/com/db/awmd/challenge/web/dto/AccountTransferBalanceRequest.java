@@ -4,6 +4,7 @@ import lombok.Data;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 import java.math.BigDecimal;
 
 @Data
@@ -24,9 +25,22 @@ public class AccountTransferBalanceRequest {
     this.amount = amount;
   }
 
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  public void setIdempotencyKey(String idempotencyKey) {
+    this.idempotencyKey = idempotencyKey;
+  }
+
   @NotNull
   private String receiverId;
   @NotNull
   @Min(value = 0, message = "Transfer amount must be positive.")
   private BigDecimal amount;
+  /**
+   * Optional, retries carrying the same key return the first outcome instead of transferring again.
+   */
+  @Size(max = 128)
+  private String idempotencyKey;
 }
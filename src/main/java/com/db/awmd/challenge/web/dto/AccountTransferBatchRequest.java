@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.web.dto;
+
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+public class AccountTransferBatchRequest {
+  public List<Leg> getLegs() {
+    return legs;
+  }
+
+  public void setLegs(List<Leg> legs) {
+    this.legs = legs;
+  }
+
+  @NotEmpty
+  @Valid
+  private List<Leg> legs;
+
+  @Data
+  public static class Leg {
+    public String getSenderId() {
+      return senderId;
+    }
+
+    public void setSenderId(String senderId) {
+      this.senderId = senderId;
+    }
+
+    public String getReceiverId() {
+      return receiverId;
+    }
+
+    public void setReceiverId(String receiverId) {
+      this.receiverId = receiverId;
+    }
+
+    public BigDecimal getAmount() {
+      return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+      this.amount = amount;
+    }
+
+    @NotNull
+    private String senderId;
+    @NotNull
+    private String receiverId;
+    @NotNull
+    @Min(value = 0, message = "Transfer amount must be positive.")
+    private BigDecimal amount;
+  }
+}
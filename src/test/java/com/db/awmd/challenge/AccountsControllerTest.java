@@ -2,24 +2,38 @@ package com.db.awmd.challenge;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.service.account.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.UUID;
 
 import static com.db.awmd.challenge.AccountsServiceTest.generateAccountId;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -30,12 +44,15 @@ public class AccountsControllerTest {
 
   private MockMvc mockMvc;
 
-  @Autowired
+  @SpyBean
   private AccountsService accountsService;
 
   @Autowired
   private WebApplicationContext webApplicationContext;
 
+  @Autowired
+  private ObjectMapper objectMapper;
+
   @Before
   public void prepareMockMvc() {
     this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
@@ -104,6 +121,41 @@ public class AccountsControllerTest {
                     content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
   }
 
+  @Test
+  public void getAccountWritesJsonLikeJackson() throws Exception {
+    Account account = new Account("Id-\"\\\t\u00e4\u20ac\ud83d\ude00", new BigDecimal("0.05"));
+    this.accountsService.createAccount(account);
+    this.mockMvc.perform(get("/v1/accounts/{accountId}", account.getAccountId()))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(objectMapper.writeValueAsBytes(account)));
+
+    Account dollars = new Account(generateAccountId(), new BigDecimal("12.50"), "USD");
+    this.accountsService.createAccount(dollars);
+    this.mockMvc.perform(get("/v1/accounts/{accountId}", dollars.getAccountId()))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(objectMapper.writeValueAsBytes(dollars)))
+            .andExpect(jsonPath("$.currency").value("USD"));
+  }
+
+  @Test
+  public void getAccountRevalidatesByBalance() throws Exception {
+    Account sender = new Account(generateAccountId(), new BigDecimal("10.00"));
+    this.accountsService.createAccount(sender);
+    Account receiver = new Account(generateAccountId());
+    this.accountsService.createAccount(receiver);
+
+    final String etag = this.mockMvc.perform(get("/v1/accounts/" + sender.getAccountId()))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader("ETag");
+    this.mockMvc.perform(get("/v1/accounts/" + sender.getAccountId()).header("If-None-Match", etag))
+            .andExpect(status().isNotModified());
+
+    this.accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), BigDecimal.ONE);
+    this.mockMvc.perform(get("/v1/accounts/" + sender.getAccountId()).header("If-None-Match", etag))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.balance").value(9));
+  }
+
   @Test
   public void transfer() throws Exception {
     Account sender = new Account(generateAccountId(), BigDecimal.TEN);
@@ -118,6 +170,32 @@ public class AccountsControllerTest {
             .andExpect(status().isOk());
   }
 
+  @Test
+  public void transferIdempotent() throws Exception {
+    Account sender = new Account(generateAccountId(), BigDecimal.TEN);
+    accountsService.createAccount(sender);
+    Account receiver = new Account(generateAccountId());
+    accountsService.createAccount(receiver);
+
+    final String idempotencyKey = UUID.randomUUID().toString();
+    final String request = "{\"receiverId\":\"" + receiver.getAccountId() + "\", \"amount\":6, "
+            + "\"idempotencyKey\":\"" + idempotencyKey + "\"}";
+    for (int attempt = 0; attempt < 3; attempt++) {
+      mockMvc.perform(post("/v1/accounts/" + sender.getAccountId() + "/transfer")
+                      .contentType(MediaType.APPLICATION_JSON)
+                      .content(request))
+              .andExpect(status().isOk());
+    }
+    assertThat(accountsService.getAccount(sender.getAccountId()).getBalance()).isEqualByComparingTo("4");
+    assertThat(accountsService.getAccount(receiver.getAccountId()).getBalance()).isEqualByComparingTo("6");
+
+    mockMvc.perform(post("/v1/accounts/" + sender.getAccountId() + "/transfer")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"receiverId\":\"" + receiver.getAccountId() + "\", \"amount\":1, "
+                            + "\"idempotencyKey\":\"" + idempotencyKey + "\"}"))
+            .andExpect(status().isBadRequest());
+  }
+
   @Test
   public void transferNotEnoughBalance() throws Exception {
     Account sender = new Account(generateAccountId(), BigDecimal.ONE);
@@ -169,4 +247,177 @@ public class AccountsControllerTest {
                     .content("{\"receiverId\":\"" + receiver.getAccountId() + "\", \"amount\":" + amount + "}"))
             .andExpect(status().isNotFound());
   }
+
+  @Test
+  public void transferBatch() throws Exception {
+    Account sender = new Account(generateAccountId(), BigDecimal.TEN);
+    accountsService.createAccount(sender);
+    Account receiver = new Account(generateAccountId());
+    accountsService.createAccount(receiver);
+
+    mockMvc.perform(post("/v1/accounts/transfers:batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"legs\":["
+                            + "{\"senderId\":\"" + sender.getAccountId() + "\",\"receiverId\":\"" + receiver.getAccountId() + "\",\"amount\":3},"
+                            + "{\"senderId\":\"" + sender.getAccountId() + "\",\"receiverId\":\"" + receiver.getAccountId() + "\",\"amount\":4}]}"))
+            .andExpect(status().isOk());
+
+    assertThat(accountsService.getAccount(receiver.getAccountId()).getBalance()).isEqualByComparingTo("7");
+  }
+
+  @Test
+  public void transferBatchTooManyLegs() throws Exception {
+    Account sender = new Account(generateAccountId(), new BigDecimal(5000));
+    accountsService.createAccount(sender);
+    Account receiver = new Account(generateAccountId());
+    accountsService.createAccount(receiver);
+
+    final String leg = "{\"senderId\":\"" + sender.getAccountId() + "\",\"receiverId\":\""
+            + receiver.getAccountId() + "\",\"amount\":1}";
+    mockMvc.perform(post("/v1/accounts/transfers:batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"legs\":[" + String.join(",", Collections.nCopies(1001, leg)) + "]}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("Transfer batch should contain at most 1000 legs."));
+
+    assertThat(accountsService.getAccount(sender.getAccountId()).getBalance()).isEqualByComparingTo("5000");
+  }
+
+  @Test
+  public void transferBatchReceiverNotFound() throws Exception {
+    Account sender = new Account(generateAccountId(), BigDecimal.TEN);
+    accountsService.createAccount(sender);
+
+    mockMvc.perform(post("/v1/accounts/transfers:batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"legs\":[{\"senderId\":\"" + sender.getAccountId() + "\",\"receiverId\":\"" + generateAccountId() + "\",\"amount\":1}]}"))
+            .andExpect(status().isNotFound());
+
+    assertThat(accountsService.getAccount(sender.getAccountId()).getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void transferFailureWithoutMessage() throws Exception {
+    doThrow(new IllegalStateException()).when(accountsService)
+            .tryTransfer(anyString(), anyString(), any(BigDecimal.class));
+    doThrow(new IllegalStateException()).when(accountsService).tryTransferBatch(anyList());
+
+    mockMvc.perform(post("/v1/accounts/" + generateAccountId() + "/transfer")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"receiverId\":\"" + generateAccountId() + "\", \"amount\":1}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("Bad Request"));
+    mockMvc.perform(post("/v1/accounts/transfers:batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"legs\":[{\"senderId\":\"" + generateAccountId() + "\",\"receiverId\":\""
+                            + generateAccountId() + "\",\"amount\":1}]}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("Bad Request"));
+  }
+
+  @Test
+  public void importAccountsNdjson() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/import").contentType(MediaType.APPLICATION_NDJSON)
+            .content("{\"accountId\":\"Id-1\",\"balance\":100}\n"
+                    + "{\"accountId\":\"Id-2\",\"balance\":-1}\n"
+                    + "{\"accountId\":\"Id-1\",\"balance\":5}\n"
+                    + "{\"balance\":5}\n"
+                    + "{\"accountId\":\"Id-3\",\"balance\":\"7.5\",\"note\":{\"x\":1}}\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.created").value(2))
+            .andExpect(jsonPath("$.rejected").value(3))
+            .andExpect(jsonPath("$.errors[0].line").value(2))
+            .andExpect(jsonPath("$.errors[0].message").value("balance: Initial balance must be positive."))
+            .andExpect(jsonPath("$.errors[1].line").value(4))
+            .andExpect(jsonPath("$.errors[2].line").value(3))
+            .andExpect(jsonPath("$.errors[2].accountId").value("Id-1"));
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+    assertThat(accountsService.getAccount("Id-3").getBalance()).isEqualByComparingTo("7.5");
+    assertThat(accountsService.getAccount("Id-2")).isNull();
+  }
+
+  @Test
+  public void importAccountsArrayStopsAtMalformedJson() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/import").contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"accountId\":\"Id-1\",\"balance\":1},\n{\"accountId\":\"Id-2\",\"balance\":2},\n{\"accountId\":"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.created").value(2))
+            .andExpect(jsonPath("$.rejected").value(1))
+            .andExpect(jsonPath("$.errors[0].line").value(3));
+
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("2");
+  }
+
+  @Test
+  public void listAccountsNdjson() throws Exception {
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("1")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("2.50")));
+    accountsService.createAccount(new Account("Id-3", new BigDecimal("3")));
+
+    this.mockMvc.perform(get("/v1/accounts?cursor=1&limit=1").accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+            .andExpect(content().string("{\"accountId\":\"Id-2\",\"balance\":2.50}\n"));
+  }
+
+  @Test
+  public void listAccountsKeepsCurrency() throws Exception {
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("1.5")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("1500"), "JPY"));
+
+    this.mockMvc.perform(get("/v1/accounts").accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(status().isOk())
+            .andExpect(content().string("{\"accountId\":\"Id-1\",\"balance\":1.5}\n"
+                    + "{\"accountId\":\"Id-2\",\"balance\":1500,\"currency\":\"JPY\"}\n"));
+
+    final byte[] binary = this.mockMvc.perform(get("/v1/accounts").accept(MediaType.APPLICATION_OCTET_STREAM))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsByteArray();
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(binary));
+    assertThat(readAccount(in)).isEqualTo("Id-1 1.5 ");
+    assertThat(readAccount(in)).isEqualTo("Id-2 1500 JPY");
+    assertThat(in.read()).isEqualTo(-1);
+  }
+
+  @Test
+  public void listAccountsPointInTimeNeedsJournal() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts?pointInTime=true").accept(MediaType.APPLICATION_NDJSON))
+            .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void getTransfers() throws Exception {
+    Account sender = new Account(generateAccountId(), BigDecimal.TEN);
+    accountsService.createAccount(sender);
+    Account receiver = new Account(generateAccountId());
+    accountsService.createAccount(receiver);
+    accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), new BigDecimal("3"));
+    accountsService.transfer(receiver.getAccountId(), sender.getAccountId(), new BigDecimal("1"));
+
+    final long first = accountsService.getTransfers(sender.getAccountId(), 0).get(0).getAccountSequence();
+    this.mockMvc.perform(get("/v1/accounts/" + sender.getAccountId() + "/transfers"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$[0].counterpartyId").value(receiver.getAccountId()))
+            .andExpect(jsonPath("$[0].amount").value(-3))
+            .andExpect(jsonPath("$[1].amount").value(1));
+    this.mockMvc.perform(get("/v1/accounts/" + sender.getAccountId() + "/transfers?since=" + first))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1));
+    this.mockMvc.perform(get("/v1/accounts/" + generateAccountId() + "/transfers"))
+            .andExpect(status().isNotFound());
+  }
+
+  private static String readAccount(DataInputStream in) throws IOException {
+    final byte[] id = new byte[in.readShort()];
+    in.readFully(id);
+    final int scale = in.readInt();
+    final byte[] unscaled = new byte[in.readShort()];
+    in.readFully(unscaled);
+    final byte[] currency = new byte[in.readShort()];
+    in.readFully(currency);
+    return new String(id, StandardCharsets.UTF_8) + " " + new BigDecimal(new BigInteger(unscaled), scale)
+            + " " + new String(currency, StandardCharsets.UTF_8);
+  }
 }
@@ -0,0 +1,102 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepositoryColumnar;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import com.db.awmd.challenge.service.account.engine.CasTransferEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AccountsRepositoryColumnarTest {
+
+  private final AccountsRepositoryColumnar repository = new AccountsRepositoryColumnar(fixedScale());
+
+  @Test
+  public void createAndLookUpAcrossPagesAndResizes() {
+    final int accounts = 200_000;
+    for (int i = 0; i < accounts; i++) {
+      repository.createAccount(new Account("Id-" + i, BigDecimal.valueOf(i, 2)));
+    }
+
+    assertEquals(accounts, repository.size());
+    for (int i = 0; i < accounts; i += 997) {
+      assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(BigDecimal.valueOf(i, 2));
+    }
+    assertNull(repository.getAccount("Id-" + accounts));
+  }
+
+  @Test
+  public void storesNonLatinIds() throws Exception {
+    repository.createAccount(new Account("Konto-\u00fc", BigDecimal.ONE));
+    repository.createAccount(new Account("\u8d26\u6237-1", BigDecimal.TEN));
+
+    assertThat(repository.getAccount("Konto-\u00fc").getBalance()).isEqualByComparingTo("1");
+    assertThat(repository.getAccount("\u8d26\u6237-1").getBalance()).isEqualByComparingTo("10");
+    assertNull(repository.getAccount("\u8d26\u6237-2"));
+
+    final Map<String, BigDecimal> listed = new LinkedHashMap<>();
+    assertEquals(2, repository.scan(0, 10, listed::put));
+    assertThat(listed.keySet()).containsExactly("Konto-\u00fc", "\u8d26\u6237-1");
+    assertThat(listed.get("\u8d26\u6237-1")).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void rejectsDuplicateIds() {
+    repository.createAccount(new Account("Id-1", BigDecimal.ONE));
+    try {
+      repository.createAccount(new Account("Id-1", BigDecimal.TEN));
+      fail("Should have failed when adding duplicate account");
+    } catch (DuplicateAccountIdException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account id Id-1 already exists!");
+    }
+  }
+
+  @Test
+  public void createAccountsSkipsDuplicates() {
+    repository.createAccount(new Account("Id-1", BigDecimal.ONE));
+
+    final BitSet duplicates = repository.createAccounts(Arrays.asList(
+            new Account("Id-1", BigDecimal.TEN), new Account("Id-2", BigDecimal.TEN), new Account("Id-2", BigDecimal.ONE)));
+
+    assertEquals(BitSet.valueOf(new long[]{0b101}), duplicates);
+    assertEquals(2, repository.size());
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void transfersUpdateTheBalanceColumn() {
+    repository.createAccount(new Account("Id-1", BigDecimal.TEN));
+    repository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+
+    final CasTransferEngine engine = new CasTransferEngine(1024, new TransferMetrics(new SimpleMeterRegistry()));
+    assertTrue(engine.transfer(repository.getAccount("Id-1"), repository.getAccount("Id-2"), 300L,
+            (senderBalance, receiverBalance, senderSequence, receiverSequence) -> { }));
+
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("7");
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("3");
+
+    repository.clearAccounts();
+    assertNull(repository.getAccount("Id-1"));
+    assertEquals(0, repository.size());
+  }
+
+  private static BalanceProperties fixedScale() {
+    final BalanceProperties properties = new BalanceProperties();
+    properties.setMode(BalanceProperties.Mode.FIXED_SCALE);
+    return properties;
+  }
+}
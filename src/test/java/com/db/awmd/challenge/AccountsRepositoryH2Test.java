@@ -0,0 +1,114 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.AuditProperties;
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.CurrencyProperties;
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.config.IdempotencyProperties;
+import com.db.awmd.challenge.config.RepositoryProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.repository.AccountsRepositoryH2;
+import com.db.awmd.challenge.service.account.AccountsService;
+import com.db.awmd.challenge.service.account.BalanceLedger;
+import com.db.awmd.challenge.service.account.IdempotencyCache;
+import com.db.awmd.challenge.service.account.TransferEventOutbox;
+import com.db.awmd.challenge.service.account.TransferHistory;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import com.db.awmd.challenge.service.account.engine.CasTransferEngine;
+import com.db.awmd.challenge.service.account.fx.FxRateTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AccountsRepositoryH2Test {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void loadsBalancesAfterRestart() throws Exception {
+    final RepositoryProperties repositoryProperties = repositoryProperties();
+    final BalanceProperties balanceProperties = balanceProperties(2);
+
+    AccountsRepositoryH2 repository = new AccountsRepositoryH2(repositoryProperties, balanceProperties);
+    final AccountsService service = service(repository, balanceProperties);
+    service.createAccount(new Account("Id-2", new BigDecimal("100.50")));
+    service.createAccount(new Account("Id-1", new BigDecimal("20")));
+    service.transfer("Id-2", "Id-1", new BigDecimal("10.25"));
+    service.transferBatch(Arrays.asList(
+            new TransferLeg("Id-1", "Id-2", new BigDecimal("5")),
+            new TransferLeg("Id-2", "Id-1", new BigDecimal("1"))));
+    // Concurrent transfers on one hot account are coalesced into shared group commits.
+    CompletableFuture.allOf(IntStream.range(0, 100)
+            .mapToObj(i -> CompletableFuture.runAsync(() -> service.transfer("Id-2", "Id-1", new BigDecimal("0.01"))))
+            .toArray(CompletableFuture[]::new)).join();
+    repository.destroy();
+
+    repository = new AccountsRepositoryH2(repositoryProperties, balanceProperties);
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("93.25");
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("27.25");
+    final Map<String, BigDecimal> listed = new LinkedHashMap<>();
+    repository.scan(0, 10, listed::put);
+    assertThat(listed.keySet()).containsExactly("Id-2", "Id-1");
+
+    repository.clearAccounts();
+    repository.createAccount(new Account("Id-3", new BigDecimal("7")));
+    repository.destroy();
+
+    repository = new AccountsRepositoryH2(repositoryProperties, balanceProperties);
+    assertThat(repository.size()).isEqualTo(1);
+    assertThat(repository.getAccount("Id-3").getBalance()).isEqualByComparingTo("7");
+    repository.destroy();
+  }
+
+  @Test
+  public void refusesBalancesOfAnotherScale() throws Exception {
+    final RepositoryProperties repositoryProperties = repositoryProperties();
+    new AccountsRepositoryH2(repositoryProperties, balanceProperties(2)).destroy();
+
+    assertThatThrownBy(() -> new AccountsRepositoryH2(repositoryProperties, balanceProperties(3)))
+            .isInstanceOf(IllegalStateException.class);
+  }
+
+  private RepositoryProperties repositoryProperties() {
+    final RepositoryProperties properties = new RepositoryProperties();
+    properties.setMode(RepositoryProperties.Mode.H2);
+    properties.getH2().setDirectory(folder.getRoot().getAbsolutePath());
+    properties.getH2().setFsync(false);
+    return properties;
+  }
+
+  private static BalanceProperties balanceProperties(int scale) {
+    final BalanceProperties properties = new BalanceProperties();
+    properties.setMode(BalanceProperties.Mode.FIXED_SCALE);
+    properties.setScale(scale);
+    return properties;
+  }
+
+  private AccountsService service(AccountsRepositoryH2 repository, BalanceProperties balanceProperties)
+          throws IOException {
+    final ApplicationEventPublisher publisher = event -> { };
+    final TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry());
+    return new AccountsService(repository, new TransferEventOutbox(publisher), new CasTransferEngine(1024, metrics),
+            balanceProperties, metrics,
+            new IdempotencyCache(new IdempotencyProperties()),
+            new BalanceLedger(balanceProperties, new AuditProperties()),
+            new TransferHistory(new HistoryProperties()),
+            new FxRateTable(Collections::emptyMap, new CurrencyProperties()));
+  }
+}
@@ -0,0 +1,227 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.AuditProperties;
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.CurrencyProperties;
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.config.IdempotencyProperties;
+import com.db.awmd.challenge.config.RepositoryProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.exception.AccountException;
+import com.db.awmd.challenge.repository.AccountsRepositoryJournaled;
+import com.db.awmd.challenge.service.account.AccountsService;
+import com.db.awmd.challenge.service.account.BalanceLedger;
+import com.db.awmd.challenge.service.account.IdempotencyCache;
+import com.db.awmd.challenge.service.account.TransferEventOutbox;
+import com.db.awmd.challenge.service.account.TransferHistory;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import com.db.awmd.challenge.service.account.engine.CasTransferEngine;
+import com.db.awmd.challenge.service.account.fx.FxRateTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AccountsRepositoryJournaledTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void replaysTransfersAfterRestart() throws Exception {
+    final RepositoryProperties repositoryProperties = repositoryProperties();
+    final BalanceProperties balanceProperties = new BalanceProperties();
+
+    AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(repositoryProperties, balanceProperties);
+    final AccountsService service = service(repository, balanceProperties);
+    service.createAccount(new Account("Id-1", new BigDecimal("100.50")));
+    service.createAccount(new Account("Id-2", new BigDecimal("20")));
+    service.transfer("Id-1", "Id-2", new BigDecimal("10.25"));
+    service.transferBatch(Arrays.asList(
+            new TransferLeg("Id-2", "Id-1", new BigDecimal("5")),
+            new TransferLeg("Id-1", "Id-2", new BigDecimal("1"))));
+    repository.destroy();
+
+    repository = new AccountsRepositoryJournaled(repositoryProperties, balanceProperties);
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("94.25");
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("26.25");
+    repository.destroy();
+  }
+
+  @Test
+  public void ignoresTornTail() throws Exception {
+    final RepositoryProperties repositoryProperties = repositoryProperties();
+    final BalanceProperties balanceProperties = new BalanceProperties();
+
+    AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(repositoryProperties, balanceProperties);
+    repository.createAccount(new Account("Id-1", new BigDecimal("100")));
+    repository.destroy();
+
+    final Path journal = folder.getRoot().toPath().resolve("accounts-0.journal");
+    try (RandomAccessFile file = new RandomAccessFile(journal.toFile(), "rw")) {
+      file.seek(file.length());
+      file.writeInt(64);
+      file.write(new byte[10]);
+    }
+
+    repository = new AccountsRepositoryJournaled(repositoryProperties, balanceProperties);
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+    repository.createAccount(new Account("Id-2", new BigDecimal("5")));
+    repository.destroy();
+
+    repository = new AccountsRepositoryJournaled(repositoryProperties, balanceProperties);
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("5");
+    repository.destroy();
+  }
+
+  @Test
+  public void recoversFromSnapshotAndJournalTail() throws Exception {
+    final RepositoryProperties repositoryProperties = repositoryProperties();
+    final BalanceProperties balanceProperties = new BalanceProperties();
+
+    AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(repositoryProperties, balanceProperties);
+    final AccountsService service = service(repository, balanceProperties);
+    service.createAccount(new Account("Id-1", new BigDecimal("100")));
+    service.createAccount(new Account("Id-2", new BigDecimal("0")));
+    service.transfer("Id-1", "Id-2", new BigDecimal("30"));
+    assertThat(repository.snapshot()).isTrue();
+    service.transfer("Id-1", "Id-2", new BigDecimal("20"));
+    assertThat(repository.snapshot()).isTrue();
+    assertThat(repository.snapshot()).isFalse();
+    service.createAccount(new Account("Id-3", new BigDecimal("7")));
+    service.transfer("Id-2", "Id-3", new BigDecimal("5"));
+    repository.destroy();
+
+    final Path directory = folder.getRoot().toPath();
+    assertThat(directory.resolve("accounts.snapshot")).exists();
+    assertThat(directory.resolve("accounts-0.journal")).doesNotExist();
+    assertThat(directory.resolve("accounts-1.journal")).doesNotExist();
+
+    repository = new AccountsRepositoryJournaled(repositoryProperties, balanceProperties);
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("50");
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("45");
+    assertThat(repository.getAccount("Id-3").getBalance()).isEqualByComparingTo("12");
+    repository.destroy();
+  }
+
+  @Test
+  public void listsPointInTimeAndInCreationOrder() throws Exception {
+    final BalanceProperties balanceProperties = new BalanceProperties();
+    final AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(repositoryProperties(),
+            balanceProperties);
+    final AccountsService service = service(repository, balanceProperties);
+    service.createAccount(new Account("Id-2", new BigDecimal("100")));
+    service.createAccount(new Account("Id-1", new BigDecimal("0")));
+    service.createAccount(new Account("Id-3", new BigDecimal("0")));
+    service.transfer("Id-2", "Id-1", new BigDecimal("30"));
+
+    final Map<String, BigDecimal> pointInTime = new TreeMap<>();
+    repository.scanPointInTime(pointInTime::put);
+    assertThat(pointInTime).containsOnlyKeys("Id-1", "Id-2", "Id-3");
+    assertThat(pointInTime.get("Id-1")).isEqualByComparingTo("30");
+    assertThat(pointInTime.get("Id-2")).isEqualByComparingTo("70");
+
+    final Map<String, BigDecimal> page = new LinkedHashMap<>();
+    assertThat(repository.scan(1, 5, page::put)).isEqualTo(3);
+    assertThat(page.keySet()).containsExactly("Id-1", "Id-3");
+    assertThat(repository.scan(3, 5, page::put)).isEqualTo(3);
+    repository.destroy();
+  }
+
+  @Test
+  public void listsPointInTimeFromSnapshotAndJournalTail() throws Exception {
+    final BalanceProperties balanceProperties = new BalanceProperties();
+    final AccountsRepositoryJournaled repository = new AccountsRepositoryJournaled(repositoryProperties(),
+            balanceProperties);
+    final AccountsService service = service(repository, balanceProperties);
+    service.createAccount(new Account("Id-1", new BigDecimal("100")));
+    service.createAccount(new Account("Id-2", new BigDecimal("0")));
+    service.transfer("Id-1", "Id-2", new BigDecimal("30"));
+    assertThat(repository.snapshot()).isTrue();
+    final Path snapshot = folder.getRoot().toPath().resolve("accounts.snapshot");
+    final byte[] written = Files.readAllBytes(snapshot);
+
+    service.transfer("Id-1", "Id-2", new BigDecimal("20"));
+    service.createAccount(new Account("Id-3", new BigDecimal("7")));
+    service.transfer("Id-2", "Id-3", new BigDecimal("5"));
+    final Map<String, BigDecimal> pointInTime = new TreeMap<>();
+    repository.scanPointInTime(pointInTime::put);
+    assertThat(pointInTime).containsOnlyKeys("Id-1", "Id-2", "Id-3");
+    assertThat(pointInTime.get("Id-1")).isEqualByComparingTo("50");
+    assertThat(pointInTime.get("Id-2")).isEqualByComparingTo("45");
+    assertThat(pointInTime.get("Id-3")).isEqualByComparingTo("12");
+    assertThat(Files.readAllBytes(snapshot)).isEqualTo(written);
+
+    service.clearAccounts();
+    service.createAccount(new Account("Id-4", BigDecimal.ONE));
+    pointInTime.clear();
+    repository.scanPointInTime(pointInTime::put);
+    assertThat(pointInTime).containsOnlyKeys("Id-4");
+    repository.destroy();
+  }
+
+  @Test
+  public void rejectsTransfersOnceJournalIsClosed() throws Exception {
+    final BalanceProperties balanceProperties = new BalanceProperties();
+    final AccountsRepositoryJournaled repository =
+            new AccountsRepositoryJournaled(repositoryProperties(), balanceProperties);
+    final AccountsService service = service(repository, balanceProperties);
+    service.createAccount(new Account("Id-1", new BigDecimal("100")));
+    service.createAccount(new Account("Id-2", new BigDecimal("20")));
+    repository.destroy();
+
+    try {
+      service.transfer("Id-1", "Id-2", BigDecimal.TEN);
+      fail("Should have failed on a closed journal");
+    } catch (AccountException ignored) {
+    }
+    try {
+      service.transferBatch(Collections.singletonList(new TransferLeg("Id-2", "Id-1", BigDecimal.ONE)));
+      fail("Should have failed on a closed journal");
+    } catch (AccountException ignored) {
+    }
+
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("20");
+    assertThat(service.getTransfers("Id-1", 0)).isEmpty();
+    assertThat(service.audit(true).getShards()).allMatch(shard -> !Boolean.FALSE.equals(shard.getVerified()));
+  }
+
+  private RepositoryProperties repositoryProperties() {
+    final RepositoryProperties properties = new RepositoryProperties();
+    properties.setMode(RepositoryProperties.Mode.JOURNAL);
+    properties.getJournal().setDirectory(folder.getRoot().getAbsolutePath());
+    properties.getJournal().setFsync(false);
+    properties.getSnapshot().setInterval(Duration.ZERO);
+    return properties;
+  }
+
+  private AccountsService service(AccountsRepositoryJournaled repository, BalanceProperties balanceProperties)
+          throws IOException {
+    final ApplicationEventPublisher publisher = event -> { };
+    final TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry());
+    return new AccountsService(repository, new TransferEventOutbox(publisher), new CasTransferEngine(1024, metrics),
+            balanceProperties, metrics,
+            new IdempotencyCache(new IdempotencyProperties()),
+            new BalanceLedger(balanceProperties, new AuditProperties()),
+            new TransferHistory(new HistoryProperties()),
+            new FxRateTable(Collections::emptyMap, new CurrencyProperties()));
+  }
+}
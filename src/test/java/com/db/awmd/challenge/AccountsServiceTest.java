@@ -1,11 +1,21 @@
 package com.db.awmd.challenge;
 
+import com.db.awmd.challenge.config.NotificationProperties;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.NoExchangeRateException;
 import com.db.awmd.challenge.exception.NotEnoughAccountBalanceException;
 import com.db.awmd.challenge.service.NotificationService;
 import com.db.awmd.challenge.service.account.AccountsService;
+import com.db.awmd.challenge.service.account.BalanceAudit;
+import com.db.awmd.challenge.service.account.TransferNotificationDispatcher;
+import com.db.awmd.challenge.service.account.TransferResult;
+import com.db.awmd.challenge.service.account.fx.FxRateSource;
+import com.db.awmd.challenge.service.account.fx.FxRateTable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -15,10 +25,16 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
-import java.util.List;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -29,10 +45,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -40,8 +60,14 @@ public class AccountsServiceTest {
 
   @Autowired
   private AccountsService accountsService;
+  @Autowired
+  private MeterRegistry meterRegistry;
+  @Autowired
+  private FxRateTable fxRateTable;
   @MockBean
   private NotificationService notificationService;
+  @MockBean
+  private FxRateSource fxRateSource;
 
   @Test
   public void addAccount() throws Exception {
@@ -94,6 +120,45 @@ public class AccountsServiceTest {
     assertBalanceEquals(receiver.getAccountId(), balance);
   }
 
+  @Test
+  public void transfer_recordsMetrics() {
+    final Account sender = createAccount(BigDecimal.TEN);
+    final Account receiver = createAccount();
+    final long committed = transferTimer("committed").count();
+    final long overdrafts = transferTimer("overdraft").count();
+
+    accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), BigDecimal.ONE);
+    try {
+      accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), BigDecimal.TEN);
+      fail("Should have failed on not enough balance");
+    } catch (NotEnoughAccountBalanceException ex) {
+      // expected
+    }
+
+    assertEquals(committed + 1, transferTimer("committed").count());
+    assertEquals(overdrafts + 1, transferTimer("overdraft").count());
+    assertThat(meterRegistry.get("accounts.repository.size").gauge().value()).isGreaterThanOrEqualTo(2);
+  }
+
+  @Test
+  public void transfer_idempotentRetryReturnsFirstOutcome() {
+    final Account sender = createAccount(BigDecimal.ONE);
+    final Account receiver = createAccount();
+    final String idempotencyKey = UUID.randomUUID().toString();
+
+    for (int attempt = 0; attempt < 2; attempt++) {
+      try {
+        accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), BigDecimal.TEN, idempotencyKey);
+        fail("Should have failed on not enough balance");
+      } catch (NotEnoughAccountBalanceException ex) {
+        // the retry reports the first outcome
+      }
+      sender.setBalance(BigDecimal.TEN);
+    }
+    assertBalanceEquals(sender.getAccountId(), BigDecimal.TEN);
+    assertBalanceEmpty(receiver.getAccountId());
+  }
+
   @Test(expected = NotEnoughAccountBalanceException.class)
   public void transfer_failsOnNotEnoughBalance() {
     final BigDecimal balance = BigDecimal.ONE;
@@ -129,6 +194,26 @@ public class AccountsServiceTest {
     }
   }
 
+  @Test
+  public void tryTransfer_reportsRejectionsAsResults() {
+    final Account sender = createAccount(BigDecimal.ONE);
+    final Account receiver = createAccount();
+
+    assertEquals(TransferResult.SENDER_NOT_FOUND,
+            accountsService.tryTransfer(generateAccountId(), receiver.getAccountId(), BigDecimal.ONE));
+    assertEquals(TransferResult.RECEIVER_NOT_FOUND,
+            accountsService.tryTransfer(sender.getAccountId(), generateAccountId(), BigDecimal.ONE));
+    assertEquals(TransferResult.INSUFFICIENT_BALANCE,
+            accountsService.tryTransfer(sender.getAccountId(), receiver.getAccountId(), BigDecimal.TEN));
+    assertEquals(TransferResult.ACCOUNT_NOT_FOUND, accountsService.tryTransferBatch(Collections.singletonList(
+            new TransferLeg(sender.getAccountId(), generateAccountId(), BigDecimal.ONE))));
+    assertBalanceEquals(sender.getAccountId(), BigDecimal.ONE);
+
+    assertEquals(TransferResult.COMMITTED,
+            accountsService.tryTransfer(sender.getAccountId(), receiver.getAccountId(), BigDecimal.ONE));
+    assertBalanceEquals(receiver.getAccountId(), BigDecimal.ONE);
+  }
+
   @Test
   public void transfer_concurrentSeveralSenders() {
     final BigDecimal senderBalance = BigDecimal.TEN;
@@ -199,14 +284,148 @@ public class AccountsServiceTest {
 
     accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), BigDecimal.ONE);
 
-    ArgumentCaptor<Account> accArg = ArgumentCaptor.forClass(Account.class);
-    ArgumentCaptor<String> msgArg = ArgumentCaptor.forClass(String.class);
-    verify(notificationService, times(2)).notifyAboutTransfer(accArg.capture(), msgArg.capture());
+    // Listeners run asynchronously, so wait for the notifications of these two accounts only.
+    ArgumentCaptor<String> senderMsgArg = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<String> receiverMsgArg = ArgumentCaptor.forClass(String.class);
+    verify(notificationService, timeout(1000)).notifyAboutTransfer(eq(sender), senderMsgArg.capture());
+    verify(notificationService, timeout(1000)).notifyAboutTransfer(eq(receiver), receiverMsgArg.capture());
+
+    assertFalse(senderMsgArg.getValue().isEmpty());
+    assertFalse(receiverMsgArg.getValue().isEmpty());
+  }
 
-    final List<Account> accounts = accArg.getAllValues();
-    assertTrue(accounts.contains(sender));
-    assertTrue(accounts.contains(receiver));
-    msgArg.getAllValues().forEach(msg -> assertFalse(msg.isEmpty()));
+  @Test
+  public void transfer_coalescesNotificationsIntoDigest() {
+    final Account sender = createAccount(BigDecimal.TEN);
+    final Account receiver = createAccount();
+    // A window no test run outlasts, the digest is sent by the explicit flush only.
+    final NotificationProperties properties = new NotificationProperties();
+    properties.setWindow(Duration.ofHours(1));
+    final TransferNotificationDispatcher dispatcher = new TransferNotificationDispatcher(
+            notificationService, accountsService.getAccountsRepository(), properties);
+
+    dispatcher.sent(sender.getAccountId(), BigDecimal.ONE, receiver.getAccountId());
+    dispatcher.sent(sender.getAccountId(), BigDecimal.ONE, receiver.getAccountId());
+    verify(notificationService, never()).notifyAboutTransfer(eq(sender), anyString());
+    assertThat(dispatcher.getPendingDigests()).isEqualTo(1);
+
+    dispatcher.flushPending();
+    ArgumentCaptor<String> senderMsgArg = ArgumentCaptor.forClass(String.class);
+    verify(notificationService).notifyAboutTransfer(eq(sender), senderMsgArg.capture());
+    assertThat(senderMsgArg.getValue()).startsWith("You've had 2 transfers:");
+    assertThat(dispatcher.getPendingDigests()).isZero();
+
+    dispatcher.destroy();
+    dispatcher.sent(sender.getAccountId(), BigDecimal.ONE, receiver.getAccountId());
+    verify(notificationService, times(2)).notifyAboutTransfer(eq(sender), anyString());
+  }
+
+  @Test
+  public void transferBatch() {
+    final Account first = createAccount(BigDecimal.TEN);
+    final Account second = createAccount();
+    final Account third = createAccount();
+
+    accountsService.transferBatch(Arrays.asList(
+            new TransferLeg(first.getAccountId(), second.getAccountId(), BigDecimal.TEN),
+            new TransferLeg(second.getAccountId(), third.getAccountId(), BigDecimal.ONE)));
+
+    assertBalanceEmpty(first.getAccountId());
+    assertBalanceEquals(second.getAccountId(), new BigDecimal(9));
+    assertBalanceEquals(third.getAccountId(), BigDecimal.ONE);
+  }
+
+  @Test
+  public void transferBatch_failsAsWholeOnNotEnoughBalance() {
+    final Account first = createAccount(BigDecimal.TEN);
+    final Account second = createAccount(BigDecimal.ONE);
+    final Account receiver = createAccount();
+
+    try {
+      accountsService.transferBatch(Arrays.asList(
+              new TransferLeg(first.getAccountId(), receiver.getAccountId(), BigDecimal.ONE),
+              new TransferLeg(second.getAccountId(), receiver.getAccountId(), BigDecimal.TEN)));
+      fail("Should have failed when one of the legs overdraws its sender.");
+    } catch (NotEnoughAccountBalanceException ex) {
+      assertBalanceEquals(first.getAccountId(), BigDecimal.TEN);
+      assertBalanceEquals(second.getAccountId(), BigDecimal.ONE);
+      assertBalanceEmpty(receiver.getAccountId());
+    }
+  }
+
+  @Test
+  public void audit_conservesTotalWhileTransfersRun() {
+    accountsService.clearAccounts();
+    final String[] ids = new String[64];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = createAccount(new BigDecimal(100)).getAccountId();
+    }
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final CompletableFuture<?>[] transfers = new CompletableFuture<?>[4];
+    for (int t = 0; t < transfers.length; t++) {
+      transfers[t] = runAsync(() -> {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running.get()) {
+          try {
+            accountsService.transfer(ids[random.nextInt(ids.length)], ids[random.nextInt(ids.length)],
+                    BigDecimal.valueOf(random.nextInt(1, 500), 2));
+          } catch (NotEnoughAccountBalanceException ignored) {
+          }
+        }
+      });
+    }
+    try {
+      for (int i = 0; i < 20; i++) {
+        final BalanceAudit audit = accountsService.audit(true);
+        assertThat(audit.getTotal()).isEqualByComparingTo("6400");
+        assertThat(audit.isConserved()).isTrue();
+        assertThat(audit.getShards()).noneMatch(shard -> Boolean.FALSE.equals(shard.getVerified()));
+      }
+    } finally {
+      running.set(false);
+      CompletableFuture.allOf(transfers).join();
+    }
+
+    final BalanceAudit quiet = accountsService.audit(true);
+    assertThat(quiet.getShards()).allMatch(shard -> Boolean.TRUE.equals(shard.getVerified()));
+  }
+
+  @Test
+  public void transfer_convertsBetweenCurrencies() throws Exception {
+    final Map<String, BigDecimal> quotes = new HashMap<>();
+    quotes.put("EUR", BigDecimal.ONE);
+    quotes.put("USD", new BigDecimal("1.25"));
+    when(fxRateSource.quotes()).thenReturn(quotes);
+    fxRateTable.refresh();
+
+    final Account euros = createAccount(BigDecimal.TEN);
+    final Account dollars = createAccount(accountId -> new Account(accountId, BigDecimal.TEN, "USD"));
+    final Account pounds = createAccount(accountId -> new Account(accountId, BigDecimal.TEN, "GBP"));
+
+    accountsService.transfer(euros.getAccountId(), dollars.getAccountId(), new BigDecimal("2"));
+    assertThat(accountsService.getAccount(euros.getAccountId()).getBalance()).isEqualByComparingTo("8");
+    assertThat(accountsService.getAccount(dollars.getAccountId()).getBalance()).isEqualByComparingTo("12.5");
+
+    accountsService.transfer(dollars.getAccountId(), euros.getAccountId(), new BigDecimal("0.01"));
+    assertThat(accountsService.getAccount(dollars.getAccountId()).getBalance()).isEqualByComparingTo("12.49");
+    assertThat(accountsService.getAccount(euros.getAccountId()).getBalance()).isEqualByComparingTo("8.01");
+
+    assertThat(accountsService.tryTransfer(euros.getAccountId(), pounds.getAccountId(), BigDecimal.ONE))
+            .isEqualTo(TransferResult.NO_EXCHANGE_RATE);
+    try {
+      accountsService.transfer(pounds.getAccountId(), euros.getAccountId(), BigDecimal.ONE);
+      fail("Should have failed without a rate for GBP");
+    } catch (NoExchangeRateException ignored) {
+    }
+    try {
+      accountsService.transferBatch(Collections.singletonList(
+              new TransferLeg(euros.getAccountId(), dollars.getAccountId(), BigDecimal.ONE)));
+      fail("Should have failed on a batch mixing currencies");
+    } catch (IllegalArgumentException ignored) {
+    }
+    assertThat(accountsService.getAccount(pounds.getAccountId()).getBalance()).isEqualByComparingTo("10");
+    assertThat(accountsService.audit(true).isConserved()).isTrue();
   }
 
   private CompletableFuture<Void> transferAsync(String senderId, String receiverId, BigDecimal amount) {
@@ -223,6 +442,10 @@ public class AccountsServiceTest {
     assertBalanceEquals(accountId, BigDecimal.ZERO);
   }
 
+  private Timer transferTimer(String outcome) {
+    return meterRegistry.get("accounts.transfer").tag("outcome", outcome).timer();
+  }
+
   private Account createAccount(Function<String, Account> factory) {
     final String accountId = generateAccountId();
     final Account account = factory.apply(accountId);
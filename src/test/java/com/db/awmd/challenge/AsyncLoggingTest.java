@@ -0,0 +1,122 @@
+package com.db.awmd.challenge;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts logback-spring.xml with a queue of 16 events and checks its queue settings on an async
+ * appender of their own, whose worker is held on the first event so the queue fills up behind it.
+ * Logback is configured once per JVM, so the logging system is reset around this test to have the
+ * configuration loaded again with its properties.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "accounts.logging.async.queue-size=16",
+        "accounts.logging.async.discarding-threshold=4"})
+public class AsyncLoggingTest {
+
+  private final HeldAppender held = new HeldAppender();
+
+  private final AsyncAppender async = new AsyncAppender();
+
+  private ch.qos.logback.classic.Logger log;
+
+  @BeforeClass
+  @AfterClass
+  public static void resetLogging() {
+    LoggingSystem.get(AsyncLoggingTest.class.getClassLoader()).cleanUp();
+  }
+
+  @After
+  public void release() {
+    held.release.countDown();
+    if (log != null) {
+      log.detachAppender(async);
+    }
+    async.stop();
+  }
+
+  @Test
+  public void errorsAreKeptWhileInfoIsDiscarded() throws InterruptedException {
+    final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+    final AsyncAppender asyncConsole =
+            (AsyncAppender) context.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("ASYNC_CONSOLE");
+    assertThat(asyncConsole.getQueueSize()).isEqualTo(16);
+    assertThat(asyncConsole.isNeverBlock()).isTrue();
+
+    async.setContext(context);
+    async.setQueueSize(asyncConsole.getQueueSize());
+    async.setDiscardingThreshold(asyncConsole.getDiscardingThreshold());
+    async.setNeverBlock(asyncConsole.isNeverBlock());
+    held.setContext(context);
+    held.start();
+    async.addAppender(held);
+    async.start();
+    log = context.getLogger(AsyncLoggingTest.class);
+    log.setAdditive(false);
+    log.addAppender(async);
+
+    log.info("held");
+    assertThat(held.holding.await(5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 0; i < 30; i++) {
+      log.info("request {}", i);
+    }
+    for (int i = 0; i < 3; i++) {
+      log.error("failure {}", i);
+    }
+    held.release.countDown();
+
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (count(Level.ERROR) < 3 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertThat(count(Level.ERROR)).isEqualTo(3);
+    assertThat(count(Level.INFO)).isBetween(1L, 30L);
+  }
+
+  private long count(Level level) {
+    return held.events.stream().filter(event -> event.getLevel() == level).count();
+  }
+
+  private static final class HeldAppender extends AppenderBase<ILoggingEvent> {
+
+    private final List<ILoggingEvent> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch holding = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private HeldAppender() {
+      setName("HELD");
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+      events.add(event);
+      holding.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.EventDispatchProperties;
+import com.db.awmd.challenge.config.EventDispatchProperties.OverflowPolicy;
+import com.db.awmd.challenge.config.MetricsConfig;
+import com.db.awmd.challenge.event.BoundedEventMulticaster;
+import com.db.awmd.challenge.event.EventListenerMetrics;
+import com.db.awmd.challenge.event.OrderedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * One worker and a queue of one: the first event occupies the worker, the second fills the
+ * queue and the third overflows. Ordered events get lanes of their own.
+ */
+public class BoundedEventMulticasterTest {
+
+  private final CountDownLatch started = new CountDownLatch(1);
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private final Map<Integer, Thread> handledBy = new ConcurrentHashMap<>();
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private BoundedEventMulticaster multicaster;
+
+  @After
+  public void destroy() throws InterruptedException {
+    release.countDown();
+    multicaster.destroy();
+  }
+
+  @Test
+  public void callerRuns_runsOverflowOnPublisher() throws Exception {
+    final EventListenerMetrics metrics = saturate(OverflowPolicy.CALLER_RUNS);
+
+    multicaster.multicastEvent(new TestEvent(2));
+    assertThat(handledBy.get(2)).isSameAs(Thread.currentThread());
+
+    release.countDown();
+    awaitCompleted(metrics, 3);
+    assertThat(handledBy.get(1)).isNotSameAs(Thread.currentThread());
+    assertThat(metrics.getDropped()).isZero();
+    assertThat(latencyCount(metrics)).isEqualTo(3);
+  }
+
+  @Test
+  public void drop_countsOverflow() throws Exception {
+    final EventListenerMetrics metrics = saturate(OverflowPolicy.DROP);
+
+    multicaster.multicastEvent(new TestEvent(2));
+    assertThat(metrics.getDropped()).isEqualTo(1);
+    assertThat(metrics.getQueueDepth()).isEqualTo(1);
+    assertThat(registry.get("accounts.events.listener.dropped")
+            .tag("listener", metrics.getListenerId()).functionCounter().count()).isEqualTo(1);
+
+    release.countDown();
+    awaitCompleted(metrics, 2);
+    assertThat(handledBy).doesNotContainKey(2);
+    assertThat(metrics.getQueueDepth()).isZero();
+    assertThat(latencyCount(metrics)).isEqualTo(2);
+  }
+
+  @Test
+  public void block_waitsForQueueSpace() throws Exception {
+    final EventListenerMetrics metrics = saturate(OverflowPolicy.BLOCK);
+
+    final Thread publisher = Thread.currentThread();
+    final CompletableFuture<Void> overflow = CompletableFuture.runAsync(
+            () -> multicaster.multicastEvent(new TestEvent(2)));
+    try {
+      overflow.get(100, TimeUnit.MILLISECONDS);
+      fail("Should have blocked while the queue is full.");
+    } catch (TimeoutException expected) {
+      assertThat(metrics.getQueueDepth()).isEqualTo(2);
+    }
+
+    release.countDown();
+    overflow.get(5, TimeUnit.SECONDS);
+    awaitCompleted(metrics, 3);
+    assertThat(handledBy.get(2)).isNotSameAs(publisher).isSameAs(handledBy.get(0));
+    assertThat(metrics.getDropped()).isZero();
+    assertThat(latencyCount(metrics)).isEqualTo(3);
+  }
+
+  @Test
+  public void orderedEvents_runOnOneLaneInPublishingOrder() throws Exception {
+    final EventDispatchProperties properties = new EventDispatchProperties();
+    properties.setWorkers(4);
+    properties.setQueueCapacity(4_000);
+    multicaster = new BoundedEventMulticaster(properties);
+    final Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+    final Map<String, Thread> lanes = new ConcurrentHashMap<>();
+    multicaster.addApplicationListener(new ApplicationListener<KeyedEvent>() {
+      @Override
+      public void onApplicationEvent(KeyedEvent event) {
+        assertThat(lanes.computeIfAbsent(event.key, key -> Thread.currentThread())).isSameAs(Thread.currentThread());
+        handled.computeIfAbsent(event.key, key -> new CopyOnWriteArrayList<>()).add(event.index);
+      }
+    });
+
+    for (int i = 0; i < 1_000; i++) {
+      multicaster.multicastEvent(new KeyedEvent("Id-" + i % 8, i));
+    }
+
+    awaitCompleted(multicaster.getListenerMetrics().iterator().next(), 1_000);
+    assertThat(handled).hasSize(8);
+    handled.values().forEach(indexes -> assertThat(indexes).hasSize(125).isSorted());
+  }
+
+  /**
+   * Blocks the only worker on the first event and fills the queue with the second.
+   */
+  private EventListenerMetrics saturate(OverflowPolicy policy) throws InterruptedException {
+    final EventDispatchProperties properties = new EventDispatchProperties();
+    properties.setWorkers(1);
+    properties.setQueueCapacity(1);
+    properties.setOverflowPolicy(policy);
+    multicaster = new BoundedEventMulticaster(properties);
+    new MetricsConfig().eventDispatchMetrics(multicaster).bindTo(registry);
+    multicaster.addApplicationListener(new ApplicationListener<TestEvent>() {
+      @Override
+      public void onApplicationEvent(TestEvent event) {
+        handledBy.put(event.index, Thread.currentThread());
+        if (event.index == 0) {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    });
+
+    multicaster.multicastEvent(new TestEvent(0));
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    multicaster.multicastEvent(new TestEvent(1));
+    assertThat(multicaster.getQueueSize()).isEqualTo(1);
+    assertThat(multicaster.getListenerMetrics()).hasSize(1);
+    return multicaster.getListenerMetrics().iterator().next();
+  }
+
+  private long latencyCount(EventListenerMetrics metrics) {
+    return registry.get("accounts.events.listener.latency").tag("listener", metrics.getListenerId()).timer().count();
+  }
+
+  private static void awaitCompleted(EventListenerMetrics metrics, long completed) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (metrics.getCompleted() < completed && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertThat(metrics.getCompleted()).isEqualTo(completed);
+  }
+
+  private static final class KeyedEvent extends ApplicationEvent implements OrderedEvent {
+    private final String key;
+    private final int index;
+
+    private KeyedEvent(String key, int index) {
+      super(BoundedEventMulticasterTest.class);
+      this.key = key;
+      this.index = index;
+    }
+
+    @Override
+    public Object orderingKey() {
+      return key;
+    }
+  }
+
+  private static final class TestEvent extends ApplicationEvent {
+    private final int index;
+
+    private TestEvent(int index) {
+      super(BoundedEventMulticasterTest.class);
+      this.index = index;
+    }
+  }
+}
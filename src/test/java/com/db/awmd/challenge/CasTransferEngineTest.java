@@ -0,0 +1,183 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.DecimalBalanceCell;
+import com.db.awmd.challenge.domain.FixedScaleBalanceCell;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import com.db.awmd.challenge.service.account.engine.CasTransferEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CasTransferEngineTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final CasTransferEngine engine = new CasTransferEngine(64, new TransferMetrics(registry));
+
+  @Test
+  public void transfer_rejectsOverflowingCredit() {
+    final Account sender = new Account("Id-1", new FixedScaleBalanceCell(2, 500));
+    final Account receiver = new Account("Id-2", new FixedScaleBalanceCell(2, Long.MAX_VALUE - 1));
+
+    try {
+      engine.transfer(sender, receiver, 5,
+              (senderBalance, receiverBalance, senderSequence, receiverSequence) -> fail("Should not commit."));
+      fail("Should have rejected the overflowing credit.");
+    } catch (ArithmeticException ex) {
+      assertEquals(500, sender.balanceCell().units());
+      assertEquals(Long.MAX_VALUE - 1, receiver.balanceCell().units());
+    }
+  }
+
+  @Test
+  public void transferBatch_rejectsOverflowingCredit() {
+    final Account[] accounts = {new Account("Id-1", new FixedScaleBalanceCell(2, 500)),
+            new Account("Id-2", new FixedScaleBalanceCell(2, Long.MAX_VALUE - 1))};
+
+    try {
+      engine.transferBatch(accounts, new long[]{-5, 5}, new long[2], new long[2], () -> fail("Should not commit."));
+      fail("Should have rejected the overflowing credit.");
+    } catch (ArithmeticException ex) {
+      assertEquals(500, accounts[0].balanceCell().units());
+      assertEquals(Long.MAX_VALUE - 1, accounts[1].balanceCell().units());
+    }
+  }
+
+  @Test
+  public void deposit_rejectsOverflow() {
+    final FixedScaleBalanceCell cell = new FixedScaleBalanceCell(2, Long.MAX_VALUE);
+
+    try {
+      cell.deposit(1);
+      fail("Should have rejected the overflow.");
+    } catch (ArithmeticException ex) {
+      assertEquals(Long.MAX_VALUE, cell.units());
+    }
+  }
+
+  @Test
+  public void transferBatch_rejectedBatchWritesNoBalance() {
+    final AtomicInteger writes = new AtomicInteger();
+    final Account covered = new Account("Id-1", new DecimalBalanceCell(BigDecimal.TEN) {
+      @Override
+      public BigDecimal tryWithdraw(BigDecimal amount) {
+        writes.incrementAndGet();
+        return super.tryWithdraw(amount);
+      }
+
+      @Override
+      public BigDecimal deposit(BigDecimal amount) {
+        writes.incrementAndGet();
+        return super.deposit(amount);
+      }
+    });
+    final Account[] accounts = {covered, new Account("Id-2", BigDecimal.ONE), new Account("Id-3", BigDecimal.ZERO)};
+    final BigDecimal[] deltas = {new BigDecimal(-1), new BigDecimal(-10), new BigDecimal(11)};
+
+    final int rejected = engine.transferBatch(accounts, deltas, new BigDecimal[accounts.length],
+            new long[accounts.length], () -> fail("Rejected batch should not commit."));
+
+    assertEquals(1, rejected);
+    assertEquals(0, writes.get());
+    assertThat(covered.getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void transferBatch_reportsBalancesAfterCommit() {
+    final Account[] accounts = {new Account("Id-1", BigDecimal.TEN), new Account("Id-2", BigDecimal.ONE),
+            new Account("Id-3", BigDecimal.ZERO)};
+    final BigDecimal[] deltas = {new BigDecimal(-4), BigDecimal.ZERO, new BigDecimal(4)};
+    final BigDecimal[] balances = new BigDecimal[accounts.length];
+
+    assertEquals(-1, engine.transferBatch(accounts, deltas, balances, new long[accounts.length], () -> { }));
+
+    assertThat(balances[0]).isEqualByComparingTo("6");
+    assertThat(balances[1]).isEqualByComparingTo("1");
+    assertThat(balances[2]).isEqualByComparingTo("4");
+  }
+
+  @Test
+  public void transfer_revertsWhenListenerFails() {
+    final Account sender = new Account("Id-1", BigDecimal.TEN);
+    final Account receiver = new Account("Id-2", BigDecimal.ONE);
+    final Account[] accounts = {new Account("Id-3", new FixedScaleBalanceCell(2, 500)),
+            new Account("Id-4", new FixedScaleBalanceCell(2, 100))};
+
+    try {
+      engine.transfer(sender, receiver, new BigDecimal(4),
+              (senderBalance, receiverBalance, senderSequence, receiverSequence) -> {
+                throw new IllegalStateException("journal closed");
+              });
+      fail("Should have rethrown the listener failure");
+    } catch (IllegalStateException ignored) {
+    }
+    try {
+      engine.transferBatch(accounts, new long[]{-300, 300}, new long[2], new long[2], () -> {
+        throw new IllegalStateException("journal closed");
+      });
+      fail("Should have rethrown the listener failure");
+    } catch (IllegalStateException ignored) {
+    }
+
+    assertThat(sender.getBalance()).isEqualByComparingTo("10");
+    assertThat(receiver.getBalance()).isEqualByComparingTo("1");
+    assertEquals(500, accounts[0].balanceCell().units());
+    assertEquals(100, accounts[1].balanceCell().units());
+  }
+
+  @Test
+  public void transfer_recordsLockTimesButNotUpFrontRejections() {
+    final Account sender = new Account("Id-1", BigDecimal.TEN);
+    final Account receiver = new Account("Id-2", BigDecimal.ONE);
+
+    engine.transfer(sender, receiver, BigDecimal.ONE, (senderBalance, receiverBalance, senderSequence,
+                                                       receiverSequence) -> { });
+    engine.transfer(sender, receiver, new BigDecimal(100), (senderBalance, receiverBalance, senderSequence,
+                                                            receiverSequence) -> fail("Should not commit."));
+
+    assertEquals(1, registry.get("accounts.transfer.lock.wait").timer().count());
+    assertEquals(1, registry.get("accounts.transfer.lock.hold").timer().count());
+    assertThat(registry.get("accounts.transfer.lock.contended").counter().count()).isZero();
+  }
+
+  @Test
+  public void transfer_countsContendedLocks() throws Exception {
+    final Account sender = new Account("Id-1", BigDecimal.TEN);
+    final Account receiver = new Account("Id-2", BigDecimal.ONE);
+    final CountDownLatch holding = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    final CompletableFuture<Boolean> holder = CompletableFuture.supplyAsync(() -> engine.transfer(sender, receiver,
+            BigDecimal.ONE, (senderBalance, receiverBalance, senderSequence, receiverSequence) -> {
+              holding.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+              }
+            }));
+    assertThat(holding.await(5, TimeUnit.SECONDS)).isTrue();
+    final CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> engine.transfer(receiver, sender,
+            BigDecimal.ONE, (senderBalance, receiverBalance, senderSequence, receiverSequence) -> { }));
+
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (registry.get("accounts.transfer.lock.contended").counter().count() == 0 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertThat(registry.get("accounts.transfer.lock.contended").counter().count()).isEqualTo(1);
+    release.countDown();
+    assertThat(holder.get(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(waiter.get(5, TimeUnit.SECONDS)).isTrue();
+    assertEquals(2, registry.get("accounts.transfer.lock.hold").timer().count());
+  }
+}
@@ -0,0 +1,120 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.account.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+
+import static com.db.awmd.challenge.AccountsServiceTest.generateAccountId;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "accounts.balance.mode=fixed-scale",
+        "accounts.balance.currency-scales.JPY=0",
+        "accounts.balance.currency-scales.XAU=6"})
+@WebAppConfiguration
+public class FixedScaleAccountsControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private WebApplicationContext webApplicationContext;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Before
+  public void prepareMockMvc() {
+    this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+
+    accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void getAccountWritesBalanceInScaleOfCurrency() throws Exception {
+    assertJson("Id-JPY", "1500", "JPY", "{\"accountId\":\"Id-JPY\",\"balance\":1500,\"currency\":\"JPY\"}");
+    assertJson("Id-EUR", "12.5", null, "{\"accountId\":\"Id-EUR\",\"balance\":12.50}");
+    assertJson("Id-XAU", "0.000001", "XAU", "{\"accountId\":\"Id-XAU\",\"balance\":0.000001,\"currency\":\"XAU\"}");
+  }
+
+  @Test
+  public void transferRoundTrip() throws Exception {
+    Account sender = new Account(generateAccountId(), new BigDecimal("10.00"));
+    accountsService.createAccount(sender);
+    Account receiver = new Account(generateAccountId());
+    accountsService.createAccount(receiver);
+
+    transfer(sender, receiver, "2.5").andExpect(status().isOk());
+    transfer(receiver, sender, "2.50").andExpect(status().isOk());
+
+    assertThat(accountsService.getAccount(sender.getAccountId()).balanceCell().units()).isEqualTo(1000);
+    assertThat(accountsService.getAccount(receiver.getAccountId()).balanceCell().units()).isZero();
+  }
+
+  @Test
+  public void transferAmountBeyondScaleOfCurrency() throws Exception {
+    Account yen = new Account(generateAccountId(), new BigDecimal("1500"), "JPY");
+    accountsService.createAccount(yen);
+    Account otherYen = new Account(generateAccountId(), BigDecimal.ZERO, "JPY");
+    accountsService.createAccount(otherYen);
+
+    transfer(yen, otherYen, "0.5")
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("Transfer amount does not fit the scale of the sender's currency."));
+    transfer(yen, otherYen, "500").andExpect(status().isOk());
+
+    this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"accountId\":\"Id-123\",\"balance\":0.001}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("Balance does not fit the scale of the account's currency."));
+    assertThat(accountsService.getAccount(yen.getAccountId()).getBalance()).isEqualByComparingTo("1000");
+  }
+
+  @Test
+  public void transferNotEnoughBalance() throws Exception {
+    Account sender = new Account(generateAccountId(), new BigDecimal("1.00"));
+    accountsService.createAccount(sender);
+    Account receiver = new Account(generateAccountId());
+    accountsService.createAccount(receiver);
+
+    transfer(sender, receiver, "1.01")
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("Sender account has not enough balance."));
+    assertThat(accountsService.getAccount(sender.getAccountId()).balanceCell().units()).isEqualTo(100);
+  }
+
+  private void assertJson(String accountId, String balance, String currency, String json) throws Exception {
+    accountsService.createAccount(new Account(accountId, new BigDecimal(balance), currency));
+    this.mockMvc.perform(get("/v1/accounts/{accountId}", accountId))
+            .andExpect(status().isOk())
+            .andExpect(content().string(json))
+            .andExpect(content().bytes(objectMapper.writeValueAsBytes(accountsService.getAccount(accountId))));
+  }
+
+  private ResultActions transfer(Account sender, Account receiver, String amount) throws Exception {
+    return mockMvc.perform(post("/v1/accounts/" + sender.getAccountId() + "/transfer")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"receiverId\":\"" + receiver.getAccountId() + "\", \"amount\":" + amount + "}"));
+  }
+}
@@ -0,0 +1,181 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.exception.NotEnoughAccountBalanceException;
+import com.db.awmd.challenge.service.account.AccountsService;
+import com.db.awmd.challenge.service.account.BalanceAudit;
+import com.db.awmd.challenge.service.account.TransferResult;
+import com.db.awmd.challenge.service.account.fx.FxRateSource;
+import com.db.awmd.challenge.service.account.fx.FxRateTable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.db.awmd.challenge.AccountsServiceTest.generateAccountId;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "accounts.balance.mode=fixed-scale",
+        "accounts.balance.currency-scales.JPY=0",
+        "accounts.balance.currency-scales.XAU=6"})
+public class FixedScaleAccountsServiceTest {
+
+  @Autowired
+  private AccountsService accountsService;
+  @Autowired
+  private FxRateTable fxRateTable;
+  @MockBean
+  private FxRateSource fxRateSource;
+
+  @Test
+  public void transfer_roundTrip() {
+    final Account sender = createAccount(new BigDecimal("10.00"), null);
+    final Account receiver = createAccount(BigDecimal.ZERO, null);
+
+    accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), new BigDecimal("2.5"));
+    assertUnits(sender, 750);
+    assertUnits(receiver, 250);
+
+    accountsService.transfer(receiver.getAccountId(), sender.getAccountId(), 250L);
+    assertUnits(sender, 1000);
+    assertUnits(receiver, 0);
+    assertThat(accountsService.getAccount(sender.getAccountId()).getBalance()).isEqualTo("10.00");
+  }
+
+  @Test
+  public void transfer_keepsScaleOfCurrency() {
+    final Account yen = createAccount(new BigDecimal("1500"), "JPY");
+    final Account otherYen = createAccount(BigDecimal.ZERO, "JPY");
+    final Account gold = createAccount(new BigDecimal("1.5"), "XAU");
+    final Account otherGold = createAccount(BigDecimal.ZERO, "XAU");
+
+    accountsService.transfer(yen.getAccountId(), otherYen.getAccountId(), new BigDecimal("300"));
+    assertUnits(yen, 1200);
+    assertUnits(otherYen, 300);
+
+    accountsService.transfer(gold.getAccountId(), otherGold.getAccountId(), new BigDecimal("0.000001"));
+    assertUnits(gold, 1_499_999);
+    assertUnits(otherGold, 1);
+    assertThat(accountsService.getAccount(otherGold.getAccountId()).getBalance()).isEqualTo("0.000001");
+    assertThat(accountsService.audit(true).getShards()).allMatch(shard -> !Boolean.FALSE.equals(shard.getVerified()));
+  }
+
+  @Test
+  public void transfer_rejectsAmountBeyondScaleOfCurrency() {
+    final Account euros = createAccount(BigDecimal.TEN, null);
+    final Account otherEuros = createAccount(BigDecimal.ZERO, null);
+    final Account yen = createAccount(new BigDecimal("1500"), "JPY");
+    final Account otherYen = createAccount(BigDecimal.ZERO, "JPY");
+
+    assertThat(accountsService.tryTransfer(euros.getAccountId(), otherEuros.getAccountId(), new BigDecimal("0.001")))
+            .isEqualTo(TransferResult.AMOUNT_SCALE);
+    assertThat(accountsService.tryTransfer(yen.getAccountId(), otherYen.getAccountId(), new BigDecimal("0.5")))
+            .isEqualTo(TransferResult.AMOUNT_SCALE);
+    assertThat(accountsService.tryTransferBatch(Collections.singletonList(
+            new TransferLeg(yen.getAccountId(), otherYen.getAccountId(), new BigDecimal("1.5")))))
+            .isEqualTo(TransferResult.AMOUNT_SCALE);
+    try {
+      accountsService.transfer(yen.getAccountId(), otherYen.getAccountId(), new BigDecimal("0.5"));
+      fail("Should have failed on an amount below one yen");
+    } catch (ArithmeticException ignored) {
+    }
+    try {
+      accountsService.createAccount(new Account(generateAccountId(), new BigDecimal("0.5"), "JPY"));
+      fail("Should have failed on a balance below one yen");
+    } catch (ArithmeticException ignored) {
+    }
+
+    assertUnits(euros, 1000);
+    assertUnits(otherEuros, 0);
+    assertUnits(yen, 1500);
+    assertUnits(otherYen, 0);
+  }
+
+  @Test
+  public void transfer_rejectsOverdraft() {
+    final Account sender = createAccount(new BigDecimal("1.00"), null);
+    final Account receiver = createAccount(BigDecimal.ZERO, null);
+
+    assertThat(accountsService.tryTransfer(sender.getAccountId(), receiver.getAccountId(), new BigDecimal("1.01")))
+            .isEqualTo(TransferResult.INSUFFICIENT_BALANCE);
+    try {
+      accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), 101L);
+      fail("Should have failed on an overdraft");
+    } catch (NotEnoughAccountBalanceException ignored) {
+    }
+
+    assertUnits(sender, 100);
+    assertUnits(receiver, 0);
+  }
+
+  @Test
+  public void transfer_roundsConversionToScaleOfReceiver() throws Exception {
+    final Map<String, BigDecimal> quotes = new HashMap<>();
+    quotes.put("EUR", BigDecimal.ONE);
+    quotes.put("JPY", new BigDecimal("160"));
+    when(fxRateSource.quotes()).thenReturn(quotes);
+    fxRateTable.refresh();
+
+    final Account euros = createAccount(BigDecimal.TEN, null);
+    final Account yen = createAccount(BigDecimal.ZERO, "JPY");
+
+    accountsService.transfer(euros.getAccountId(), yen.getAccountId(), new BigDecimal("1.23"));
+    assertUnits(euros, 877);
+    // 196.8 yen
+    assertUnits(yen, 197);
+
+    accountsService.transfer(yen.getAccountId(), euros.getAccountId(), new BigDecimal("16"));
+    assertUnits(yen, 181);
+    assertUnits(euros, 887);
+    assertThat(accountsService.audit(true).isConserved()).isTrue();
+  }
+
+  @Test
+  public void audit_keepsAmountsBeyondLongInLedgerScale() {
+    // 10^13 yen are 10^19 minor units of the ledger's scale 6, more than a long holds.
+    final Account yen = createAccount(new BigDecimal("10000000000000"), "JPY");
+    final Account otherYen = createAccount(BigDecimal.ZERO, "JPY");
+
+    accountsService.transfer(yen.getAccountId(), otherYen.getAccountId(), new BigDecimal("9000000000000"));
+    assertUnits(yen, 1_000_000_000_000L);
+    assertUnits(otherYen, 9_000_000_000_000L);
+
+    final BalanceAudit audit = accountsService.audit(true);
+    assertThat(audit.isConserved()).isTrue();
+    assertThat(audit.getTotal()).isGreaterThanOrEqualTo(new BigDecimal("10000000000000"));
+    assertThat(audit.getShards()).allMatch(shard -> !Boolean.FALSE.equals(shard.getVerified()));
+  }
+
+  @Test
+  public void audit_reportsLastTransferSequence() {
+    final Account sender = createAccount(new BigDecimal("10.00"), null);
+    final Account receiver = createAccount(BigDecimal.ZERO, null);
+
+    accountsService.transfer(sender.getAccountId(), receiver.getAccountId(), new BigDecimal("1.00"));
+    final long sequence = accountsService.getTransfers(sender.getAccountId(), 0).get(0).getSequence();
+    assertThat(accountsService.audit(false).getSequence()).isEqualTo(sequence);
+    assertThat(accountsService.audit(false).getSequence()).isEqualTo(sequence);
+  }
+
+  private Account createAccount(BigDecimal balance, String currency) {
+    final Account account = new Account(generateAccountId(), balance, currency);
+    accountsService.createAccount(account);
+    return account;
+  }
+
+  private void assertUnits(Account account, long units) {
+    assertThat(accountsService.getAccount(account.getAccountId()).balanceCell().units()).isEqualTo(units);
+  }
+}
@@ -0,0 +1,57 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.IdempotencyProperties;
+import com.db.awmd.challenge.service.account.IdempotencyCache;
+import com.db.awmd.challenge.service.account.TransferResult;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * One stripe of eight slots, so every key probes the whole table.
+ */
+public class IdempotencyCacheTest {
+
+  private static final int SLOTS = 8;
+
+  @Test
+  public void fullProbeWindow_refusesNewKeysAndKeepsLiveOnes() {
+    final IdempotencyCache cache = cache(Duration.ofMinutes(10));
+    fill(cache);
+
+    assertThat(cache.putIfAbsent("key-new", "new", new CompletableFuture<>()).join())
+            .isEqualTo(TransferResult.IDEMPOTENCY_KEYS_EXHAUSTED);
+    for (int i = 0; i < SLOTS; i++) {
+      assertThat(cache.putIfAbsent("key-" + i, "transfer-" + i, new CompletableFuture<>()).join())
+              .isEqualTo(TransferResult.COMMITTED);
+    }
+  }
+
+  @Test
+  public void expiredSlots_areReused() throws InterruptedException {
+    final IdempotencyCache cache = cache(Duration.ofMillis(20));
+    fill(cache);
+
+    Thread.sleep(50);
+    assertThat(cache.putIfAbsent("key-new", "new", CompletableFuture.completedFuture(TransferResult.COMMITTED)))
+            .isNull();
+  }
+
+  private static IdempotencyCache cache(Duration ttl) {
+    final IdempotencyProperties properties = new IdempotencyProperties();
+    properties.setStripes(1);
+    properties.setCapacity(SLOTS);
+    properties.setTtl(ttl);
+    return new IdempotencyCache(properties);
+  }
+
+  private static void fill(IdempotencyCache cache) {
+    for (int i = 0; i < SLOTS; i++) {
+      assertThat(cache.putIfAbsent("key-" + i, "transfer-" + i,
+              CompletableFuture.completedFuture(TransferResult.COMMITTED))).isNull();
+    }
+  }
+}
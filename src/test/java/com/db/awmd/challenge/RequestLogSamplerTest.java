@@ -0,0 +1,81 @@
+package com.db.awmd.challenge;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.db.awmd.challenge.config.RequestLoggingProperties;
+import com.db.awmd.challenge.web.RequestLogSampler;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestLogSamplerTest {
+
+  private final RequestLoggingProperties properties = new RequestLoggingProperties();
+
+  private final Logger log = (Logger) LoggerFactory.getLogger(RequestLogSamplerTest.class);
+
+  @Test
+  public void endpointWithoutSettings_logsEveryRequest() {
+    log.setLevel(Level.INFO);
+    final RequestLogSampler.Sampler sampler = new RequestLogSampler(properties).forEndpoint("transfer", log);
+
+    assertThat(sampled(sampler, 10)).isEqualTo(10);
+  }
+
+  @Test
+  public void sampleEvery_logsOneOfEveryN() {
+    log.setLevel(Level.INFO);
+    properties.getEndpoints().put("transfer", sampling(4, 0));
+    properties.getEndpoints().put("get-account", sampling(100, 0));
+    final RequestLogSampler logSampler = new RequestLogSampler(properties);
+
+    assertThat(sampled(logSampler.forEndpoint("transfer", log), 12)).isEqualTo(3);
+    assertThat(sampled(logSampler.forEndpoint("get-account", log), 1000)).isEqualTo(10);
+    assertThat(sampled(logSampler.forEndpoint("create-account", log), 12)).isEqualTo(12);
+  }
+
+  @Test
+  public void maxPerSecond_capsEverySecond() {
+    log.setLevel(Level.INFO);
+    properties.getEndpoints().put("transfer", sampling(1, 5));
+    final RequestLogSampler.Sampler sampler = new RequestLogSampler(properties).forEndpoint("transfer", log);
+
+    final long firstSecond = second();
+    final int sampled = sampled(sampler, 10_000);
+    final long seconds = second() - firstSecond + 1;
+
+    assertThat(sampled).isBetween(5, (int) (5 * seconds));
+  }
+
+  @Test
+  public void infoDisabled_logsNothing() {
+    log.setLevel(Level.WARN);
+    final RequestLogSampler.Sampler sampler = new RequestLogSampler(properties).forEndpoint("transfer", log);
+
+    assertThat(sampled(sampler, 10)).isZero();
+  }
+
+  private static int sampled(RequestLogSampler.Sampler sampler, int requests) {
+    int sampled = 0;
+    for (int i = 0; i < requests; i++) {
+      if (sampler.sample()) {
+        sampled++;
+      }
+    }
+    return sampled;
+  }
+
+  private static RequestLoggingProperties.Sampling sampling(int sampleEvery, int maxPerSecond) {
+    final RequestLoggingProperties.Sampling sampling = new RequestLoggingProperties.Sampling();
+    sampling.setSampleEvery(sampleEvery);
+    sampling.setMaxPerSecond(maxPerSecond);
+    return sampling;
+  }
+
+  private static long second() {
+    return System.nanoTime() / TimeUnit.SECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,184 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.account.engine.ShardedTransferEngine;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardedTransferEngineTest {
+
+  private final ShardedTransferEngine engine = new ShardedTransferEngine(4, 64);
+
+  @After
+  public void tearDown() throws InterruptedException {
+    engine.destroy();
+  }
+
+  @Test
+  public void transfer_rejectsOverdraft() {
+    final Account sender = new Account("Id-1", BigDecimal.ONE);
+    final Account receiver = new Account("Id-2", BigDecimal.ZERO);
+
+    assertFalse(engine.transfer(sender, receiver, BigDecimal.TEN, (senderBalance, receiverBalance, senderSequence,
+                                                                   receiverSequence) -> { }));
+    assertTrue(engine.transfer(sender, receiver, BigDecimal.ONE, (senderBalance, receiverBalance, senderSequence,
+                                                                  receiverSequence) -> {
+      assertThat(senderBalance).isEqualByComparingTo("0");
+      assertThat(receiverBalance).isEqualByComparingTo("1");
+    }));
+  }
+
+  @Test
+  public void transfer_concurrentTransfersKeepTotal() {
+    final Account[] accounts = IntStream.range(0, 32)
+            .mapToObj(i -> new Account("Id-" + i, new BigDecimal(100)))
+            .toArray(Account[]::new);
+    final AtomicInteger commits = new AtomicInteger();
+
+    CompletableFuture.allOf(IntStream.range(0, 8).mapToObj(thread -> runAsync(() -> {
+      for (int i = 0; i < 2_000; i++) {
+        final int sender = ThreadLocalRandom.current().nextInt(accounts.length);
+        final int receiver = (sender + 1 + ThreadLocalRandom.current().nextInt(accounts.length - 1)) % accounts.length;
+        engine.transfer(accounts[sender], accounts[receiver], BigDecimal.ONE,
+                (senderBalance, receiverBalance, senderSequence, receiverSequence) -> commits.incrementAndGet());
+      }
+    })).toArray(CompletableFuture[]::new)).join();
+
+    final BigDecimal total = IntStream.range(0, accounts.length)
+            .mapToObj(i -> accounts[i].getBalance())
+            .reduce(BigDecimal.ZERO, BigDecimal::add);
+    assertThat(total).isEqualByComparingTo("3200");
+    assertThat(commits.get()).isPositive();
+  }
+
+  @Test
+  public void transfer_sequencesFollowBalanceOrderOfEveryAccount() {
+    final Account[] accounts = IntStream.range(0, 8)
+            .mapToObj(i -> new Account("Id-" + i, new BigDecimal(100)))
+            .toArray(Account[]::new);
+    final List<Map<Long, BigDecimal>> observed = new ArrayList<>();
+    for (int i = 0; i < accounts.length; i++) {
+      observed.add(new ConcurrentSkipListMap<>());
+    }
+
+    CompletableFuture.allOf(IntStream.range(0, 8).mapToObj(thread -> runAsync(() -> {
+      for (int i = 0; i < 2_000; i++) {
+        final int sender = ThreadLocalRandom.current().nextInt(accounts.length);
+        final int receiver = (sender + 1 + ThreadLocalRandom.current().nextInt(accounts.length - 1)) % accounts.length;
+        engine.transfer(accounts[sender], accounts[receiver], BigDecimal.ONE,
+                (senderBalance, receiverBalance, senderSequence, receiverSequence) -> {
+                  assertThat(observed.get(sender).put(senderSequence, senderBalance)).isNull();
+                  assertThat(observed.get(receiver).put(receiverSequence, receiverBalance)).isNull();
+                });
+      }
+    })).toArray(CompletableFuture[]::new)).join();
+
+    for (int i = 0; i < accounts.length; i++) {
+      BigDecimal previous = new BigDecimal(100);
+      for (BigDecimal balance : observed.get(i).values()) {
+        assertThat(balance.subtract(previous).abs()).isEqualByComparingTo("1");
+        previous = balance;
+      }
+      assertThat(previous).isEqualByComparingTo(accounts[i].getBalance());
+    }
+  }
+
+  @Test
+  public void transferBatch_acrossShardsWhilePairsRun() {
+    final Account[] accounts = IntStream.range(0, 16)
+            .mapToObj(i -> new Account("Id-" + i, new BigDecimal(100)))
+            .toArray(Account[]::new);
+    final BigDecimal[] deltas = new BigDecimal[accounts.length];
+    for (int i = 0; i < accounts.length; i++) {
+      deltas[i] = new BigDecimal(i % 2 == 0 ? -1 : 1);
+    }
+
+    CompletableFuture.allOf(IntStream.range(0, 8).mapToObj(thread -> runAsync(() -> {
+      for (int i = 0; i < 1_000; i++) {
+        if (thread % 2 == 0) {
+          engine.transferBatch(accounts, deltas, new BigDecimal[accounts.length], new long[accounts.length], () -> { });
+        } else {
+          final int sender = ThreadLocalRandom.current().nextInt(accounts.length);
+          final int receiver = (sender + 1 + ThreadLocalRandom.current().nextInt(accounts.length - 1)) % accounts.length;
+          engine.transfer(accounts[sender], accounts[receiver], BigDecimal.ONE,
+                  (senderBalance, receiverBalance, senderSequence, receiverSequence) -> { });
+        }
+      }
+    })).toArray(CompletableFuture[]::new)).join();
+
+    final BigDecimal total = IntStream.range(0, accounts.length)
+            .mapToObj(i -> accounts[i].getBalance())
+            .reduce(BigDecimal.ZERO, BigDecimal::add);
+    assertThat(total).isEqualByComparingTo("1600");
+  }
+
+  @Test
+  public void transferBatch_rejectedBatchChangesNoShard() {
+    final Account[] accounts = IntStream.range(0, 8)
+            .mapToObj(i -> new Account("Id-" + i, BigDecimal.TEN))
+            .toArray(Account[]::new);
+    final BigDecimal[] deltas = new BigDecimal[accounts.length];
+    for (int i = 0; i < accounts.length - 1; i++) {
+      deltas[i] = new BigDecimal(-5);
+    }
+    deltas[accounts.length - 1] = new BigDecimal(35);
+    deltas[accounts.length - 2] = new BigDecimal(-20);
+
+    final int rejected = engine.transferBatch(accounts, deltas, new BigDecimal[accounts.length],
+            new long[accounts.length], () -> { });
+
+    assertEquals(accounts.length - 2, rejected);
+    for (Account account : accounts) {
+      assertThat(account.getBalance()).isEqualByComparingTo("10");
+    }
+  }
+
+  @Test
+  public void transfer_revertsWhenListenerFails() {
+    final Account[] accounts = IntStream.range(0, 8)
+            .mapToObj(i -> new Account("Id-" + i, BigDecimal.TEN))
+            .toArray(Account[]::new);
+    final BigDecimal[] deltas = new BigDecimal[accounts.length];
+    for (int i = 0; i < accounts.length - 1; i++) {
+      deltas[i] = new BigDecimal(-5);
+    }
+    deltas[accounts.length - 1] = new BigDecimal(35);
+
+    try {
+      engine.transfer(accounts[0], accounts[1], BigDecimal.ONE, (senderBalance, receiverBalance, senderSequence,
+                                                                 receiverSequence) -> {
+        throw new IllegalStateException("journal closed");
+      });
+      fail("Should have rethrown the listener failure");
+    } catch (IllegalStateException ignored) {
+    }
+    try {
+      engine.transferBatch(accounts, deltas, new BigDecimal[accounts.length], new long[accounts.length], () -> {
+        throw new IllegalStateException("journal closed");
+      });
+      fail("Should have rethrown the listener failure");
+    } catch (IllegalStateException ignored) {
+    }
+
+    for (Account account : accounts) {
+      assertThat(account.getBalance()).isEqualByComparingTo("10");
+    }
+  }
+}
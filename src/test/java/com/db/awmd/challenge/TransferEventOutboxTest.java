@@ -0,0 +1,80 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.service.account.TransferEventOutbox;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferEventOutboxTest {
+
+  private final List<Object> published = new CopyOnWriteArrayList<>();
+
+  private final TransferEventOutbox outbox = new TransferEventOutbox(published::add);
+
+  @After
+  public void tearDown() throws InterruptedException {
+    outbox.destroy();
+  }
+
+  @Test
+  public void publishStaged_waitsForTheRecordOfEveryEvent() throws InterruptedException {
+    final TestEvent first = new TestEvent();
+    final TestEvent second = new TestEvent();
+    final TestEvent third = new TestEvent();
+    outbox.stage(first, 1);
+    outbox.stage(second, 3);
+    outbox.stage(third, 2);
+
+    outbox.publishStaged(2);
+    awaitPublished(1);
+    Thread.sleep(50);
+    assertThat(published).containsExactly(first);
+
+    outbox.publishStaged(3);
+    awaitPublished(3);
+    assertThat(published).containsExactly(first, second, third);
+  }
+
+  @Test
+  public void publishStaged_keepsTheHighestDurablePosition() throws InterruptedException {
+    final TestEvent event = new TestEvent();
+    outbox.publishStaged(5);
+    outbox.stage(event, 4);
+
+    outbox.publishStaged(0);
+    awaitPublished(1);
+    assertThat(published).containsExactly(event);
+  }
+
+  @Test
+  public void destroy_publishesOnlyDurableEvents() throws InterruptedException {
+    final TestEvent durable = new TestEvent();
+    outbox.stage(durable, 1);
+    outbox.stage(new TestEvent(), 2);
+    outbox.publishStaged(1);
+
+    outbox.destroy();
+    assertThat(published).containsExactly(durable);
+  }
+
+  private void awaitPublished(int count) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (published.size() < count && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertThat(published).hasSize(count);
+  }
+
+  private static final class TestEvent extends ApplicationEvent {
+
+    private TestEvent() {
+      super(TransferEventOutboxTest.class);
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.service.account.TransferHistory;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferHistoryTest {
+
+  @Test
+  public void keepsLatestMovementsInSequenceOrder() {
+    final HistoryProperties properties = new HistoryProperties();
+    properties.setCapacity(6);
+    final TransferHistory history = new TransferHistory(properties);
+
+    for (int sequence = 1; sequence <= 20; sequence++) {
+      history.transferred(sequence, "Id-1", sequence, "Id-2", sequence, 2, 100L * sequence);
+    }
+
+    final List<TransferHistory.Entry> entries = history.since("Id-1", 0);
+    assertThat(entries).extracting(TransferHistory.Entry::getSequence).containsExactly(13L, 14L, 15L, 16L, 17L, 18L, 19L, 20L);
+    assertThat(entries.get(7).getAmount()).isEqualByComparingTo("-20");
+    assertThat(history.since("Id-2", 18)).extracting(TransferHistory.Entry::getAmount)
+            .usingElementComparator(BigDecimal::compareTo)
+            .containsExactly(new BigDecimal("19"), new BigDecimal("20"));
+    assertThat(history.since("Id-3", 0)).isEmpty();
+  }
+
+  @Test
+  public void concurrentAppendsAreNotTorn() {
+    final TransferHistory history = new TransferHistory(new HistoryProperties());
+
+    CompletableFuture.allOf(IntStream.range(0, 4).mapToObj(thread -> CompletableFuture.runAsync(() -> {
+      for (int i = 0; i < 10_000; i++) {
+        final long sequence = thread * 100_000L + i;
+        history.transferred(sequence, "Id-1", sequence, "Other-" + thread, sequence, 2, sequence);
+        for (TransferHistory.Entry entry : history.since("Id-1", 0)) {
+          assertThat(entry.getAmount().movePointRight(2).longValueExact()).isEqualTo(-entry.getSequence());
+        }
+      }
+    })).toArray(CompletableFuture[]::new)).join();
+  }
+}
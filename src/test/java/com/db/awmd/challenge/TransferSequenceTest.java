@@ -0,0 +1,123 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.config.AuditProperties;
+import com.db.awmd.challenge.config.BalanceProperties;
+import com.db.awmd.challenge.config.CurrencyProperties;
+import com.db.awmd.challenge.config.HistoryProperties;
+import com.db.awmd.challenge.config.IdempotencyProperties;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.account.AccountsService;
+import com.db.awmd.challenge.service.account.BalanceLedger;
+import com.db.awmd.challenge.service.account.IdempotencyCache;
+import com.db.awmd.challenge.service.account.TransferEventOutbox;
+import com.db.awmd.challenge.service.account.TransferHistory;
+import com.db.awmd.challenge.service.account.TransferMetrics;
+import com.db.awmd.challenge.service.account.engine.CasTransferEngine;
+import com.db.awmd.challenge.service.account.engine.LockingTransferEngine;
+import com.db.awmd.challenge.service.account.engine.ShardedTransferEngine;
+import com.db.awmd.challenge.service.account.engine.TransferEngine;
+import com.db.awmd.challenge.service.account.events.AccountBalanceTransferredEvent;
+import com.db.awmd.challenge.service.account.fx.FxRateTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replays the transfer events of concurrent transfers per account in account sequence order: every
+ * account must walk through exactly the balances its events report.
+ */
+public class TransferSequenceTest {
+
+  private static final int ACCOUNTS = 8;
+
+  private static final BigDecimal INITIAL = new BigDecimal(100);
+
+  @Test
+  public void casEngine_sequenceFollowsBalanceOrder() throws Exception {
+    assertSequenceFollowsBalanceOrder(new CasTransferEngine(64, new TransferMetrics(new SimpleMeterRegistry())));
+  }
+
+  @Test
+  public void lockingEngine_sequenceFollowsBalanceOrder() throws Exception {
+    assertSequenceFollowsBalanceOrder(new LockingTransferEngine(64, new TransferMetrics(new SimpleMeterRegistry())));
+  }
+
+  @Test
+  public void shardedEngine_sequenceFollowsBalanceOrder() throws Exception {
+    final ShardedTransferEngine engine = new ShardedTransferEngine(4, 64);
+    try {
+      assertSequenceFollowsBalanceOrder(engine);
+    } finally {
+      engine.destroy();
+    }
+  }
+
+  private void assertSequenceFollowsBalanceOrder(TransferEngine engine) throws Exception {
+    final Queue<AccountBalanceTransferredEvent.Payload> payloads = new ConcurrentLinkedQueue<>();
+    final TransferEventOutbox outbox = new TransferEventOutbox(event -> {
+      if (event instanceof AccountBalanceTransferredEvent) {
+        payloads.add(((AccountBalanceTransferredEvent) event).payload());
+      }
+    });
+    final AccountsService service = service(engine, outbox);
+    for (int i = 0; i < ACCOUNTS; i++) {
+      service.createAccount(new Account("Id-" + i, INITIAL));
+    }
+
+    CompletableFuture.allOf(IntStream.range(0, 8).mapToObj(thread -> runAsync(() -> {
+      for (int i = 0; i < 2_000; i++) {
+        final int sender = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        final int receiver = (sender + 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        service.tryTransfer("Id-" + sender, "Id-" + receiver,
+                BigDecimal.valueOf(1 + ThreadLocalRandom.current().nextInt(30)));
+      }
+    })).toArray(CompletableFuture[]::new)).join();
+    outbox.destroy();
+
+    assertThat(payloads).isNotEmpty();
+    assertThat(payloads.stream().mapToLong(AccountBalanceTransferredEvent.Payload::getSequence).distinct().count())
+            .isEqualTo(payloads.size());
+    final Map<String, Map<Long, BigDecimal[]>> changes = new HashMap<>();
+    for (AccountBalanceTransferredEvent.Payload payload : payloads) {
+      assertThat(changes.computeIfAbsent(payload.getSenderId(), accountId -> new TreeMap<>())
+              .put(payload.getSenderSequence(),
+                      new BigDecimal[]{payload.getAmount().negate(), payload.getSenderBalance()})).isNull();
+      assertThat(changes.computeIfAbsent(payload.getReceiverId(), accountId -> new TreeMap<>())
+              .put(payload.getReceiverSequence(),
+                      new BigDecimal[]{payload.getReceived(), payload.getReceiverBalance()})).isNull();
+    }
+    changes.forEach((accountId, ordered) -> {
+      BigDecimal balance = INITIAL;
+      for (BigDecimal[] change : ordered.values()) {
+        balance = balance.add(change[0]);
+        assertThat(change[1]).isEqualByComparingTo(balance).isNotNegative();
+      }
+      assertThat(service.getAccount(accountId).getBalance()).isEqualByComparingTo(balance);
+    });
+  }
+
+  private AccountsService service(TransferEngine engine, TransferEventOutbox outbox) throws IOException {
+    final BalanceProperties balanceProperties = new BalanceProperties();
+    return new AccountsService(new AccountsRepositoryInMemory(), outbox, engine,
+            balanceProperties, new TransferMetrics(new SimpleMeterRegistry()),
+            new IdempotencyCache(new IdempotencyProperties()),
+            new BalanceLedger(balanceProperties, new AuditProperties()),
+            new TransferHistory(new HistoryProperties()),
+            new FxRateTable(Collections::emptyMap, new CurrencyProperties()));
+  }
+}
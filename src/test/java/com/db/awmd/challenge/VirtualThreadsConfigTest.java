@@ -0,0 +1,50 @@
+package com.db.awmd.challenge;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Serves a request through the embedded Tomcat, MockMvc would run it on the test thread.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "accounts.web.threads=virtual")
+public class VirtualThreadsConfigTest {
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Test
+  public void requestsRunOnVirtualThreads() {
+    assertThat(restTemplate.getForObject("/test/current-thread", String.class)).startsWith("virtual http-virtual-");
+  }
+
+  @TestConfiguration
+  static class CurrentThreadConfig {
+
+    @Bean
+    CurrentThreadController currentThreadController() {
+      return new CurrentThreadController();
+    }
+  }
+
+  @RestController
+  static class CurrentThreadController {
+
+    @GetMapping("/test/current-thread")
+    public String currentThread() {
+      final Thread thread = Thread.currentThread();
+      return (thread.isVirtual() ? "virtual " : "platform ") + thread.getName();
+    }
+  }
+}